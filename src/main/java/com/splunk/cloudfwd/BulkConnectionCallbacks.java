@@ -0,0 +1,35 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd;
+
+import java.util.List;
+
+/**
+ * ConnectionCallbacks that take acknowledgements in bulk. One ack poll can acknowledge hundreds of EventBatches; rather
+ * than one call to acknowledged(EventBatch) for each, a Connection whose callbacks implement BulkConnectionCallbacks
+ * calls acknowledged(List) once per poll. The other callbacks are unchanged, and checkpoint is still called after the
+ * EventBatches it passes have been acknowledged.
+ */
+public interface BulkConnectionCallbacks extends ConnectionCallbacks {
+
+    /**
+     * Called instead of acknowledged(EventBatch) with every EventBatch acknowledged by one ack poll.
+     *
+     * @param events
+     */
+    public void acknowledged(List<EventBatch> events);
+
+}
@@ -19,6 +19,8 @@ import com.splunk.cloudfwd.error.HecConnectionTimeoutException;
 import com.splunk.cloudfwd.error.HecNoValidChannelsException;
 import java.io.Closeable;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 
 /**
@@ -94,9 +96,47 @@ public interface Connection extends Closeable{
      * @param f
      */
     public void setLoggerFactory(HecLoggerFactory f);
+
+    /**
+     * Runs the ConnectionCallbacks on the given Executor instead of on the Connection's own threads. Callbacks are
+     * still delivered one at a time, in the order they were raised, whatever threads the Executor uses. Call it before
+     * sending. Null runs callbacks on the thread that raised them.
+     * @param e
+     * @see com.splunk.cloudfwd.PropertyKeys#CALLBACK_EXECUTOR
+     */
+    public void setCallbackExecutor(Executor e);
     
      /**
      * healthCheck will retrieve health for each channel or trigger a health check if no channels have been made    
      */
     public  List<HecHealth> getHealth();
+    
+    /**
+     * Non-blocking variant of getHealth. The returned future completes once every channel has either gotten its health
+     * from the preflight check or given up trying.
+     * @return
+     */
+    public CompletableFuture<List<HecHealth>> getHealthFuture();
+
+    /**
+     * Takes a snapshot of the Connection's counters, rolled up per destination, with the channels of each destination
+     * as children. Counters are updated lock-free as the channels post and poll, and taking a snapshot does not
+     * block them.
+     * @return
+     */
+    public MetricsSnapshot getMetrics();
+
+    /**
+     * Like getMetrics, except that the latency histograms cover only what was recorded since the previous call to
+     * getIntervalMetrics (or since the Connection was created). Counters remain cumulative.
+     * @return
+     */
+    public MetricsSnapshot getIntervalMetrics();
+
+    /**
+     * @return the last checkpoint persisted to CHECKPOINT_FILE, which may have been left by a previous process.
+     * Null if CHECKPOINT_FILE is not set or no checkpoint has been persisted.
+     * @see com.splunk.cloudfwd.PropertyKeys#CHECKPOINT_FILE
+     */
+    public Comparable getLastDurableCheckpoint();
 }
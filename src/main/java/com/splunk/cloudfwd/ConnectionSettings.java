@@ -42,6 +42,7 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 
@@ -54,6 +55,7 @@ public class ConnectionSettings {
     protected Properties defaultProps = new Properties();
     protected Properties overrides;
     protected ConnectionImpl connection;
+    private final AtomicLong version = new AtomicLong(); //incremented by every change, see getVersion
 
     public ConnectionSettings(Connection c, Properties overrides) {
         this.overrides = overrides;
@@ -70,6 +72,15 @@ public class ConnectionSettings {
 
     public void putProperty(String k, String v) {
         this.defaultProps.put(k, v);
+        this.version.incrementAndGet();
+    }
+
+    /**
+     * @return a number that changes whenever a setting does, so that anything derived from the settings (such as the
+     * request URLs an HttpSender builds from INDEX, SOURCE, SOURCETYPE and HOST) can tell when to derive it again
+     */
+    public long getVersion() {
+        return version.get();
     }
 
     public List<URL> getUrls() {
@@ -139,6 +150,12 @@ public class ConnectionSettings {
         return interval;
     }
 
+    public long getHealthPollIdleMS() {
+        return Long.parseLong(defaultProps.getProperty(
+                PropertyKeys.HEALTH_POLL_IDLE_MS,
+                PropertyKeys.DEFAULT_HEALTH_POLL_IDLE_MS).trim());
+    }
+
     public int getMaxTotalChannels() {
         int max = Integer.parseInt(defaultProps.getProperty(
                 MAX_TOTAL_CHANNELS,
@@ -299,12 +316,169 @@ public class ConnectionSettings {
         return max;
     }    
 
+    public boolean isJmxEnabled() {
+        return Boolean.parseBoolean(this.defaultProps.getProperty(
+                PropertyKeys.ENABLE_JMX,
+                PropertyKeys.DEFAULT_ENABLE_JMX).trim());
+    }
+
+    /**
+     * @return true if CALLBACK_EXECUTOR is "ordered", false if it is "caller"
+     */
+    public boolean isCallbackExecutorOrdered() {
+        String type = this.defaultProps.getProperty(PropertyKeys.CALLBACK_EXECUTOR,
+                PropertyKeys.DEFAULT_CALLBACK_EXECUTOR).trim();
+        if (type.equals("ordered")) {
+            return true;
+        } else if (!type.equals("caller")) {
+            LOG.warn("Unrecognized callback executor. Defaulting to " + PropertyKeys.DEFAULT_CALLBACK_EXECUTOR
+                    + ". See PropertyKeys.CALLBACK_EXECUTOR.");
+        }
+        return false;
+    }
+
     public boolean isCheckpointEnabled() {
         return Boolean.parseBoolean(this.defaultProps.getProperty(
                 PropertyKeys.ENABLE_CHECKPOINTS,
                 PropertyKeys.DEFAULT_ENABLE_CHECKPOINTS).trim());
     }
 
+    public boolean isLazyStartup() {
+        return Boolean.parseBoolean(this.defaultProps.getProperty(
+                PropertyKeys.LAZY_STARTUP,
+                PropertyKeys.DEFAULT_LAZY_STARTUP).trim());
+    }
+
+    public int getStartupBufferMaxBatches() {
+        return Integer.parseInt(defaultProps.getProperty(
+                PropertyKeys.STARTUP_BUFFER_MAX_BATCHES,
+                PropertyKeys.DEFAULT_STARTUP_BUFFER_MAX_BATCHES).trim());
+    }
+
+    public double getRetryBudgetRatio() {
+        return Double.parseDouble(defaultProps.getProperty(
+                PropertyKeys.RETRY_BUDGET_RATIO,
+                PropertyKeys.DEFAULT_RETRY_BUDGET_RATIO).trim());
+    }
+
+    public int getRetryBudgetMinPerSec() {
+        return Integer.parseInt(defaultProps.getProperty(
+                PropertyKeys.RETRY_BUDGET_MIN_PER_SEC,
+                PropertyKeys.DEFAULT_RETRY_BUDGET_MIN_PER_SEC).trim());
+    }
+
+    public double getCircuitBreakerFailureRatio() {
+        return Double.parseDouble(defaultProps.getProperty(
+                PropertyKeys.CIRCUIT_BREAKER_FAILURE_RATIO,
+                PropertyKeys.DEFAULT_CIRCUIT_BREAKER_FAILURE_RATIO).trim());
+    }
+
+    public long getCircuitBreakerOpenMS() {
+        return Long.parseLong(defaultProps.getProperty(
+                PropertyKeys.CIRCUIT_BREAKER_OPEN_MS,
+                PropertyKeys.DEFAULT_CIRCUIT_BREAKER_OPEN_MS).trim());
+    }
+
+    /**
+     * @return the spill queue directory, or null if the spill queue is disabled
+     */
+    public String getSpillDir() {
+        String dir = defaultProps.getProperty(PropertyKeys.SPILL_DIR, "").trim();
+        return dir.isEmpty() ? null : dir;
+    }
+
+    public int getSpillSegmentBytes() {
+        return Integer.parseInt(defaultProps.getProperty(
+                PropertyKeys.SPILL_SEGMENT_BYTES,
+                PropertyKeys.DEFAULT_SPILL_SEGMENT_BYTES).trim());
+    }
+
+    public int getSpillMaxRetries() {
+        return Integer.parseInt(defaultProps.getProperty(
+                PropertyKeys.SPILL_MAX_RETRIES,
+                PropertyKeys.DEFAULT_SPILL_MAX_RETRIES).trim());
+    }
+
+    /**
+     * @return the checkpoint file, or null if checkpoints are not persisted
+     */
+    public String getCheckpointFile() {
+        String file = defaultProps.getProperty(PropertyKeys.CHECKPOINT_FILE, "").trim();
+        return file.isEmpty() ? null : file;
+    }
+
+    public long getCheckpointFlushMS() {
+        return Long.parseLong(defaultProps.getProperty(
+                PropertyKeys.CHECKPOINT_FLUSH_MS,
+                PropertyKeys.DEFAULT_CHECKPOINT_FLUSH_MS).trim());
+    }
+
+    public long getRetryBackoffBaseMS() {
+        return Long.parseLong(defaultProps.getProperty(
+                PropertyKeys.RETRY_BACKOFF_BASE_MS,
+                PropertyKeys.DEFAULT_RETRY_BACKOFF_BASE_MS).trim());
+    }
+
+    public long getRetryBackoffMaxMS() {
+        return Long.parseLong(defaultProps.getProperty(
+                PropertyKeys.RETRY_BACKOFF_MAX_MS,
+                PropertyKeys.DEFAULT_RETRY_BACKOFF_MAX_MS).trim());
+    }
+
+    public long getBusyCooldownMS() {
+        return Long.parseLong(defaultProps.getProperty(
+                PropertyKeys.BUSY_COOLDOWN_MS,
+                PropertyKeys.DEFAULT_BUSY_COOLDOWN_MS).trim());
+    }
+
+    public boolean isBusyCooldownPerDestination() {
+        return Boolean.parseBoolean(defaultProps.getProperty(
+                PropertyKeys.BUSY_COOLDOWN_DESTINATION,
+                "false").trim());
+    }
+
+    public double getOutlierLatencyMultiple() {
+        return Double.parseDouble(defaultProps.getProperty(
+                PropertyKeys.OUTLIER_LATENCY_MULTIPLE,
+                PropertyKeys.DEFAULT_OUTLIER_LATENCY_MULTIPLE).trim());
+    }
+
+    public long getOutlierCheckIntervalMS() {
+        long interval = Long.parseLong(defaultProps.getProperty(
+                PropertyKeys.OUTLIER_CHECK_INTERVAL_MS,
+                PropertyKeys.DEFAULT_OUTLIER_CHECK_INTERVAL_MS).trim());
+        if (interval <= 0) {
+            long was = interval;
+            interval = Long.parseLong(PropertyKeys.DEFAULT_OUTLIER_CHECK_INTERVAL_MS);
+            LOG.debug("{}, defaulting {} to {}", was, PropertyKeys.OUTLIER_CHECK_INTERVAL_MS, interval);
+        }
+        return interval;
+    }
+
+    public long getOutlierMinLatencyMS() {
+        return Long.parseLong(defaultProps.getProperty(
+                PropertyKeys.OUTLIER_MIN_LATENCY_MS,
+                PropertyKeys.DEFAULT_OUTLIER_MIN_LATENCY_MS).trim());
+    }
+
+    public long getDnsCacheTtlMS() {
+        return Long.parseLong(defaultProps.getProperty(
+                PropertyKeys.DNS_CACHE_TTL_MS,
+                PropertyKeys.DEFAULT_DNS_CACHE_TTL_MS).trim());
+    }
+
+    public long getPreflightCacheTtlMS() {
+        return Long.parseLong(defaultProps.getProperty(
+                PropertyKeys.PREFLIGHT_CACHE_TTL_MS,
+                PropertyKeys.DEFAULT_PREFLIGHT_CACHE_TTL_MS).trim());
+    }
+
+    public boolean isThreadPoolIsolationEnabled() {
+        return Boolean.parseBoolean(this.defaultProps.getProperty(
+                PropertyKeys.ISOLATE_THREAD_POOLS,
+                PropertyKeys.DEFAULT_ISOLATE_THREAD_POOLS).trim());
+    }
+
     public ConnectionImpl.HecEndpoint getHecEndpointType() {
         ConnectionImpl.HecEndpoint endpoint;
         String type = defaultProps.getProperty(PropertyKeys.HEC_ENDPOINT_TYPE,
@@ -324,9 +498,9 @@ public class ConnectionSettings {
     public void setHecEndpointType(
             ConnectionImpl.HecEndpoint type) {
         if (type == ConnectionImpl.HecEndpoint.STRUCTURED_EVENTS_ENDPOINT) {
-            defaultProps.put(PropertyKeys.HEC_ENDPOINT_TYPE, "event");
+            putProperty(PropertyKeys.HEC_ENDPOINT_TYPE, "event");
         } else {
-            defaultProps.put(PropertyKeys.HEC_ENDPOINT_TYPE, "raw");
+            putProperty(PropertyKeys.HEC_ENDPOINT_TYPE, "raw");
         }
     }
 
@@ -415,6 +589,9 @@ public class ConnectionSettings {
                 case PropertyKeys.ACK_TIMEOUT_MS:
                     setAckTimeoutMS(Long.parseLong(diffs.getProperty(key)));
                     break;
+                case PropertyKeys.ACK_POLL_MS:
+                    setAckPollMS(Long.parseLong(diffs.getProperty(key)));
+                    break;
                 case PropertyKeys.COLLECTOR_URI:
                     putProperty(PropertyKeys.COLLECTOR_URI,
                             diffs.getProperty(key));
@@ -463,6 +640,26 @@ public class ConnectionSettings {
         }
     }
 
+    /**
+     * Set the interval between ack polls. See PropertyKeys.ACK_POLL_MS for
+     * more information. Channels restart ack polling with the new interval.
+     * Values below PropertyKeys.MIN_ACK_POLL_MS are raised to it.
+     *
+     * @param ms
+     */
+    public synchronized void setAckPollMS(long ms) {
+        if (ms < PropertyKeys.MIN_ACK_POLL_MS) {
+            LOG.warn("{} of {} is below the minimum, using {}", ACK_POLL_MS, ms, PropertyKeys.MIN_ACK_POLL_MS);
+            ms = PropertyKeys.MIN_ACK_POLL_MS;
+        }
+        if (ms != getAckPollMS()) {
+            putProperty(ACK_POLL_MS, String.valueOf(ms));
+            if (connection.getLoadBalancer() != null) {
+                connection.getLoadBalancer().restartAckPolling();
+            }
+        }
+    }
+
       /**
    * Set Http Event Collector token to use.
    * May take up to PropertyKeys.CHANNEL_DECOM_MS milliseconds
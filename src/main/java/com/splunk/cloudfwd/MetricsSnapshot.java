@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Point in time copy of the counters and gauges of a Connection, one of its destinations, or one of its channels.
+ * The snapshot of a Connection has one child per destination (base URL), and the snapshot of a destination has one
+ * child per channel that is currently open to it. Counters are cumulative since the Connection was created; those
+ * of a destination include channels that have since been closed. Latencies are cumulative too, except in the
+ * snapshots returned by Connection.getIntervalMetrics.
+ *
+ * @see Connection#getMetrics()
+ */
+public class MetricsSnapshot {
+
+    public enum Counter {
+        /** EventBatches posted, including resends */
+        EVENT_POSTS,
+        /** bytes posted, including resends */
+        BYTES_POSTED,
+        /** posts of an EventBatch that had already been sent before */
+        RESENDS,
+        EVENT_POSTS_OK,
+        /** non-200 replies to event posts, including indexer busy and gateway timeouts */
+        EVENT_POSTS_NOT_OK,
+        /** event posts that got no reply at all */
+        EVENT_POST_FAILURES,
+        /** EventBatches acknowledged */
+        ACKS,
+        ACK_POLLS_NOT_OK,
+        ACK_POLL_FAILURES,
+        HEALTH_POLLS_OK,
+        HEALTH_POLLS_NOT_OK,
+        HEALTH_POLL_FAILURES,
+        /** EventBatches that timed out waiting for acknowledgement. Only counted for the Connection as a whole */
+        TIMEOUTS
+    };
+
+    public enum Latency {
+        /** from Connection.send until the EventBatch is handed to a channel, including time blocked in the LoadBalancer */
+        SEND_TO_POST,
+        /** round trip of the event post, from handing the EventBatch to the channel until the post is OK */
+        POST_RTT,
+        /** from handing the EventBatch to the channel until it is acknowledged */
+        POST_TO_ACK,
+        /** from Connection.send until the checkpoint passes the EventBatch */
+        END_TO_END
+    };
+
+    private final String name;
+    private final long[] counts;
+    private final LatencySnapshot[] latencies;
+    private final int unackedCount;
+    private final List<MetricsSnapshot> children;
+
+    public MetricsSnapshot(String name, long[] counts, LatencySnapshot[] latencies, int unackedCount,
+            List<MetricsSnapshot> children) {
+        this.name = name;
+        this.counts = counts;
+        this.latencies = latencies;
+        this.unackedCount = unackedCount;
+        this.children = Collections.unmodifiableList(children);
+    }
+
+    /**
+     * @return "connection" for a Connection, the base URL for a destination, and channelId@baseUrl for a channel
+     */
+    public String getName() {
+        return name;
+    }
+
+    public long get(Counter c) {
+        return counts[c.ordinal()];
+    }
+
+    public LatencySnapshot getLatency(Latency l) {
+        return latencies[l.ordinal()];
+    }
+
+    /**
+     * @return gauge of EventBatches posted but not yet acknowledged, on the open channels
+     */
+    public int getUnackedCount() {
+        return unackedCount;
+    }
+
+    /**
+     * @return destinations of a Connection, channels of a destination, or an empty list for a channel
+     */
+    public List<MetricsSnapshot> getChildren() {
+        return children;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("MetricsSnapshot{name=").append(name);
+        for (Counter c : Counter.values()) {
+            sb.append(", ").append(c).append('=').append(get(c));
+        }
+        for (Latency l : Latency.values()) {
+            sb.append(", ").append(l).append('=').append(getLatency(l));
+        }
+        return sb.append(", unacked=").append(unackedCount).append(", children=").append(children.size())
+                .append('}').toString();
+    }
+
+}
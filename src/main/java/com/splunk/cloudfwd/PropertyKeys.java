@@ -26,7 +26,8 @@ public class PropertyKeys {
   /* **************************** KEYS ************************* */
   /**
    * The authentication token for the Http Event Collector input on the Splunk
-   * destination.
+   * destination. Where it appears in a URL (the /health check) it is
+   * percent-encoded, so pass it unencoded.
    */
   public static final String TOKEN = "splunk_hec_token";
 
@@ -40,6 +41,11 @@ public class PropertyKeys {
   /**
    * Host value for the data feed
    * If none, host field is set to hostname
+   * <p>
+   * HOST, INDEX, SOURCE and SOURCETYPE are percent-encoded into the query of
+   * each event post URL. Pass them unencoded: a value that was already
+   * percent-encoded is encoded twice, and Splunk receives the escapes
+   * literally.
    */
   public static final String HOST = "splunk_hec_host";
 
@@ -47,18 +53,21 @@ public class PropertyKeys {
    * The Splunk index in which the data feed is stored
    * New Index must be created/exist on Splunk to store events.
    * Default: main
+   * Percent-encoded, see HOST.
    */
   public static final String INDEX = "splunk_hec_index";
 
   /**
    * The source of the data feed
    * Default: based on sources EG: filename, network protocol
+   * Percent-encoded, see HOST.
    */
   public static final String SOURCE = "splunk_hec_source";
 
   /**
    * The source type of events of data feed
    * Default: based on pre-defined source types EG:httpevent
+   * Percent-encoded, see HOST.
    */
   public static final String SOURCETYPE = "splunk_hec_sourcetype";
 
@@ -248,6 +257,236 @@ public class PropertyKeys {
    */
   public static final String CHANNEL_QUIESCE_TIMEOUT_MS = "channel_quiesce_timeout_ms";
   
+  /**
+   * When true, the Connection polls, reaps, and resends on its own thread pools
+   * rather than on the process-wide pools shared by all Connections, so that one
+   * misbehaving Connection cannot starve the others. The pools are released when
+   * the Connection is closed.
+   * @see DEFAULT_ISOLATE_THREAD_POOLS
+   */
+  public static final String ISOLATE_THREAD_POOLS = "isolate_thread_pools";
+  
+  /**
+   * When a channel to a destination passes preflight checks or a health poll,
+   * new channels to the same destination (with the same token) skip preflight
+   * checks for this many ms. This lets replacement channels take traffic at
+   * once. Zero or negative disables the cache.
+   * @see DEFAULT_PREFLIGHT_CACHE_TTL_MS
+   */
+  public static final String PREFLIGHT_CACHE_TTL_MS = "preflight_cache_ttl_ms";
+  
+  /**
+   * When true, the Connection constructor returns without waiting for channels
+   * to pass preflight checks. EventBatches sent before the first channel is
+   * available are held in a buffer of up to STARTUP_BUFFER_MAX_BATCHES, and
+   * are sent once a channel is available. If every channel fails preflight,
+   * the buffered EventBatches are failed.
+   * @see DEFAULT_LAZY_STARTUP
+   */
+  public static final String LAZY_STARTUP = "lazy_startup";
+  
+  /**
+   * The maximum number of EventBatches buffered while a lazily started
+   * Connection waits for its first channel. Sends beyond this block, as
+   * they would without the buffer, for up to BLOCKING_TIMEOUT_MS.
+   * @see LAZY_STARTUP
+   * @see DEFAULT_STARTUP_BUFFER_MAX_BATCHES
+   */
+  public static final String STARTUP_BUFFER_MAX_BATCHES = "startup_buffer_max_batches";
+  
+  /**
+   * How long resolved addresses of the URLs are used before the URLs are
+   * re-resolved in the background. When a host name resolves to a new
+   * address, channels are added for it; channels to an address that
+   * disappeared are drained. Zero or negative disables re-resolution. Note
+   * the JVM's own networkaddress.cache.ttl also applies to each lookup.
+   * @see DEFAULT_DNS_CACHE_TTL_MS
+   */
+  public static final String DNS_CACHE_TTL_MS = "dns_cache_ttl_ms";
+  
+  /**
+   * A channel whose p95 post or ack latency, over its most recent EventBatches,
+   * exceeds this multiple of the median p95 of all channels is closed and
+   * replaced. This catches channels that are slow, rather than completely
+   * unresponsive (see UNRESPONSIVE_MS). Zero or negative disables it, which
+   * is the default; 10 is a reasonable value to enable it with.
+   * @see DEFAULT_OUTLIER_LATENCY_MULTIPLE
+   */
+  public static final String OUTLIER_LATENCY_MULTIPLE = "outlier_latency_multiple";
+  
+  /**
+   * How often channels are checked for outlier latency (see
+   * OUTLIER_LATENCY_MULTIPLE). Zero or negative uses the default.
+   * @see DEFAULT_OUTLIER_CHECK_INTERVAL_MS
+   */
+  public static final String OUTLIER_CHECK_INTERVAL_MS = "outlier_check_interval_ms";
+  
+  /**
+   * A channel whose p95 latency is below this is never ejected as an outlier,
+   * however it compares to the median, since it is fast in absolute terms.
+   * @see DEFAULT_OUTLIER_MIN_LATENCY_MS
+   */
+  public static final String OUTLIER_MIN_LATENCY_MS = "outlier_min_latency_ms";
+  
+  /**
+   * Base delay before resending an EventBatch that got a 503 (indexer busy)
+   * or 504 (gateway timeout) response. The delay doubles with each try of
+   * the batch, and is randomized (jittered) between zero and that value.
+   * Zero or negative resends immediately.
+   * @see DEFAULT_RETRY_BACKOFF_BASE_MS
+   * @see RETRY_BACKOFF_MAX_MS
+   */
+  public static final String RETRY_BACKOFF_BASE_MS = "retry_backoff_base_ms";
+  
+  /**
+   * Maximum delay before resending an EventBatch that got a 503 or 504
+   * response. Also caps a Retry-After header sent by the server.
+   * @see DEFAULT_RETRY_BACKOFF_MAX_MS
+   * @see RETRY_BACKOFF_BASE_MS
+   */
+  public static final String RETRY_BACKOFF_MAX_MS = "retry_backoff_max_ms";
+  
+  /**
+   * Over any 10 second window, resends of EventBatches on a Connection may
+   * not exceed this fraction of first sends (plus RETRY_BUDGET_MIN_PER_SEC).
+   * Once the budget is used up, EventBatches that would have been resent are
+   * failed with HecRetryBudgetExceededException. Negative disables the
+   * budget, leaving only RETRIES.
+   * @see DEFAULT_RETRY_BUDGET_RATIO
+   */
+  public static final String RETRY_BUDGET_RATIO = "retry_budget_ratio";
+  
+  /**
+   * Resends per second always allowed by the retry budget, so that a
+   * Connection sending little can still retry.
+   * @see RETRY_BUDGET_RATIO
+   * @see DEFAULT_RETRY_BUDGET_MIN_PER_SEC
+   */
+  public static final String RETRY_BUDGET_MIN_PER_SEC = "retry_budget_min_per_sec";
+  
+  /**
+   * Fraction of recent requests to one destination (indexer address) that
+   * must fail to connect before its circuit breaker opens. While open, none
+   * of the channels to that destination are chosen by the load balancer. A
+   * single health poll probes the destination every CIRCUIT_BREAKER_OPEN_MS,
+   * and the breaker closes when one succeeds. Zero or negative disables the
+   * circuit breakers.
+   * @see DEFAULT_CIRCUIT_BREAKER_FAILURE_RATIO
+   */
+  public static final String CIRCUIT_BREAKER_FAILURE_RATIO = "circuit_breaker_failure_ratio";
+  
+  /**
+   * How long an open circuit breaker waits before probing its destination,
+   * and between probes while the destination stays down.
+   * @see CIRCUIT_BREAKER_FAILURE_RATIO
+   * @see DEFAULT_CIRCUIT_BREAKER_OPEN_MS
+   */
+  public static final String CIRCUIT_BREAKER_OPEN_MS = "circuit_breaker_open_ms";
+  
+  /**
+   * Directory for the spill queue. When set, EventBatches sent while no
+   * channel is available, or while too many bytes are in flight, are appended
+   * to memory-mapped segment files in this directory instead of blocking the
+   * caller. They are sent in order once channels are available again.
+   * Segments are deleted once every EventBatch in them is acknowledged or
+   * failed, and EventBatches still in the directory when a Connection is
+   * created are sent again, so a Connection should have a directory of its
+   * own. Unset (the default) disables the spill queue.
+   * <p>
+   * A spilled EventBatch is read back from disk before it is sent, so the
+   * acknowledged and failed callbacks get an equal EventBatch (same id, same
+   * Event classes and ids), not the instance passed to sendBatch. Event ids
+   * must be Serializable to come back with the same type; any other id comes
+   * back as its String form.
+   * @see SPILL_SEGMENT_BYTES
+   * @see SPILL_MAX_RETRIES
+   */
+  public static final String SPILL_DIR = "spill_dir";
+  
+  /**
+   * Size of each spill queue segment file. A larger EventBatch gets a
+   * segment of its own.
+   * @see SPILL_DIR
+   * @see DEFAULT_SPILL_SEGMENT_BYTES
+   */
+  public static final String SPILL_SEGMENT_BYTES = "spill_segment_bytes";
+  
+  /**
+   * How many more times the spill queue tries to send a spilled EventBatch
+   * after no channel became available within BLOCKING_TIMEOUT_MS. The
+   * EventBatch is then failed with HecConnectionTimeoutException.
+   * @see SPILL_DIR
+   * @see DEFAULT_SPILL_MAX_RETRIES
+   */
+  public static final String SPILL_MAX_RETRIES = "spill_max_retries";
+  
+  /**
+   * File in which to persist the checkpoint, so that after a restart
+   * Connection.getLastDurableCheckpoint reports where the previous process got
+   * to. Requires ENABLE_CHECKPOINTS. Writes are coalesced, so the file lags
+   * the checkpoint callback by up to CHECKPOINT_FLUSH_MS. Unset (the default)
+   * disables persistence.
+   * @see CHECKPOINT_FLUSH_MS
+   */
+  public static final String CHECKPOINT_FILE = "checkpoint_file";
+  
+  /**
+   * Interval at which the latest checkpoint is written and fsynced to
+   * CHECKPOINT_FILE.
+   * @see CHECKPOINT_FILE
+   * @see DEFAULT_CHECKPOINT_FLUSH_MS
+   */
+  public static final String CHECKPOINT_FLUSH_MS = "checkpoint_flush_ms";
+  
+  /**
+   * If true, the Connection registers MXBeans with the platform MBeanServer
+   * under the com.splunk.cloudfwd domain: one for the Connection, one for its
+   * LoadBalancer, and one per channel.
+   * @see DEFAULT_ENABLE_JMX
+   */
+  public static final String ENABLE_JMX = "enable_jmx";
+  
+  /**
+   * Where ConnectionCallbacks run. "caller" (the default) invokes them on
+   * whichever internal thread raised them, such as an HTTP I/O thread or the
+   * timeout checker. "ordered" hands them to a per-Connection queue that is
+   * delivered one callback at a time on the "callback_executor" pool, so a
+   * slow callback holds up only later callbacks, never the Connection's own
+   * threads. Callbacks are delivered in the order they were raised: an
+   * EventBatch is acknowledged before it is checkpointed, and checkpoints
+   * increase. Connection.setCallbackExecutor supplies an Executor of your own.
+   * @see DEFAULT_CALLBACK_EXECUTOR
+   */
+  public static final String CALLBACK_EXECUTOR = "callback_executor";
+  
+  /**
+   * A successful event post or ack poll shows that a destination is alive, so
+   * its health is polled only when it has had no such success for this many
+   * ms, or when one of its channels is unhealthy. Busy destinations then get
+   * few or no health polls, while idle ones are still polled every
+   * HEALTH_POLL_MS. Zero or negative polls every HEALTH_POLL_MS regardless.
+   * @see DEFAULT_HEALTH_POLL_IDLE_MS
+   */
+  public static final String HEALTH_POLL_IDLE_MS = "health_poll_idle_ms";
+  
+  /**
+   * How long a channel that got a 503 (indexer busy) response to an event
+   * post is kept out of the load balancer's rotation. The window doubles with
+   * each further 503, up to RETRY_BACKOFF_MAX_MS, and halves with each
+   * successful event post or health poll. A Retry-After header replaces the
+   * window for that 503. Zero or negative disables the cool-down.
+   * @see DEFAULT_BUSY_COOLDOWN_MS
+   * @see BUSY_COOLDOWN_DESTINATION
+   */
+  public static final String BUSY_COOLDOWN_MS = "busy_cooldown_ms";
+  
+  /**
+   * If true, a 503 cools down every channel to the destination (indexer
+   * address) rather than just the channel that got it.
+   * @see BUSY_COOLDOWN_MS
+   */
+  public static final String BUSY_COOLDOWN_DESTINATION = "busy_cooldown_destination";
+  
 
   /* **************************** REQUIRED KEYS ************************* */
 
@@ -363,6 +602,132 @@ public class PropertyKeys {
    * @see CHANNEL_QUIESCE_TIMEOUT_MS
    */
   public static final String DEFAULT_CHANNEL_QUIESCE_TIMEOUT_MS = "180000";
+  
+  /**
+   * By default all Connections share the process-wide thread pools.
+   * @see ISOLATE_THREAD_POOLS
+   */
+  public static final String DEFAULT_ISOLATE_THREAD_POOLS = "false";
+  
+  /**
+   * Default value for PREFLIGHT_CACHE_TTL_MS property.
+   * @see PREFLIGHT_CACHE_TTL_MS
+   */
+  public static final String DEFAULT_PREFLIGHT_CACHE_TTL_MS = "60000"; //1 min
+  
+  /**
+   * By default the Connection constructor waits for channels' preflight checks.
+   * @see LAZY_STARTUP
+   */
+  public static final String DEFAULT_LAZY_STARTUP = "false";
+  
+  /**
+   * Default value for STARTUP_BUFFER_MAX_BATCHES property.
+   * @see STARTUP_BUFFER_MAX_BATCHES
+   */
+  public static final String DEFAULT_STARTUP_BUFFER_MAX_BATCHES = "100";
+  
+  /**
+   * Default value for DNS_CACHE_TTL_MS property.
+   * @see DNS_CACHE_TTL_MS
+   */
+  public static final String DEFAULT_DNS_CACHE_TTL_MS = "60000"; //1 min
+  
+  /**
+   * Default value for OUTLIER_LATENCY_MULTIPLE property.
+   * @see OUTLIER_LATENCY_MULTIPLE
+   */
+  public static final String DEFAULT_OUTLIER_LATENCY_MULTIPLE = "0"; //disabled
+  
+  /**
+   * Default value for OUTLIER_CHECK_INTERVAL_MS property.
+   * @see OUTLIER_CHECK_INTERVAL_MS
+   */
+  public static final String DEFAULT_OUTLIER_CHECK_INTERVAL_MS = "1000"; //1 sec
+  
+  /**
+   * Default value for OUTLIER_MIN_LATENCY_MS property.
+   * @see OUTLIER_MIN_LATENCY_MS
+   */
+  public static final String DEFAULT_OUTLIER_MIN_LATENCY_MS = "100";
+  
+  /**
+   * Default value for RETRY_BACKOFF_BASE_MS property.
+   * @see RETRY_BACKOFF_BASE_MS
+   */
+  public static final String DEFAULT_RETRY_BACKOFF_BASE_MS = "100";
+  
+  /**
+   * Default value for RETRY_BACKOFF_MAX_MS property.
+   * @see RETRY_BACKOFF_MAX_MS
+   */
+  public static final String DEFAULT_RETRY_BACKOFF_MAX_MS = "10000"; //10 sec
+  
+  /**
+   * Default value for RETRY_BUDGET_RATIO property.
+   * @see RETRY_BUDGET_RATIO
+   */
+  public static final String DEFAULT_RETRY_BUDGET_RATIO = "0.2";
+  
+  /**
+   * Default value for RETRY_BUDGET_MIN_PER_SEC property.
+   * @see RETRY_BUDGET_MIN_PER_SEC
+   */
+  public static final String DEFAULT_RETRY_BUDGET_MIN_PER_SEC = "10";
+  
+  /**
+   * Default value for CIRCUIT_BREAKER_FAILURE_RATIO property.
+   * @see CIRCUIT_BREAKER_FAILURE_RATIO
+   */
+  public static final String DEFAULT_CIRCUIT_BREAKER_FAILURE_RATIO = "0.5";
+  
+  /**
+   * Default value for CIRCUIT_BREAKER_OPEN_MS property.
+   * @see CIRCUIT_BREAKER_OPEN_MS
+   */
+  public static final String DEFAULT_CIRCUIT_BREAKER_OPEN_MS = "5000"; //5 sec
+  
+  /**
+   * Default value for SPILL_SEGMENT_BYTES property.
+   * @see SPILL_SEGMENT_BYTES
+   */
+  public static final String DEFAULT_SPILL_SEGMENT_BYTES = "67108864"; //64 MB
+  
+  /**
+   * Default value for SPILL_MAX_RETRIES property.
+   * @see SPILL_MAX_RETRIES
+   */
+  public static final String DEFAULT_SPILL_MAX_RETRIES = "3";
+  
+  /**
+   * Default value for CHECKPOINT_FLUSH_MS property.
+   * @see CHECKPOINT_FLUSH_MS
+   */
+  public static final String DEFAULT_CHECKPOINT_FLUSH_MS = "1000"; //1 sec
+  
+  /**
+   * Default value for ENABLE_JMX property.
+   * @see ENABLE_JMX
+   */
+  public static final String DEFAULT_ENABLE_JMX = "false";
+  
+  /**
+   * Default value for CALLBACK_EXECUTOR property.
+   * @see CALLBACK_EXECUTOR
+   */
+  public static final String DEFAULT_CALLBACK_EXECUTOR = "caller";
+  
+  /**
+   * Default value for HEALTH_POLL_IDLE_MS property.
+   * @see HEALTH_POLL_IDLE_MS
+   */
+  public static final String DEFAULT_HEALTH_POLL_IDLE_MS = "1000"; //1 sec, same as DEFAULT_HEALTH_POLL_MS
+  
+  /**
+   * Default value for BUSY_COOLDOWN_MS property.
+   * @see BUSY_COOLDOWN_MS
+   */
+  public static final String DEFAULT_BUSY_COOLDOWN_MS = "250";
 
 
 
@@ -21,6 +21,7 @@ import com.splunk.cloudfwd.ConnectionSettings;
 import com.splunk.cloudfwd.Event;
 import com.splunk.cloudfwd.EventBatch;
 import com.splunk.cloudfwd.HecHealth;
+import com.splunk.cloudfwd.MetricsSnapshot;
 import com.splunk.cloudfwd.error.HecConnectionStateException;
 import com.splunk.cloudfwd.error.HecConnectionTimeoutException;
 import com.splunk.cloudfwd.HecLoggerFactory;
@@ -28,17 +29,24 @@ import static com.splunk.cloudfwd.PropertyKeys.*;
 import com.splunk.cloudfwd.error.HecNoValidChannelsException;
 import com.splunk.cloudfwd.impl.util.CallbackInterceptor;
 import com.splunk.cloudfwd.impl.util.CheckpointManager;
+import com.splunk.cloudfwd.impl.util.ConnectionMonitor;
+import com.splunk.cloudfwd.impl.util.MetricsRegistry;
 import com.splunk.cloudfwd.impl.util.HecChannel;
 import com.splunk.cloudfwd.impl.util.LoadBalancer;
 import com.splunk.cloudfwd.impl.util.PropertiesFileHelper;
+import com.splunk.cloudfwd.impl.util.ResendScheduler;
+import com.splunk.cloudfwd.impl.util.SpillQueue;
+import com.splunk.cloudfwd.impl.util.ThreadScheduler;
 import com.splunk.cloudfwd.impl.util.TimeoutChecker;
 import java.net.URL;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,12 +65,17 @@ public class ConnectionImpl implements Connection {
   private final Logger LOG;
   private final LoadBalancer lb;
   private CheckpointManager checkpointManager; //consolidate metrics across all channels
+  private final MetricsRegistry metricsRegistry;
+  private final ConnectionMonitor monitor; //JMX
   private CallbackInterceptor callbacks;
   private TimeoutChecker timeoutChecker;
-  private boolean closed;
+  private final ResendScheduler resendScheduler;
+  private final SpillQueue spillQueue;
+  private volatile boolean closed;
   private EventBatchImpl events; //default EventBatchImpl used if send(event) is called
   private PropertiesFileHelper propertiesFileHelper;
   private boolean quiesced;
+  private volatile String threadPoolScope; //null unless ISOLATE_THREAD_POOLS, and again once its pools are shut down
 
 
   public ConnectionImpl(ConnectionCallbacks callbacks) {
@@ -76,7 +89,12 @@ public class ConnectionImpl implements Connection {
     }   
     this.LOG = this.getLogger(ConnectionImpl.class.getName());
     this.propertiesFileHelper = new PropertiesFileHelper(this,settings);
+    this.threadPoolScope = propertiesFileHelper.isThreadPoolIsolationEnabled() ? ThreadScheduler.newScope() : null;
     this.checkpointManager = new CheckpointManager(this);
+    this.metricsRegistry = new MetricsRegistry(this);
+    this.monitor = new ConnectionMonitor(this); //before the LoadBalancer, whose channels register with it
+    this.resendScheduler = new ResendScheduler(this);
+    this.spillQueue = new SpillQueue(this);
     this.callbacks = new CallbackInterceptor(callbacks, this); //callbacks must be sent before cosntructing LoadBalancer    
     this.lb = new LoadBalancer(this);
     this.events = new EventBatchImpl();
@@ -89,7 +107,11 @@ public class ConnectionImpl implements Connection {
     //Event if they want it delivered. On success, the same thing muse happen - everyone tracking event batch
     //must cancelEventTrackers their tracking. Therefore, we intercept the success and fail callbacks by calling cancelEventTrackers()
     //*before* those two functions (failed, or acknowledged) are invoked.
-    throwExceptionIfNoChannelOK();
+    if (!propertiesFileHelper.isLazyStartup()) {
+        throwExceptionIfNoChannelOK();
+    }
+    spillQueue.start(); //replays anything left spilled by a previous Connection
+    monitor.register();
   }
   
   /**
@@ -104,10 +126,27 @@ public class ConnectionImpl implements Connection {
         return getPropertiesFileHelper();
     }
   
+    /**
+     * @return the scope to pass to ThreadScheduler, or null if this Connection uses the shared pools. Once the
+     * Connection is closed and drained its scoped pools are shut down and this returns null, so stragglers (such as
+     * lifecycle events of requests that were in flight) run on the shared pools instead of re-creating scoped ones.
+     */
+    public String getThreadPoolScope() {
+      return threadPoolScope;
+    }
+  
     public CheckpointManager getCheckpointManager() {
       return this.checkpointManager;
     }
   
+    public ResendScheduler getResendScheduler() {
+      return this.resendScheduler;
+    }
+  
+    public SpillQueue getSpillQueue() {
+      return this.spillQueue;
+    }
+  
   public long getAckTimeoutMS() {
     return propertiesFileHelper.getAckTimeoutMS();
   }
@@ -132,6 +171,11 @@ public class ConnectionImpl implements Connection {
     }
     //wait until after flush to set closed to true (otherwise flush->sendBatch will complain that connection is closed)
     this.closed = true;
+    if (!spillQueue.awaitDrained(getBlockingTimeoutMS())) {
+      LOG.warn("Closing with spilled EventBatches not yet sent");
+    }
+    spillQueue.close();
+    checkpointManager.closeStoreIfIdle();
     //we must close asynchronously to prevent deadlocking
     //when close() is invoked from a callback like the
     //Exception handler
@@ -141,24 +185,37 @@ public class ConnectionImpl implements Connection {
       timeoutChecker.queisce();
       latch.countDown();
     }, "Connection Closer").start();
+    monitor.unregister();
     try {
       latch.await();
     } catch (InterruptedException ex) {
       LOG.error(ex.getMessage(), ex);
     }
+    if (!callbacks.awaitDelivered(getBlockingTimeoutMS())) {
+      LOG.warn("Closing with callbacks not yet delivered");
+    }
+    releaseThreadPoolsIfDrained(); //otherwise released by the last channel to close, or the last checkpoint
   }
 
     @Override
   public void closeNow() {
     this.closed = true;
+    spillQueue.close();
+    spillQueue.release();
+    checkpointManager.getStore().close();
+    monitor.unregister();
     //we must close asynchronously to prevent deadlocking
     //when closeNow() is invoked from a callback like the
     //Exception handler
     CountDownLatch latch = new CountDownLatch(1);
     new Thread(() -> {
-      lb.closeNow();
-      timeoutChecker.closeNow();
-      latch.countDown();
+      try {
+        lb.closeNow();
+        timeoutChecker.closeNow();
+      } finally { //a callback that throws must neither strand the scoped pools nor leave closeNow waiting
+        releaseThreadPools();
+        latch.countDown();
+      }
     }, "Connection Closer").start();
     try {
       latch.await();
@@ -167,6 +224,22 @@ public class ConnectionImpl implements Connection {
     }
   }
 
+  /**
+   * Shuts down the scoped thread pools once the Connection is closed, every channel has finished closing, and no
+   * EventBatch awaits its checkpoint. Until then ack polls, event timeouts and callbacks still run on them.
+   */
+  public void releaseThreadPoolsIfDrained() {
+    if (closed && null != threadPoolScope && null != lb && lb.isDrained() && checkpointManager.isIdle()) {
+      releaseThreadPools();
+    }
+  }
+
+  private void releaseThreadPools() {
+    String scope = threadPoolScope;
+    threadPoolScope = null;
+    ThreadScheduler.shutdownScope(scope);
+  }
+
   /**
    * The send method will send the Event immediately unless buffering is enabled. Buffering is 
  enabled via either the setEventBatchSize method, or the EVENT_BATCH_SIZE property key. The buffer
@@ -214,10 +287,6 @@ public class ConnectionImpl implements Connection {
       return 0;
     }
     
-    if(LOG.isInfoEnabled()){
-        logLBHealth();
-    }
-    
     ((EventBatchImpl)events).setSendTimestamp(System.currentTimeMillis());
     //must null the evenbts before lb.sendBatch. If not, event can continue to be added to the 
     //batch while it is in the load balancer. Furthermore, if sending fails, then close() will try to
@@ -225,14 +294,34 @@ public class ConnectionImpl implements Connection {
     this.events = null; //batch is in flight, null it out.
     //check to make sure the endpoint can absorb all the event formats in the batch
     ((EventBatchImpl)events).checkAndSetCompatibility(propertiesFileHelper.getHecEndpointType());
-    timeoutChecker.start();
-    timeoutChecker.add((EventBatchImpl)events);
-    LOG.debug("sending  characters {} for id {}", events.getLength(),events.getId());
-    lb.sendBatch((EventBatchImpl)events);
+    if (spillQueue.offer((EventBatchImpl)events)) {
+      return events.getLength(); //the spill queue will send it when a channel is available
+    }
+    dispatch((EventBatchImpl)events);
     //return the number of characters posted to HEC for the events data
     return events.getLength();
   }
 
+  /**
+   * Sends an EventBatch read back from the SpillQueue. Not synchronized, so that the drainer can block in the
+   * LoadBalancer without holding up send and sendBatch, which spill until the drainer catches up.
+   * @param events
+   * @throws HecConnectionTimeoutException
+   * @throws HecNoValidChannelsException
+   */
+  public void sendSpilled(EventBatchImpl events) throws HecConnectionTimeoutException, HecNoValidChannelsException {
+    events.setSendTimestamp(System.currentTimeMillis());
+    events.checkAndSetCompatibility(propertiesFileHelper.getHecEndpointType());
+    dispatch(events);
+  }
+
+  private void dispatch(EventBatchImpl events) throws HecConnectionTimeoutException, HecNoValidChannelsException {
+    timeoutChecker.start();
+    timeoutChecker.add(events);
+    LOG.debug("sending  characters {} for id {}", events.getLength(),events.getId());
+    lb.sendBatch(events);
+  }
+
     @Override
   public synchronized void flush() throws HecConnectionTimeoutException, HecNoValidChannelsException {
     if (null != events && events.getNumEvents() != 0) {
@@ -303,6 +392,11 @@ public class ConnectionImpl implements Connection {
     loggerFactory = f;
   }
 
+  @Override
+  public void setCallbackExecutor(Executor e) {
+    callbacks.setExecutor(e);
+  }
+
     public Logger getLogger(String name) {
         Logger logger = loggers.get(name); //memoize the loggers
         if (null == logger) {
@@ -321,6 +415,34 @@ public class ConnectionImpl implements Connection {
         return lb.getHealth();
     }
     
+    @Override
+    public CompletableFuture<List<HecHealth>> getHealthFuture() {
+        return lb.getHealthFuture();
+    }
+
+    @Override
+    public MetricsSnapshot getMetrics() {
+        return metricsRegistry.snapshot(false);
+    }
+
+    @Override
+    public MetricsSnapshot getIntervalMetrics() {
+        return metricsRegistry.snapshot(true);
+    }
+
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    public ConnectionMonitor getMonitor() {
+        return monitor;
+    }
+
+    @Override
+    public Comparable getLastDurableCheckpoint() {
+        return checkpointManager.getStore().getLastDurable();
+    }
+    
     private void throwExceptionIfNoChannelOK()  {
         List<HecHealth> healths = lb.getHealth(); //returns after every channel either has gotten its health or given up trying
         if(healths.isEmpty()){            
@@ -337,57 +459,6 @@ public class ConnectionImpl implements Connection {
             //throw whatever exception caused the first unhealthy channel to be unhealthy
             throw healths.stream().filter(e->!e.isHealthy()).findFirst().get().getStatusException();
         } 
-   }  
-
-
-    private void logLBHealth() {
-        List<HecHealth> channelHealths = lb.getHealthNonBlocking();
-        int _preflightCompleted=0;
-        int _closed=0;
-        int _closedFinished=0;
-        int _quiesced=0;
-        int  _healthy = 0;
-        int _full = 0;
-        int _misconfigured=0;
-        int _dead=0;
-        int _decomissioned=0;   
-        int _available=0;
-        for(HecHealth h:channelHealths){
-            LOG.trace("{}", h);
-            if(h.getChannel().isPreflightCompleted()){
-                _preflightCompleted++;
-            }
-            if(h.isHealthy()){
-                _healthy++;
-            }
-            if(h.getChannel().isAvailable()){
-                _available++;
-            }            
-            if(h.isFull()){
-                _full++;
-            }            
-            if(h.isMisconfigured()){
-                _misconfigured++;
-            }
-            if(h.getChannel().isQuiesced()){
-                _quiesced++;
-            }
-            if(!h.getTimeSinceDeclaredDead().isZero()){
-                _dead++;
-            }
-            if(!h.getTimeSinceDecomissioned().isZero()){
-                _decomissioned++;
-            }
-            if(h.getChannel().isClosed()){
-                _closed++;
-            }
-            if(h.getChannel().isCloseFinished()){
-                _closedFinished++;
-            }            
-        }
-        
-        LOG.info("LOAD BALANCER: channels={}, preflighted={}, available={}, healthy={}, full={}, quiesced={}, decommed={}, dead={}, closed={}, closedFinished={}, misconfigured={}", 
-                channelHealths.size(), _preflightCompleted ,_available, _healthy, _full,  _quiesced, _decomissioned, _dead, _closed,_closedFinished, _misconfigured);
-    }
+   }
 
 }
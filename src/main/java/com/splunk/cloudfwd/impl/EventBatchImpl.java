@@ -62,6 +62,8 @@ public class EventBatchImpl implements EventBatch {
   protected boolean acknowledged;
   private boolean failed;
   private long sendTimestamp = System.currentTimeMillis();
+  private long sendNanos = System.nanoTime(); //sendTimestamp, for latency histograms
+  private long postNanos; //when the batch was handed to its current HecChannel
   protected int numEvents;
   protected int numTries; //events are resent by DeadChannelDetector
   protected int length;
@@ -208,6 +210,13 @@ public class EventBatchImpl implements EventBatch {
     return length;
   }
 
+  /**
+   * @return the Events in the order they were added
+   */
+  public List<Event> getEvents() {
+    return events;
+  }
+
   @Override
   public HttpEntity getEntity() {
     AbstractHttpEntity e = new HttpEventBatchEntity();
@@ -302,6 +311,7 @@ public class EventBatchImpl implements EventBatch {
    */
   public void setHecChannel(HecChannel hecChannel) {
     this.hecChannel = hecChannel;
+    this.postNanos = System.nanoTime();
     LOG = this.getHecChannel().getConnection().getLogger(EventBatchImpl.class.getName());
   }
 
@@ -323,6 +333,22 @@ public class EventBatchImpl implements EventBatch {
 
     public void setSendTimestamp(long currentTimeMillis) {
         this.sendTimestamp = currentTimeMillis;
+        this.sendNanos = System.nanoTime();
+    }
+
+    /**
+     * @return System.nanoTime() when sendTimestamp was set
+     */
+    public long getSendNanos() {
+        return sendNanos;
+    }
+
+    /**
+     * Unlike the sendNanos, this excludes time spent waiting in the LoadBalancer for a channel.
+     * @return System.nanoTime() when the batch was handed to its current HecChannel
+     */
+    public long getPostNanos() {
+        return postNanos;
     }
 
     /**
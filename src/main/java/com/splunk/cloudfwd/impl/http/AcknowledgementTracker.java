@@ -20,13 +20,16 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.splunk.cloudfwd.error.HecIllegalStateException;
 import com.splunk.cloudfwd.impl.http.lifecycle.EventBatchResponse;
+import com.splunk.cloudfwd.impl.http.lifecycle.EventBatchesAcknowledged;
 import com.splunk.cloudfwd.LifecycleEvent;
 import com.splunk.cloudfwd.impl.util.EventTracker;
 import com.splunk.cloudfwd.impl.ConnectionImpl;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -96,14 +99,24 @@ public class AcknowledgementTracker implements EventTracker {
 
   public void handleEventPostResponse(EventPostResponseValueObject epr,
           EventBatchImpl events) {
-    Long ackId = epr.getAckId();
+    handleEventPostResponse(epr.getAckId(), events);
+  }
+
+  public void handleEventPostResponse(long ackId, EventBatchImpl events) {
     polledAcksByAckId.put(ackId, events);
   }
 
   public void handleAckPollResponse(AckPollResponseValueObject apr) {
+    handleAckPollResponse(apr.getSuccessIds());
+  }
+
+  /**
+   * @param succeeded the ackIds the ack poll response reported as true
+   */
+  public void handleAckPollResponse(Collection<Long> succeeded) {
     EventBatchImpl events = null;
+    List<EventBatchResponse> acked = new ArrayList<>();
     try {
-      Collection<Long> succeeded = apr.getSuccessIds();
       LOG.debug("Channel:{} success acked ids: {}", sender.getChannel(),
               succeeded);
       if (succeeded.isEmpty()) {
@@ -115,7 +128,7 @@ public class AcknowledgementTracker implements EventTracker {
           LOG.warn(
                   "Got acknowledgement on ackId: {} but we're no long tracking that ackId",
                   ackId);
-          return;
+          continue;
         }
         events.setAcknowledged(true);    
         //System.out.println("got ack on channel=" + events.getSender().getChannel() + ", seqno=" + events.getId() +", ackid=" + events.getAckId());
@@ -129,7 +142,7 @@ public class AcknowledgementTracker implements EventTracker {
                   HecIllegalStateException.Type.ACK_ID_MISMATCH);
         }
 
-        this.sender.getChannelMetrics().update(new EventBatchResponse(
+        acked.add(new EventBatchResponse(
                 LifecycleEvent.Type.ACK_POLL_OK, 200, "N/A", //we don't care about the message body on 200
                 events,sender.getBaseUrl()));
         //eventBatches.remove(events.getId());
@@ -139,6 +152,11 @@ public class AcknowledgementTracker implements EventTracker {
       LOG.error("caught exception in handleAckPollResponse: " + e.getMessage(),
               e);
       sender.getConnection().getCallbacks().failed(events, e);
+    } finally {
+      if (!acked.isEmpty()) {
+        //one update for the whole poll, so the acknowledged EventBatches cost one checkpoint lock and one callback
+        this.sender.getChannelMetrics().update(new EventBatchesAcknowledged(acked, sender.getBaseUrl()));
+      }
     }
   }
 
@@ -17,41 +17,206 @@ package com.splunk.cloudfwd.impl.http;
 
 import com.splunk.cloudfwd.impl.ConnectionImpl;
 import com.splunk.cloudfwd.LifecycleEvent;
+import com.splunk.cloudfwd.MetricsSnapshot.Counter;
+import com.splunk.cloudfwd.MetricsSnapshot.Latency;
+import com.splunk.cloudfwd.impl.EventBatchImpl;
+import com.splunk.cloudfwd.impl.http.lifecycle.EventBatchResponse;
+import com.splunk.cloudfwd.impl.http.lifecycle.EventBatchesAcknowledged;
 import com.splunk.cloudfwd.impl.http.lifecycle.LifecycleEventObservable;
 import com.splunk.cloudfwd.impl.http.lifecycle.LifecycleEventObserver;
+import com.splunk.cloudfwd.impl.util.ThreadScheduler;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.slf4j.Logger;
 
 /**
+ * Counts the LifecycleEvents of a channel in its Counters, and records post and acknowledgement latencies in its
+ * Latencies, then forwards the LifecycleEvents to the observers.
+ * <p>
+ * Counting happens on the thread that raised the LifecycleEvent, typically an HTTP I/O dispatcher thread, but the
+ * observers (HecChannel, CheckpointManager, and through them the ConnectionCallbacks) do not run there. Each observer
+ * has its own mailbox, and a task on the lifecycle_dispatcher executor delivers a mailbox's events in the order they
+ * were raised, up to MAX_BATCH at a time. At most one such task runs per mailbox, so each observer sees the channel's
+ * events one at a time and in order. A slow observer holds up only its own mailbox: a ConnectionCallback that blocks
+ * in the CheckpointManager's mailbox delays neither the I/O threads shared by every channel, nor the HecChannel's view
+ * of its own health and latency. If the lifecycle_dispatcher rejects the task, because it is saturated or its
+ * Connection's scoped pool was shut down, the mailbox is delivered on the raising thread instead of being stranded.
  *
  * @author ghendrey
  */
 public class ChannelMetrics extends LifecycleEventObservable implements LifecycleEventObserver {
 
     private final Logger LOG;
+    private final Counters counters;
+    private final Latencies latencies;
+    static final int MAX_BATCH = 64; //events delivered per task, before yielding the thread to other mailboxes
+    private final Map<LifecycleEventObserver, Mailbox> mailboxes = new ConcurrentHashMap<>();
 
-    /*
-  private long eventPostCount;
-  private long eventPostOKCount;
-  private long eventPostNotOKCount;
-  private long eventPostFailureCount;
-  private long ackPollCount;
-  private long ackPollOKCount;
-  private long ackPollNotOKCount;
-  private long ackPollFailureCount;
-
-     */
-    // health-related
-    //private boolean lastHealthCheck;
-    // private long healthPollOKCount;
-    // private long healthPollNotOKCount;
-    // private long healthPollFailureCount;
-    public ChannelMetrics(ConnectionImpl c) {
+    public ChannelMetrics(ConnectionImpl c, Counters counters, Latencies latencies) {
         super(c);
         this.LOG = c.getLogger(ChannelMetrics.class.getName());
+        this.counters = counters;
+        this.latencies = latencies;
+    }
+
+    public Counters getCounters() {
+        return counters;
+    }
+
+    public Latencies getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Counts an EventBatch handed to the channel's HttpSender.
+     * @param events
+     */
+    public void posted(EventBatchImpl events) {
+        counters.increment(Counter.EVENT_POSTS);
+        counters.add(Counter.BYTES_POSTED, events.getLength());
+        if (events.getNumTries() > 1) {
+            counters.increment(Counter.RESENDS);
+        }
+        latencies.record(Latency.SEND_TO_POST, micros(events.getPostNanos() - events.getSendNanos()));
     }
-    
+
+    /**
+     * Records the time from Connection.send until the checkpoint passed the EventBatch.
+     * @param events
+     */
+    public void checkpointed(EventBatchImpl events) {
+        latencies.record(Latency.END_TO_END, micros(System.nanoTime() - events.getSendNanos()));
+    }
+
+    private void recordSincePost(Latency l, LifecycleEvent e) {
+        if (e instanceof EventBatchResponse) {
+            latencies.record(l, micros(System.nanoTime() - ((EventBatchResponse) e).getEvents().getPostNanos()));
+        }
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1000;
+    }
+
+    @Override
+    public void addObserver(LifecycleEventObserver o) {
+        mailboxes.putIfAbsent(o, new Mailbox(o));
+    }
+
+    @Override
+    public void removeObserver(LifecycleEventObserver o) {
+        mailboxes.remove(o);
+    }
+
     @Override
     public void update(LifecycleEvent e) {
-        notifyObservers(e);
+        count(e);
+        mailboxes.values().forEach(m -> m.add(e));
+    }
+
+    private void count(LifecycleEvent e) {
+        switch (e.getType()) {
+            case EVENT_POST_OK:
+                recordSincePost(Latency.POST_RTT, e);
+                counters.increment(Counter.EVENT_POSTS_OK);
+                break;
+            case EVENT_POST_ACKS_DISABLED:
+                counters.increment(Counter.EVENT_POSTS_OK);
+                break;
+            case EVENT_POST_NOT_OK:
+            case EVENT_POST_INDEXER_BUSY:
+            case EVENT_POST_GATEWAY_TIMEOUT:
+                counters.increment(Counter.EVENT_POSTS_NOT_OK);
+                break;
+            case EVENT_POST_FAILED:
+                counters.increment(Counter.EVENT_POST_FAILURES);
+                break;
+            case ACK_POLL_OK:
+                if (e instanceof EventBatchesAcknowledged) {
+                    List<EventBatchResponse> acked = ((EventBatchesAcknowledged) e).getResponses();
+                    acked.forEach(r -> recordSincePost(Latency.POST_TO_ACK, r));
+                    counters.add(Counter.ACKS, acked.size()); //one per acknowledged EventBatch
+                } else {
+                    recordSincePost(Latency.POST_TO_ACK, e);
+                    counters.increment(Counter.ACKS);
+                }
+                break;
+            case ACK_POLL_NOT_OK:
+                counters.increment(Counter.ACK_POLLS_NOT_OK);
+                break;
+            case ACK_POLL_FAILURE:
+                counters.increment(Counter.ACK_POLL_FAILURES);
+                break;
+            case HEALTH_POLL_OK:
+                counters.increment(Counter.HEALTH_POLLS_OK);
+                break;
+            case INDEXER_BUSY:
+            case INDEXER_IN_DETENTION:
+            case HEALTH_POLL_ERROR:
+                counters.increment(Counter.HEALTH_POLLS_NOT_OK);
+                break;
+            case HEALTH_POLL_FAILED:
+                counters.increment(Counter.HEALTH_POLL_FAILURES);
+                break;
+            default:
+                break;
+        }
     }
+
+    private class Mailbox {
+
+        private final LifecycleEventObserver observer;
+        private final Queue<LifecycleEvent> events = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Mailbox(LifecycleEventObserver observer) {
+            this.observer = observer;
+        }
+
+        void add(LifecycleEvent e) {
+            events.add(e);
+            scheduleDelivery();
+        }
+
+        //a rejected submit must not leave scheduled set, or the mailbox would never be delivered again
+        private void scheduleDelivery() {
+            if (!scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                ThreadScheduler.getRejectingExecutorInstance("lifecycle_dispatcher", connection.getThreadPoolScope())
+                        .execute(this::deliver);
+            } catch (RejectedExecutionException ex) {
+                LOG.warn("lifecycle_dispatcher rejected delivery to {} ({}), delivering on {}", observer,
+                        ex.getMessage(), Thread.currentThread().getName());
+                deliver(); //resets scheduled
+            }
+        }
+
+        private void deliver() {
+            try {
+                LifecycleEvent e;
+                for (int i = 0; i < MAX_BATCH && null != (e = events.poll()); i++) {
+                    try {
+                        observer.update(e);
+                    } catch (Exception ex) {
+                        LOG.error(ex.getMessage(), ex);
+                        connection.getCallbacks().systemError(ex);
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+                //more arrived while delivering, the batch was full, or an Error escaped the observer
+                if (!events.isEmpty()) {
+                    scheduleDelivery();
+                }
+            }
+        }
+    }
+
 }
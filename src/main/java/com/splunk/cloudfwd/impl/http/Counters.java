@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.http;
+
+import com.splunk.cloudfwd.MetricsSnapshot.Counter;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One LongAdder per MetricsSnapshot.Counter. Counters form a tree (channel, destination, connection): adding to a
+ * channel's Counters also adds to its destination's and to the connection's, so rollups cost a few uncontended adds
+ * rather than a sum over channels, and survive the channels being closed.
+ */
+public class Counters {
+
+    private final LongAdder[] adders = new LongAdder[Counter.values().length];
+    private final Counters parent; //null for the connection
+
+    public Counters(Counters parent) {
+        this.parent = parent;
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+    }
+
+    public void increment(Counter c) {
+        add(c, 1);
+    }
+
+    public void add(Counter c, long n) {
+        for (Counters x = this; null != x; x = x.parent) {
+            x.adders[c.ordinal()].add(n);
+        }
+    }
+
+    public long[] sum() {
+        long[] sums = new long[adders.length];
+        for (int i = 0; i < adders.length; i++) {
+            sums[i] = adders[i].sum();
+        }
+        return sums;
+    }
+
+}
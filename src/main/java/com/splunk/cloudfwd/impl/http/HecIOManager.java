@@ -26,8 +26,10 @@ import com.splunk.cloudfwd.impl.http.httpascync.GenericCoordinatedResponseHandle
 import com.splunk.cloudfwd.impl.http.httpascync.NoDataEventPostResponseHandler;
 import com.splunk.cloudfwd.impl.http.httpascync.ResponseCoordinator;
 import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,13 +52,14 @@ public class HecIOManager implements Closeable {
 
     private Logger LOG = LoggerFactory.getLogger(HecIOManager.class.getName());
     private static final ObjectMapper mapper = new ObjectMapper();
+    //backstop only: HttpClientFactory's CONNECT_TIMEOUT and SOCKET_TIMEOUT already bound each request at the HTTP layer
+    private static final long PREFLIGHT_RESPONSE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(5);
     private final HttpSender sender;
 //    private final ThreadScheduler ackPollController = new ThreadScheduler(
 //            "ack poller");
 //    private final ThreadScheduler healthPollController = new ThreadScheduler(
 //            "health poller");
     private volatile ScheduledFuture ackPollTask;
-    private volatile ScheduledFuture healthPollTask;
     private final AcknowledgementTracker ackTracker;
     private volatile boolean ackPollInProgress;
 
@@ -89,22 +92,22 @@ public class HecIOManager implements Closeable {
                     this.pollAcks();
                 };
                 long interval = sender.getConnection().getSettings().getAckPollMS();
-                this.ackPollTask = ThreadScheduler.getSchedulerInstance("ack poller").scheduleWithFixedDelay(poller, (long) (interval*Math.random()), interval, TimeUnit.MILLISECONDS);
+                this.ackPollTask = ThreadScheduler.getSchedulerInstance("ack poller",
+                        sender.getConnection().getThreadPoolScope(), sender.getChannel()).scheduleWithFixedDelay(poller, (long) (interval*Math.random()), interval, TimeUnit.MILLISECONDS);
             }
         }
     }
 
-    public void startHealthPolling() {
-        if(null != healthPollTask){
+    /**
+     * Restarts ack polling, if it was started, so that a new ACK_POLL_MS takes effect.
+     */
+    public synchronized void restartAckPolling() {
+        if (null == ackPollTask) {
             return;
         }
-        synchronized(this){
-            if (null == healthPollTask) {
-                long interval = sender.getConnection().getSettings().
-                        getHealthPollMS();
-                this.healthPollTask = ThreadScheduler.getSchedulerInstance("health poller").scheduleWithFixedDelay(this::pollHealth, (long) (interval*Math.random()), interval, TimeUnit.MILLISECONDS);
-            }
-        }
+        ackPollTask.cancel(false);
+        ackPollTask = null;
+        startAckPolling();
     }
 
     public void postEvents(EventBatchImpl events) {
@@ -133,10 +136,18 @@ public class HecIOManager implements Closeable {
     }
 
     /**
-     * This will get invoked after the HecChannel completes preflight checks
-     * successfully
+     * Checks the /health and /ack endpoints through this channel.
      */
     public void pollHealth() {
+        pollHealth(null);
+    }
+
+    /**
+     * Checks the /health and /ack endpoints through this channel. The HealthPoller invokes this for one channel of a
+     * destination at a time, after the channels complete preflight checks successfully.
+     * @param siblings if not null, also receives the outcome this channel's ChannelMetrics is updated with
+     */
+    public void pollHealth(Consumer<LifecycleEvent> siblings) {
         //ThreadScheduler.getExecutorInstance("health_poll_executor_thread").execute(
             //    ()->{
                     LOG.trace("health checks on {}", sender.getChannel());
@@ -153,86 +164,75 @@ public class HecIOManager implements Closeable {
                             LifecycleEvent.Type.HEALTH_POLL_FAILED,
                             "health_poll_ack_endpoint_check");
 
-                    GenericCoordinatedResponseHandler cb3 = new GenericCoordinatedResponseHandler(
-                            this,
-                            LifecycleEvent.Type.HEALTH_POLL_OK,
-                            LifecycleEvent.Type.HEALTH_POLL_FAILED,
-                            "health_poll_raw_endpoint_check");
-
-                    ResponseCoordinator.create(cb1, cb2, cb3);
+                    ResponseCoordinator.create(siblings, cb1, cb2);
                     sender.checkHealthEndpoint(cb1);
                     sender.checkAckEndpoint(cb2);
-                    sender.checkAckEndpoint(cb3);
        // });
     }
 
-    public void preflightCheck() {
-//        ThreadScheduler.getExecutorInstance("preflight_executor_thread").execute(
-//                ()->{      
+    /**
+     * Sends /ack, /health, and an empty /raw post in sequence. Each request is sent only after the previous response
+     * has arrived OK, by chaining on the response futures, so no thread is parked while the requests are outstanding.
+     * @return future of the last response received, or of null if a response was cancelled or timed out. If a request
+     * cannot be sent the future completes exceptionally; this method itself does not throw.
+     */
+    public CompletableFuture<LifecycleEvent> preflightCheck() {
+        LOG.trace("preflight checks on {}", sender.getChannel());
+        GenericCoordinatedResponseHandler cb1 = new GenericCoordinatedResponseHandler(
+                this,
+                LifecycleEvent.Type.PREFLIGHT_OK,
+                LifecycleEvent.Type.PREFLIGHT_FAILED,
+                LifecycleEvent.Type.PREFLIGHT_GATEWAY_TIMEOUT,
+                LifecycleEvent.Type.PREFLIGHT_BUSY,
+                "preflight_ack_endpoint_check");
+        GenericCoordinatedResponseHandler cb2 = new GenericCoordinatedResponseHandler(
+                this,
+                LifecycleEvent.Type.PREFLIGHT_OK,
+                LifecycleEvent.Type.PREFLIGHT_FAILED,
+                LifecycleEvent.Type.PREFLIGHT_GATEWAY_TIMEOUT,
+                LifecycleEvent.Type.PREFLIGHT_BUSY,
+                "preflight_health_endpoint_check");
+        GenericCoordinatedResponseHandler cb3 = new NoDataEventPostResponseHandler(
+                this,
+                LifecycleEvent.Type.PREFLIGHT_OK,
+                LifecycleEvent.Type.PREFLIGHT_FAILED,
+                LifecycleEvent.Type.PREFLIGHT_GATEWAY_TIMEOUT,
+                LifecycleEvent.Type.PREFLIGHT_BUSY,
+                "preflight_raw_endpoint_check");
+        ResponseCoordinator coordinator = ResponseCoordinator.create(cb1,
+                cb2,
+                cb3);
+        CompletableFuture<LifecycleEvent> first;
         try {
-            LOG.trace("preflight checks on {}", sender.getChannel());
-            GenericCoordinatedResponseHandler cb1 = new GenericCoordinatedResponseHandler(
-                    this,
-                    LifecycleEvent.Type.PREFLIGHT_OK,
-                    LifecycleEvent.Type.PREFLIGHT_FAILED,
-                    LifecycleEvent.Type.PREFLIGHT_GATEWAY_TIMEOUT,
-                    LifecycleEvent.Type.PREFLIGHT_BUSY,
-                    "preflight_ack_endpoint_check");
-            GenericCoordinatedResponseHandler cb2 = new GenericCoordinatedResponseHandler(
-                    this,
-                    LifecycleEvent.Type.PREFLIGHT_OK,
-                    LifecycleEvent.Type.PREFLIGHT_FAILED,
-                    LifecycleEvent.Type.PREFLIGHT_GATEWAY_TIMEOUT,
-                    LifecycleEvent.Type.PREFLIGHT_BUSY,
-                    "preflight_health_endpoint_check");
-            GenericCoordinatedResponseHandler cb3 = new NoDataEventPostResponseHandler(
-                    this,
-                    LifecycleEvent.Type.PREFLIGHT_OK,
-                    LifecycleEvent.Type.PREFLIGHT_FAILED,
-                    LifecycleEvent.Type.PREFLIGHT_GATEWAY_TIMEOUT,
-                    LifecycleEvent.Type.PREFLIGHT_BUSY,
-                    "preflight_raw_endpoint_check");
-            ResponseCoordinator coordinator = ResponseCoordinator.create(cb1,
-                    cb2,
-                    cb3);
             sender.checkAckEndpoint(cb1);//SEND FIRST REQUEST
-
-            LifecycleEvent firstResp = coordinator.awaitNthResponse(0); //WAIT FIRST RESPONSE
-            if (null != firstResp) {
-                if (firstResp.isOK()) {
-                    sender.checkHealthEndpoint(cb2); //SEND SECOND REQUEST 
-                    LifecycleEvent secondResp = coordinator.awaitNthResponse(1); //WAIT SECOND RESPONSE
-                    if (null != secondResp) {
-                        if (secondResp.isOK()) {
-                            sender.checkRawEndpoint(cb3); //SEND THIRD REQUEST
-                        }
-                    } else {
-                        LOG.warn(
-                                "Preflight didn't receive /raw empty-event check on {}",
-                                sender.getChannel());
-                    }
-                } else {
-                    LOG.warn(
-                            "Preflight didn't receive /health check on {}",
-                            sender.getChannel());
-                }
-            } else {
-                LOG.warn(
-                        "Preflight didn't receive /ack endpoint check on {}",
-                        sender.getChannel());
-            }
-        } catch (InterruptedException ex) {
-            LOG.warn(
-                    "Preflight interrupted on channel {} waiting for response from ack endpoint.",
-                    sender.getChannel());
-            //throw ex;
-        }catch (Exception ex) {
-            LOG.error("{}", ex.getMessage(), ex);
-            //throw ex;
+            first = coordinator.getNthResponse(0, PREFLIGHT_RESPONSE_TIMEOUT_MS);
+        } catch (Exception ex) {
+            first = new CompletableFuture<>();
+            first.completeExceptionally(ex);
         }
-        
-//        });
-
+        return first.thenCompose(firstResp -> { 
+                    if (null == firstResp) {
+                        LOG.warn("Preflight didn't receive /ack endpoint check on {}", sender.getChannel());
+                    } else if (firstResp.isOK()) {
+                        sender.checkHealthEndpoint(cb2); //SEND SECOND REQUEST
+                        return coordinator.getNthResponse(1, PREFLIGHT_RESPONSE_TIMEOUT_MS);
+                    }
+                    return CompletableFuture.completedFuture(firstResp);
+                }).thenCompose(secondResp -> {
+                    if (null == secondResp) {
+                        LOG.warn("Preflight didn't receive /health check on {}", sender.getChannel());
+                    } else if (secondResp.isOK()) {
+                        sender.checkRawEndpoint(cb3); //SEND THIRD REQUEST
+                        return coordinator.getNthResponse(2, PREFLIGHT_RESPONSE_TIMEOUT_MS);
+                    }
+                    return CompletableFuture.completedFuture(secondResp);
+                }).whenComplete((lastResp, ex) -> {
+                    if (null != ex) {
+                        LOG.error("{}", ex.getMessage(), ex);
+                    } else if (null == lastResp) {
+                        LOG.warn("Preflight didn't receive /raw empty-event check on {}", sender.getChannel());
+                    }
+                });
     }
 
     /**
@@ -258,9 +258,6 @@ public class HecIOManager implements Closeable {
         if(null != ackPollTask && !ackPollTask.isCancelled()){
             this.ackPollTask.cancel(true);
         }
-        if(null != healthPollTask && !healthPollTask.isCancelled()){
-            this.healthPollTask.cancel(true);
-        }
     }
 
     // Channel is now available, so can set Connection instance loggerFactory now
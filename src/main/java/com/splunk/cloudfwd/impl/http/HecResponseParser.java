@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.http;
+
+import java.util.Collection;
+
+/**
+ * Scans the bytes of the two 200 responses HEC sends most often, {"text":"Success","code":0,"ackId":42} for an event
+ * post and {"acks":{"0":true,"1":false}} for an ack poll, without building a String or a Jackson tree. Anything it
+ * does not recognize is reported as such, and the caller falls back to databinding the body with Jackson.
+ */
+public final class HecResponseParser {
+
+    private static final byte[] ACK_ID = {'"', 'a', 'c', 'k', 'I', 'd', '"'};
+    private static final byte[] ACKS = {'"', 'a', 'c', 'k', 's', '"'};
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+
+    private HecResponseParser() {
+    }
+
+    /**
+     * @param b the response body
+     * @param len number of bytes of b that hold the body
+     * @return the ackId of an event post response, or -1 if the body has no "ackId" field holding a number
+     */
+    public static long parseAckId(byte[] b, int len) {
+        int i = indexOf(b, len, ACK_ID, 0);
+        if (i < 0) {
+            return -1;
+        }
+        i = skipSpace(b, len, i + ACK_ID.length);
+        if (i >= len || b[i] != ':') {
+            return -1;
+        }
+        i = skipSpace(b, len, i + 1);
+        int start = i;
+        long id = 0;
+        for (; i < len && b[i] >= '0' && b[i] <= '9'; i++) {
+            id = id * 10 + (b[i] - '0');
+        }
+        if (i == start || i - start > 18) { //no digits, or too many to fit in a long
+            return -1;
+        }
+        return id;
+    }
+
+    /**
+     * Adds the ackIds an ack poll response reports as true to succeeded.
+     *
+     * @param b the response body
+     * @param len number of bytes of b that hold the body
+     * @param succeeded receives the ackIds that are true
+     * @return false if the body is not a well formed "acks" map, in which case succeeded may hold some of its ackIds
+     */
+    public static boolean parseAcks(byte[] b, int len, Collection<Long> succeeded) {
+        int i = indexOf(b, len, ACKS, 0);
+        if (i < 0) {
+            return false;
+        }
+        i = skipSpace(b, len, i + ACKS.length);
+        if (i >= len || b[i] != ':') {
+            return false;
+        }
+        i = skipSpace(b, len, i + 1);
+        if (i >= len || b[i] != '{') {
+            return false;
+        }
+        i = skipSpace(b, len, i + 1);
+        if (i < len && b[i] == '}') {
+            return true; //empty map
+        }
+        while (i < len) {
+            //"<ackId>"
+            if (b[i++] != '"') {
+                return false;
+            }
+            int start = i;
+            long id = 0;
+            for (; i < len && b[i] >= '0' && b[i] <= '9'; i++) {
+                id = id * 10 + (b[i] - '0');
+            }
+            if (i == start || i - start > 18 || i >= len || b[i++] != '"') {
+                return false;
+            }
+            i = skipSpace(b, len, i);
+            if (i >= len || b[i] != ':') {
+                return false;
+            }
+            i = skipSpace(b, len, i + 1);
+            //true or false
+            if (startsWith(b, len, i, TRUE)) {
+                succeeded.add(id);
+                i += TRUE.length;
+            } else if (startsWith(b, len, i, FALSE)) {
+                i += FALSE.length;
+            } else {
+                return false;
+            }
+            i = skipSpace(b, len, i);
+            if (i >= len) {
+                return false;
+            }
+            if (b[i] == '}') {
+                return true;
+            }
+            if (b[i] != ',') {
+                return false;
+            }
+            i = skipSpace(b, len, i + 1);
+        }
+        return false;
+    }
+
+    private static int skipSpace(byte[] b, int len, int i) {
+        while (i < len && (b[i] == ' ' || b[i] == '\t' || b[i] == '\n' || b[i] == '\r')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean startsWith(byte[] b, int len, int at, byte[] s) {
+        if (at + s.length > len) {
+            return false;
+        }
+        for (int j = 0; j < s.length; j++) {
+            if (b[at + j] != s[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] b, int len, byte[] s, int from) {
+        for (int i = from; i + s.length <= len; i++) {
+            if (startsWith(b, len, i, s)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
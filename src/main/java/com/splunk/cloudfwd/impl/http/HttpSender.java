@@ -27,6 +27,7 @@ import com.splunk.cloudfwd.impl.CookieClient;
 import com.splunk.cloudfwd.impl.EventBatchImpl;
 import com.splunk.cloudfwd.impl.util.HecChannel;
 import org.apache.commons.lang.StringUtils;
+import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
@@ -34,9 +35,14 @@ import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.message.BasicHeader;
 
 import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import org.apache.logging.log4j.util.Strings;
 import org.slf4j.Logger;
@@ -45,6 +51,10 @@ import org.slf4j.LoggerFactory;
 /**
  * This class performs the actually HTTP send to HEC
  * event collector.
+ * <p>
+ * The URLs and headers of its requests are kept in an immutable RequestTemplate, built on first use and rebuilt only
+ * when the ConnectionSettings change (the index, source, sourcetype and host are sent as URL parameters) or the session
+ * cookie is set. Posting events takes no lock on the HttpSender, so concurrent posts on one channel don't serialize.
  */
 public final class HttpSender implements Endpoints, CookieClient {
 
@@ -52,7 +62,7 @@ public final class HttpSender implements Endpoints, CookieClient {
   private Logger LOG = LoggerFactory.getLogger(HttpSender.class.getName());
 
   private static final String AuthorizationHeaderTag = "Authorization";
-  private static final String AuthorizationHeaderScheme = "Splunk %s";
+  private static final String AuthorizationHeaderScheme = "Splunk ";
   private static final String HttpContentType = "application/json; profile=urn:splunk:event:1.0; charset=utf-8"; //FIX ME application/json not all the time
   private static final String ChannelHeader = "X-Splunk-Request-Channel";
   private static final String Host = "host";
@@ -61,7 +71,7 @@ public final class HttpSender implements Endpoints, CookieClient {
   private final String token;
   private final String cert;
   private final ConnectionSettings connectionSettings;
-  private CloseableHttpAsyncClient httpClient;
+  private volatile CloseableHttpAsyncClient httpClient;
   private boolean disableCertificateValidation = false;
   private HecChannel channel = null;
   private final String ackUrl;
@@ -70,7 +80,8 @@ public final class HttpSender implements Endpoints, CookieClient {
   private final HecIOManager hecIOManager;
   private final String baseUrl; 
   private final String serverHostname;
-  private String cookie;
+  private volatile String cookie;
+  private volatile RequestTemplate template; //null until the first request, and whenever it must be rebuilt
   //the following  posts/gets are used by health checks and preflight checks. We record them so we can cancel them on close. 
   private HttpPost ackCheck;
   private HttpGet healthEndpointCheck;
@@ -135,7 +146,7 @@ public final class HttpSender implements Endpoints, CookieClient {
    * 
    * @param eventsBatch
    */
-  public synchronized void sendBatch(HttpPostable eventsBatch) {
+  public void sendBatch(HttpPostable eventsBatch) {
     if (eventsBatch.isFlushed()) {
       throw new HecConnectionStateException(
               "Illegal attempt to send already-flushed batch. EventBatch is not reusable.",
@@ -236,84 +247,62 @@ public final class HttpSender implements Endpoints, CookieClient {
     }
   }
 
-  // override token defaults on a per request basis for Splunk index time fields
-  private String appendUri(String endpoint) {
-    String url = endpoint + "?";
-    if (!StringUtils.isEmpty(connectionSettings.getIndex())) {
-      url = url + "&index=" + connectionSettings.getIndex();
-    }
-
-    if (!StringUtils.isEmpty(connectionSettings.getSource())) {
-      url = url + "&source=" + connectionSettings.getSource();
-    }
-
-    if (!StringUtils.isEmpty(connectionSettings.getSourcetype())) {
-      url = url + "&sourcetype=" + connectionSettings.getSourcetype();
-    }
+  /**
+   * @param events
+   * @return the URI the events are posted to, with the index-time fields of the current settings
+   */
+  public URI getPostUri(EventBatch events) {
+    return getTemplate().postUri(events);
+  }
 
-    if (!StringUtils.isEmpty(connectionSettings.getHost())) {
-      url = url + "&host=" + connectionSettings.getHost();
+  private RequestTemplate getTemplate() {
+    RequestTemplate t = template;
+    if (null == t || t.version != connectionSettings.getVersion() || !StringUtils.equals(t.cookie, cookie)) {
+      t = new RequestTemplate(); //a race can build it twice, but both builds are the same
+      template = t;
     }
-    return url;
+    return t;
   }
-  
+
   private void setHeaders(HttpRequestBase r){
-      setHttpHeadersNoChannel(r);
-      setHttpChannelHeaders(r);
-      setCookieHeader(r);
-  }
-  
-  private void setCookieHeader(HttpRequestBase r){
-      if(null != this.cookie && !this.cookie.isEmpty()){
-          r.setHeader("Cookie", this.cookie);
-      }
-  }
-  
-    // set splunk specific http request headers
-  private void setHttpChannelHeaders(HttpRequestBase r) {
-    r.setHeader(
-            ChannelHeader,
-            getChannel().getChannelId());
+      r.setHeaders(getTemplate().headers);
   }
 
-  // set splunk specific http request headers
-  private void setHttpHeadersNoChannel(HttpRequestBase r) {
-    r.setHeader(
-            AuthorizationHeaderTag,
-            String.format(AuthorizationHeaderScheme, token));
-    
-    if (serverHostname != null) {
-      r.setHeader(Host, serverHostname);
+  /**
+   * Starts the http client or simulator if need be. Only takes the lock on the HttpSender when it isn't started.
+   * @return the http client, or null if simulated
+   */
+  private CloseableHttpAsyncClient ensureStarted() {
+    CloseableHttpAsyncClient c = httpClient;
+    if (null == c) {
+      synchronized (this) {
+        if (!started()) {
+          start();
+        }
+        c = httpClient;
+      }
     }
+    return c;
   }
-  
+
   @Override
-  public synchronized void postEvents(final HttpPostable events,
+  public void postEvents(final HttpPostable events,
           FutureCallback<HttpResponse> httpCallback) {
     // make sure http client or simulator is started
-    if (!started()) {
-      start();
-    }
+    CloseableHttpAsyncClient client = ensureStarted();
     
     if (isSimulated()) {
       this.simulatedEndpoints.postEvents(events, httpCallback);
       return;
     }
-    final String encoding = "utf-8";
 
     // create http request
-    String endpointUrl = ((EventBatch)events).getTarget()
-            == ConnectionImpl.HecEndpoint.STRUCTURED_EVENTS_ENDPOINT ? eventUrl : rawUrl;
-    if (endpointUrl == null) {
-      throw new NullPointerException("endpointUrl was null.");
-    }
-
-    String completeUrl = appendUri(endpointUrl);
-    final HttpPost httpPost = new HttpPost(completeUrl);
-    setHeaders(httpPost);
+    RequestTemplate t = getTemplate();
+    final HttpPost httpPost = new HttpPost(t.postUri((EventBatch) events));
+    httpPost.setHeaders(t.headers);
     
     httpPost.setEntity(events.getEntity());
-    httpClient.execute(httpPost, httpCallback);
+    client.execute(httpPost, httpCallback);
   }
 
     /**
@@ -338,7 +327,7 @@ public final class HttpSender implements Endpoints, CookieClient {
 
             // create http request
 
-            this.dummyEventPost = new HttpPost(rawUrl);
+            this.dummyEventPost = new HttpPost(getTemplate().rawCheckUri);
             setHeaders(dummyEventPost);
             StringEntity empty;
               try {
@@ -373,7 +362,7 @@ public final class HttpSender implements Endpoints, CookieClient {
           this.simulatedEndpoints.pollAcks(hecIoMgr, httpCallback);
           return;
         }
-        final HttpPost httpPost = new HttpPost(ackUrl);
+        final HttpPost httpPost = new HttpPost(getTemplate().ackUri);
         setHeaders(httpPost);
 
         StringEntity entity;
@@ -408,8 +397,7 @@ public final class HttpSender implements Endpoints, CookieClient {
           return;
         }
         // create http request
-        final String getUrl = String.format("%s?ack=1&token=%s", healthUrl, token);
-        healthEndpointCheck= new HttpGet(getUrl);
+        healthEndpointCheck= new HttpGet(getTemplate().healthUri);
         LOG.trace("Polling health {}", healthEndpointCheck);
         setHeaders(healthEndpointCheck);
         if(null != httpClient){ //httpClient can be null if close happened
@@ -434,7 +422,7 @@ public final class HttpSender implements Endpoints, CookieClient {
         Set<Long> dummyAckId = new HashSet<>();
         dummyAckId.add(MAX_ACK_ID);//default max ack Id. TODO we should not let channels send this many event batches
         AcknowledgementTracker.AckRequest dummyAckReq = new AcknowledgementTracker.AckRequest(dummyAckId);        
-        this.ackCheck = new HttpPost(ackUrl);
+        this.ackCheck = new HttpPost(getTemplate().ackUri);
         setHeaders(ackCheck); 
 
         StringEntity entity;
@@ -499,4 +487,66 @@ public final class HttpSender implements Endpoints, CookieClient {
         }
     }
   
+  /**
+   * The URLs and headers of every request this HttpSender makes, as they stood at one version of the settings.
+   */
+  private final class RequestTemplate {
+
+    private final long version = connectionSettings.getVersion(); //read first, so a change while building is seen
+    private final String cookie = HttpSender.this.cookie;
+    private final URI eventUri;
+    private final URI rawUri;
+    private final URI rawCheckUri;
+    private final URI ackUri;
+    private final URI healthUri;
+    private final Header[] headers;
+
+    RequestTemplate() {
+      // override token defaults on a per request basis for Splunk index time fields
+      String params = params();
+      this.eventUri = URI.create(eventUrl + params);
+      this.rawUri = URI.create(rawUrl + params);
+      this.rawCheckUri = URI.create(rawUrl);
+      this.ackUri = URI.create(ackUrl);
+      this.healthUri = URI.create(healthUrl + "?ack=1&token=" + encode(token));
+      List<Header> h = new ArrayList<>();
+      h.add(new BasicHeader(AuthorizationHeaderTag, AuthorizationHeaderScheme + token));
+      if (serverHostname != null) {
+        h.add(new BasicHeader(Host, serverHostname));
+      }
+      h.add(new BasicHeader(ChannelHeader, getChannel().getChannelId()));
+      if (null != cookie && !cookie.isEmpty()) {
+        h.add(new BasicHeader("Cookie", cookie));
+      }
+      this.headers = h.toArray(new Header[h.size()]);
+    }
+
+    URI postUri(EventBatch events) {
+      return events.getTarget() == ConnectionImpl.HecEndpoint.STRUCTURED_EVENTS_ENDPOINT ? eventUri : rawUri;
+    }
+
+    private String params() {
+      StringBuilder url = new StringBuilder();
+      param(url, "index", connectionSettings.getIndex());
+      param(url, "source", connectionSettings.getSource());
+      param(url, "sourcetype", connectionSettings.getSourcetype());
+      param(url, "host", connectionSettings.getHost());
+      return url.toString();
+    }
+
+    private void param(StringBuilder url, String name, String value) {
+      if (!StringUtils.isEmpty(value)) {
+        url.append(url.length() == 0 ? '?' : '&').append(name).append('=').append(encode(value));
+      }
+    }
+
+    private String encode(String value) {
+      try {
+        return URLEncoder.encode(value, "UTF-8");
+      } catch (UnsupportedEncodingException ex) {
+        throw new IllegalStateException(ex); //UTF-8 is always supported
+      }
+    }
+  }
+
 }
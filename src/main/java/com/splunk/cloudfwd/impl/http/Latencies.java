@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.http;
+
+import com.splunk.cloudfwd.LatencySnapshot;
+import com.splunk.cloudfwd.MetricsSnapshot.Latency;
+import com.splunk.cloudfwd.impl.util.LatencyHistogram;
+
+/**
+ * One LatencyHistogram per MetricsSnapshot.Latency, arranged in the same channel, destination, connection tree as
+ * Counters: recording into a channel's Latencies also records into its destination's and the connection's.
+ */
+public class Latencies {
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Latency.values().length];
+    private final Latencies parent; //null for the connection
+
+    public Latencies(Latencies parent) {
+        this.parent = parent;
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public LatencyHistogram get(Latency l) {
+        return histograms[l.ordinal()];
+    }
+
+    public void record(Latency l, long micros) {
+        for (Latencies x = this; null != x; x = x.parent) {
+            x.histograms[l.ordinal()].record(micros);
+        }
+    }
+
+    /**
+     * @param interval if true, cover only what was recorded since the previous interval snapshot
+     * @return one LatencySnapshot per Latency, indexed by ordinal
+     */
+    public LatencySnapshot[] snapshot(boolean interval) {
+        LatencySnapshot[] s = new LatencySnapshot[histograms.length];
+        for (int i = 0; i < histograms.length; i++) {
+            s[i] = interval ? histograms[i].intervalSnapshot() : histograms[i].snapshot();
+        }
+        return s;
+    }
+
+}
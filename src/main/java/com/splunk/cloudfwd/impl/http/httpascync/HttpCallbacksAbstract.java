@@ -31,12 +31,17 @@ import com.splunk.cloudfwd.impl.http.lifecycle.EventBatchResponse;
 import com.splunk.cloudfwd.impl.http.lifecycle.RequestFailed;
 import com.splunk.cloudfwd.impl.http.lifecycle.Response;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 
 import org.apache.http.HttpResponse;
+import org.apache.http.client.utils.DateUtils;
 import org.apache.http.concurrent.FutureCallback;
-import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 
 /**
@@ -48,6 +53,13 @@ public abstract class HttpCallbacksAbstract implements FutureCallback<HttpRespon
   private final Logger LOG;
   private final HecIOManager manager;
   private final String name;
+  private long retryAfterMS = -1;
+  //response bodies are read into a per thread buffer, rather than a new String per response
+  private static final int INITIAL_BUFFER_SIZE = 1024;
+  //a buffer grown past this by an unusually large response is dropped once the response is handled, so the I/O
+  //threads do not each hold on to the largest response they ever read
+  private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+  private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[INITIAL_BUFFER_SIZE]);
   
   HttpCallbacksAbstract(HecIOManager m, String name) {
     LOG = m.getSender().getConnection().getLogger(HttpCallbacksAbstract.class.getName());
@@ -61,19 +73,87 @@ public abstract class HttpCallbacksAbstract implements FutureCallback<HttpRespon
     try {    
         int code = response.getStatusLine().getStatusCode();
         handleCookies(response);
-        String reply = EntityUtils.toString(response.getEntity(), "utf-8");
-        if(null == reply || reply.isEmpty()){
+        retryAfterMS = parseRetryAfter(response);
+        int len = read(response.getEntity());
+        byte[] body = BUFFER.get();
+        if(0 == len){
             LOG.warn("reply with code {} was empty for function '{}'",code,  getOperation());
         }
 //        if(code != 200){
 //            LOG.warn("NON-200 response code: {} server reply: {}", code, reply);
 //        }
-        completed(reply, code);      
+        completed(body, len, code);      
       } catch (IOException e) {      
         LOG.error("Unable to get String from HTTP response entity", e);
-      }      
+      } finally {
+        if (BUFFER.get().length > MAX_RETAINED_BUFFER_SIZE) {
+          BUFFER.set(new byte[INITIAL_BUFFER_SIZE]);
+        }
+      }
+  }
+
+  /**
+   * Handles the raw response body. The bytes are in a buffer that is reused for the next response read on this
+   * thread, so an override must be done with them before it calls out to anything that could read another
+   * response. The default converts the body to a String and calls completed(String, int).
+   * @param body buffer holding the response body
+   * @param len number of bytes of body that hold the response body
+   * @param code HTTP status code
+   */
+  protected void completed(byte[] body, int len, int code) {
+      completed(toString(body, len), code);
+  }
+
+  protected static String toString(byte[] body, int len) {
+      return new String(body, 0, len, StandardCharsets.UTF_8);
+  }
+
+  //reads the entity into this thread's buffer, growing it if need be, and returns its length
+  private int read(HttpEntity entity) throws IOException {
+      byte[] buf = BUFFER.get();
+      int len = 0;
+      if (null != entity) {
+          try (InputStream in = entity.getContent()) {
+              if (null != in) {
+                  for (int n; (n = in.read(buf, len, buf.length - len)) != -1;) {
+                      len += n;
+                      if (len == buf.length) {
+                          buf = Arrays.copyOf(buf, buf.length * 2);
+                          BUFFER.set(buf);
+                      }
+                  }
+              }
+          }
+      }
+      return len;
   }
   
+  /**
+   * @return the delay the server asked for in a Retry-After header, or -1 if there was none
+   */
+  protected long getRetryAfterMS() {
+      return retryAfterMS;
+  }
+
+  //Retry-After is either delta-seconds or an HTTP-date (RFC 7231 section 7.1.3)
+  private long parseRetryAfter(HttpResponse response) {
+        Header[] headers = response.getHeaders("Retry-After");
+        if (null == headers || headers.length == 0) {
+            return -1;
+        }
+        String value = headers[0].getValue().trim();
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            Date d = DateUtils.parseDate(value);
+            if (null == d) {
+                LOG.warn("Ignoring unparseable Retry-After header '{}'", value);
+                return -1;
+            }
+            return Math.max(0, d.getTime() - System.currentTimeMillis());
+        }
+  }
+
   private void handleCookies(HttpResponse response){
         Header[] headers = response.getHeaders("Set-Cookie");     
         if(null == headers ){
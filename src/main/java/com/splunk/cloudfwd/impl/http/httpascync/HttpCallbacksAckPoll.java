@@ -19,8 +19,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.splunk.cloudfwd.LifecycleEvent;
 import com.splunk.cloudfwd.impl.http.AckPollResponseValueObject;
 import com.splunk.cloudfwd.impl.http.HecIOManager;
+import com.splunk.cloudfwd.impl.http.HecResponseParser;
 import static com.splunk.cloudfwd.LifecycleEvent.Type.ACK_POLL_NOT_OK;
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
 import org.slf4j.Logger;
 
 /**
@@ -38,6 +41,22 @@ public class HttpCallbacksAckPoll extends HttpCallbacksAbstract {
         this.LOG = getConnection().getLogger(HttpCallbacksAckPoll.class.getName());
     }
 
+    @Override
+    protected void completed(byte[] body, int len, int code) {
+        Set<Long> succeeded = new HashSet<>();
+        if (200 != code || !HecResponseParser.parseAcks(body, len, succeeded)) {
+            super.completed(body, len, code); //let Jackson make sense of it
+            return;
+        }
+        try {
+            getManager().getAcknowledgementTracker().handleAckPollResponse(succeeded);
+        } catch (Exception e) {
+            error(e);
+        } finally {
+            getManager().setAckPollInProgress(false);
+        }
+    }
+
     @Override
     public void completed(String reply, int code) {
         try {
@@ -18,13 +18,17 @@ package com.splunk.cloudfwd.impl.http.httpascync;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.splunk.cloudfwd.error.HecConnectionStateException;
 import static com.splunk.cloudfwd.error.HecConnectionStateException.Type.CONFIGURATION_EXCEPTION;
+import com.splunk.cloudfwd.error.HecRetryBudgetExceededException;
 import com.splunk.cloudfwd.error.HecServerBusyException;
 import com.splunk.cloudfwd.impl.EventBatchImpl;
 import com.splunk.cloudfwd.LifecycleEvent;
+import com.splunk.cloudfwd.PropertyKeys;
 import com.splunk.cloudfwd.impl.http.EventPostResponseValueObject;
 import com.splunk.cloudfwd.impl.http.HecIOManager;
+import com.splunk.cloudfwd.impl.http.HecResponseParser;
 import com.splunk.cloudfwd.impl.http.HttpSender;
 import static com.splunk.cloudfwd.LifecycleEvent.Type.*;
+import com.splunk.cloudfwd.impl.http.lifecycle.BusyResponse;
 import com.splunk.cloudfwd.impl.http.lifecycle.Response;
 import com.splunk.cloudfwd.impl.util.ThreadScheduler;
 import org.slf4j.Logger;
@@ -52,7 +56,7 @@ public class HttpCallbacksEventPost extends HttpCallbacksAbstract {
 
     private final Logger LOG;
     private final EventBatchImpl events;
-    private final ObjectMapper mapper = new ObjectMapper();
+    private static final ObjectMapper mapper = new ObjectMapper();
     public static final String Name = "event_post";
 
     public HttpCallbacksEventPost(HecIOManager m,
@@ -62,6 +66,23 @@ public class HttpCallbacksEventPost extends HttpCallbacksAbstract {
         LOG = getConnection().getLogger(HttpCallbacksEventPost.class.getName());
     }
 
+    @Override
+    protected void completed(byte[] body, int len, int code) {
+        long ackId = 200 == code ? HecResponseParser.parseAckId(body, len) : -1;
+        if (ackId < 0) { //not a 200 with an ackId, so let Jackson make sense of it
+            super.completed(body, len, code);
+            return;
+        }
+        try {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("{} Event post response: {}", getChannel(), toString(body, len));
+            }
+            consumeAckId(ackId);
+        } catch (Exception e) {
+            invokeFailedEventsCallback(events, e);
+        }
+    }
+
     @Override
     public void completed(String reply, int code) {
         try {
@@ -108,9 +129,26 @@ public class HttpCallbacksEventPost extends HttpCallbacksAbstract {
 
     private void resend(Exception ex) {
         //we must run resends through their own thread. Otherwise the apache client thread could wind up blocked in the load balancer
-        Runnable r = ()-> {
+        ThreadScheduler.getExecutorInstance("event_resender", getConnection().getThreadPoolScope()).execute(resendTask(ex));
+    }
+
+    //the server said it is busy, so back off before resending rather than adding to its load at once
+    private void resendWithBackoff(Exception ex) {
+        getConnection().getResendScheduler().schedule(events, getRetryAfterMS(), resendTask(ex));
+    }
+
+    private Runnable resendTask(Exception ex) {
+        return ()-> {
              try {
                 events.addSendException(ex);
+                //redistribution off a dead channel is not budgeted; only resends after failed posts are
+                if (!getConnection().getLoadBalancer().getRetryBudget().tryAcquire()) {
+                    String msg = "Not resending event id=" + events.getId() + ": retry budget exhausted. See property "
+                            + PropertyKeys.RETRY_BUDGET_RATIO;
+                    LOG.warn(msg);
+                    invokeFailedEventsCallback(events, new HecRetryBudgetExceededException(msg));
+                    return;
+                }
                 LOG.warn("resending events through load balancer {} on channel {}",
                     events, getSender().getChannel());                
                 getSender().getConnection().getLoadBalancer().sendRoundRobin(events, true); //will callback failed if max retries exceeded   
@@ -118,7 +156,6 @@ public class HttpCallbacksEventPost extends HttpCallbacksAbstract {
                 invokeFailedEventsCallback(events, e); //includes HecMaxRetriesException
             }                
         };
-        ThreadScheduler.getExecutorInstance("event_resender").execute(r);
     }
 
     private void notifyFailedAndResend(Exception ex) {
@@ -129,9 +166,9 @@ public class HttpCallbacksEventPost extends HttpCallbacksAbstract {
     }
 
     private void notifyBusyAndResend(String reply, int code, LifecycleEvent.Type t) {
-        Response r = new Response(t,code, reply, getSender().getBaseUrl());
+        Response r = new BusyResponse(t, code, reply, getSender().getBaseUrl(), getRetryAfterMS());
         notify(r);
-        resend(new HecServerBusyException(reply));
+        resendWithBackoff(new HecServerBusyException(reply));
     }
       
     public void consumeEventPostOkResponse(String resp, int httpCode) throws Exception {
@@ -152,6 +189,16 @@ public class HttpCallbacksEventPost extends HttpCallbacksAbstract {
         notify(EVENT_POST_OK, 200, resp, events);
     }
 
+    private void consumeAckId(long ackId) {
+        events.setAckId(ackId); //tell the batch what its HEC-generated ackId is.
+        getSender().getAcknowledgementTracker().handleEventPostResponse(ackId, events);
+
+        // start polling for acks
+        getManager().startAckPolling();
+
+        notify(EVENT_POST_OK, 200, "N/A", events); //we don't care about the message body on 200
+    }
+
     private void throwConfigurationException(HttpSender sender, int httpCode, String resp) 
             throws HecConnectionStateException {
         notify(EVENT_POST_ACKS_DISABLED,httpCode, resp, events);
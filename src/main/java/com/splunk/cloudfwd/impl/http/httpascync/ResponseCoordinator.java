@@ -17,10 +17,13 @@ package com.splunk.cloudfwd.impl.http.httpascync;
 
 import com.splunk.cloudfwd.LifecycleEvent;
 import com.splunk.cloudfwd.impl.http.ChannelMetrics;
-import com.splunk.cloudfwd.impl.http.lifecycle.Failure;
+import com.splunk.cloudfwd.impl.util.ThreadScheduler;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 
 /**
@@ -34,13 +37,16 @@ public class ResponseCoordinator {
     private final AtomicBoolean alreadyNotOk = new AtomicBoolean(false); //tells us if one of the two responses has already come back NOT OK
     private final AtomicInteger responseCount = new AtomicInteger(0); //count how many responses/fails we hsve processed
     private final int numExpectedResponses;
-    private final LifecycleEventLatch[] latches ; //provide the ability to wait on any response in the serialized sequence
+    private final CompletableFuture<LifecycleEvent>[] responses; //provide the ability to chain on any response in the serialized sequence
+    private Object shardKey; //spreads response timeouts across the scheduler shards
+    private String scope;
+    private Consumer<LifecycleEvent> listener; //null, or also receives each update of the ChannelMetrics
 
     private ResponseCoordinator(int numExpectedResponses) {
         this.numExpectedResponses = numExpectedResponses;
-        latches = new LifecycleEventLatch[numExpectedResponses];
+        responses = new CompletableFuture[numExpectedResponses];
         for(int i=0;i<numExpectedResponses;i++){
-            latches[i] = new LifecycleEventLatch(1);
+            responses[i] = new CompletableFuture<>();
         }
     }
 
@@ -48,18 +54,29 @@ public class ResponseCoordinator {
      * Gets a TwoResponseCoodinator that can be used to coordinate two or more 
      * CoordinatedResponseHandlers
      *
-     * @param serialize if set to true, awaitNthResponse() method will awaitNthResponse the arrival or
-h1's response
      * @param responseHandlers each CoordinatedResponseHandler must be provided in the vararg list
      * @return
      */
     public static ResponseCoordinator create(CoordinatedResponseHandler... responseHandlers) {        
+        return create(null, responseHandlers);
+    }
+
+    /**
+     * @param listener if not null, also receives each LifecycleEvent that is not ignored
+     * @param responseHandlers each CoordinatedResponseHandler must be provided in the vararg list
+     * @return
+     */
+    public static ResponseCoordinator create(Consumer<LifecycleEvent> listener,
+            CoordinatedResponseHandler... responseHandlers) {
         ResponseCoordinator coord = new ResponseCoordinator(responseHandlers.length);
         for(CoordinatedResponseHandler h: responseHandlers){
             h.setCoordinator(coord);
         }
         coord.LOG = responseHandlers[0].getConnection().getLogger(ResponseCoordinator.class.
                 getName());
+        coord.scope = responseHandlers[0].getConnection().getThreadPoolScope();
+        coord.shardKey = responseHandlers[0];
+        coord.listener = listener;
         return coord;
     }
 
@@ -76,23 +93,32 @@ h1's response
      * @param e the LifecycleEvent that we are asking if it should be ignored
      * @param channelMetrics will be updated if e is not ignorable
      */
-    public synchronized void conditionallyUpate(LifecycleEvent e,
+    public void conditionallyUpate(LifecycleEvent e,
             ChannelMetrics channelMetrics) {
-        latches[responseCount.get()].countDown(e); //allows someone to await the nth response 
-        responseCount.incrementAndGet();
-        if(!e.isOK()){
-            alreadyNotOk.set(true); //record fact that we saw a not OK
+        CompletableFuture<LifecycleEvent> nth;
+        boolean updated = false;
+        synchronized (this) {
+            nth = responses[responseCount.get()];
+            responseCount.incrementAndGet();
+            if (!e.isOK()) {
+                alreadyNotOk.set(true); //record fact that we saw a not OK
+            }
+            //send OK response to /dev/null if they can be ignored
+            if (!isOKIgnorable(e)) {
+                channelMetrics.update(e);
+                updated = true;
+            }
         }
-        //send OK response to /dev/null if they can be ignored
-        if (isOKIgnorable(e)) {
-            return; //under the above conditions we ignore OK responses
+        if (updated && null != listener) {
+            listener.accept(e);
         }
-        channelMetrics.update(e);    
+        //complete outside the monitor: completing runs the next stage of the chain (which may send the next request)
+        nth.complete(e);
     }
     
     public void cancel(LifecycleEvent e){        
-        for(LifecycleEventLatch latch:latches){
-            latch.countDown(e); //release anyone who might have been waiting
+        for(CompletableFuture<LifecycleEvent> f:responses){
+            f.complete(e); //release any stage that was chained on a response
         }        
     }
 
@@ -114,7 +140,7 @@ h1's response
         boolean ignore = !isLast() && e.isOK();
         if (ignore) {
             LOG.debug(
-                    "Ignoring OK response '{}' (This is not the last of {}).", e, latches.length);
+                    "Ignoring OK response '{}' (This is not the last of {}).", e, responses.length);
         }
         return ignore;
     }
@@ -124,20 +150,24 @@ h1's response
     }
 
     /**
-     * Allows caller to seriaze request by awaiting a response before sending a request.
+     * Allows caller to serialize requests by chaining the next request on the completion of a response, without
+     * parking a thread while the response is outstanding. If no response arrives within timeoutMS the future is
+     * completed with null.
      * @param n the zero-based sequence number of the response you are waiting for.
-     * @return the LifecycleEvent that corresponds to the nth response
-     * @throws InterruptedException
+     * @param timeoutMS
+     * @return future of the LifecycleEvent that corresponds to the nth response (null on timeout or cancel)
      */
-    public LifecycleEvent awaitNthResponse(int n) throws InterruptedException {
-        //TODO FIXME - for sure we need to also have timeouts at the HTTP layer. If network is down this is going
-        //to block the full five minutes. Furthermore, preflight retries will occur N times and the blocking will stack!
-        if (latches[n].await(5, TimeUnit.MINUTES)) {//wait for ackcheck response before hitting ack endpoint  
-            return this.latches[n].getLifecycleEvent();
-        } else {
-            LOG.warn("ResponseCoordinator timed out (5 minutes)  waiting for first response.");
-            return null;
+    public CompletableFuture<LifecycleEvent> getNthResponse(int n, long timeoutMS) {
+        CompletableFuture<LifecycleEvent> f = responses[n];
+        if (!f.isDone()) {
+            ScheduledFuture timeout = ThreadScheduler.getSchedulerInstance("response_timeout", scope, shardKey).schedule(() -> {
+                if (f.complete(null)) {
+                    LOG.warn("ResponseCoordinator timed out ({} ms) waiting for response {}.", timeoutMS, n);
+                }
+            }, timeoutMS, TimeUnit.MILLISECONDS);
+            f.whenComplete((e, ex) -> timeout.cancel(false));
         }
+        return f;
     }
 
     /**
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.http.lifecycle;
+
+import com.splunk.cloudfwd.LifecycleEvent;
+
+/**
+ * A 503 (indexer busy) or 504 (gateway timeout) response to an event post, along with the delay the server asked
+ * for in its Retry-After header, if it sent one.
+ */
+public class BusyResponse extends Response {
+
+    private final long retryAfterMS;
+
+    public BusyResponse(final LifecycleEvent.Type type, int httpCode, String resp, String url, long retryAfterMS) {
+        super(type, httpCode, resp, url);
+        this.retryAfterMS = retryAfterMS;
+    }
+
+    /**
+     * @return the delay requested by the server's Retry-After header, or -1 if there was none
+     */
+    public long getRetryAfterMS() {
+        return retryAfterMS;
+    }
+
+}
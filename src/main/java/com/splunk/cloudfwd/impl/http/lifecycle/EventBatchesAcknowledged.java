@@ -0,0 +1,52 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.http.lifecycle;
+
+import com.splunk.cloudfwd.impl.EventBatchImpl;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The ACK_POLL_OK for every EventBatch acknowledged by one ack poll, so that observers can handle them all at once
+ * instead of one LifecycleEvent per EventBatch.
+ */
+public class EventBatchesAcknowledged extends Response {
+    private final List<EventBatchResponse> responses;
+
+    public EventBatchesAcknowledged(List<EventBatchResponse> responses, String url) {
+        super(Type.ACK_POLL_OK, 200, "N/A", url);
+        this.responses = responses;
+    }
+
+    /**
+     * @return the ACK_POLL_OK of each acknowledged EventBatch, in the order the server listed them
+     */
+    public List<EventBatchResponse> getResponses() {
+        return responses;
+    }
+
+    public List<EventBatchImpl> getEvents() {
+        List<EventBatchImpl> events = new ArrayList<>(responses.size());
+        responses.forEach(r -> events.add(r.getEvents()));
+        return events;
+    }
+
+    @Override
+    public String toString() {
+        return "EventBatchesAcknowledged{" + super.toString() + " events=" + getEvents() + '}';
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.sim;
+
+import com.splunk.cloudfwd.Connection;
+import com.splunk.cloudfwd.EventBatch;
+import com.splunk.cloudfwd.impl.http.HttpPostable;
+import com.splunk.cloudfwd.impl.http.HttpSender;
+import com.splunk.cloudfwd.impl.http.httpascync.HttpCallbacksAbstract;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+
+/**
+ * Records the URI that each event post would have gone to, per Connection, so tests can check the index-time field
+ * parameters of the request.
+ */
+public class PostedUriEndpoints extends SimulatedHECEndpoints {
+
+    private static final Map<Connection, URI> lastPostedUris = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * @param c
+     * @return the URI of the Connection's most recent event post, or null if it has posted nothing
+     */
+    public static URI getLastPostedUri(Connection c) {
+        return lastPostedUris.get(c);
+    }
+
+    @Override
+    public void postEvents(HttpPostable events,
+            FutureCallback<HttpResponse> httpCallback) {
+        HttpSender sender = ((HttpCallbacksAbstract) httpCallback).getManager().getSender();
+        lastPostedUris.put(sender.getConnection(), sender.getPostUri((EventBatch) events));
+        super.postEvents(events, httpCallback);
+    }
+
+}
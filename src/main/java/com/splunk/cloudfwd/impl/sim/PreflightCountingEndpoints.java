@@ -0,0 +1,63 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.sim;
+
+import com.splunk.cloudfwd.Connection;
+import com.splunk.cloudfwd.impl.http.httpascync.HttpCallbacksAbstract;
+import com.splunk.cloudfwd.impl.sim.errorgen.PreFlightAckEndpoint;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+
+/**
+ * Counts the preflight /ack requests of each Connection, so tests can tell which channels ran preflight checks.
+ * While preflightOK is false, the preflight /ack request is answered 503 (busy).
+ */
+public class PreflightCountingEndpoints extends SimulatedHECEndpoints {
+
+    public static volatile boolean preflightOK = true;
+    private static final Map<Connection, AtomicInteger> preflights = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * @param c
+     * @return the number of preflight /ack requests the Connection has sent
+     */
+    public static int getPreflights(Connection c) {
+        AtomicInteger n = preflights.get(c);
+        return null == n ? 0 : n.get();
+    }
+
+    @Override
+    protected PreFlightAckEndpoint createPreFlightAckEndpoint() {
+        return new PreFlightAckEndpoint() {
+            @Override
+            public void checkAckEndpoint(FutureCallback<HttpResponse> cb) {
+                preflights.computeIfAbsent(((HttpCallbacksAbstract) cb).getConnection(), c -> new AtomicInteger())
+                        .incrementAndGet();
+                if (preflightOK) {
+                    super.checkAckEndpoint(cb);
+                } else {
+                    delayResponse(() -> ((HttpCallbacksAbstract) cb).completed(
+                            "Simulated preflight /ack busy.", 503));
+                }
+            }
+        };
+    }
+
+}
@@ -20,7 +20,7 @@ import java.util.concurrent.TimeUnit;
 public class PreFlightAckEndpoint implements Endpoint {
     private static final Logger LOG = LoggerFactory.getLogger(PreFlightAckEndpoint.class.getName());
 
-    final ScheduledExecutorService executor;
+    protected final ScheduledExecutorService executor;
     Random rand = new Random(System.currentTimeMillis());
 
     public PreFlightAckEndpoint() {
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.sim.errorgen.indexer;
+
+import com.splunk.cloudfwd.impl.http.HttpPostable;
+import com.splunk.cloudfwd.impl.http.httpascync.HttpCallbacksAbstract;
+import com.splunk.cloudfwd.impl.sim.SimulatedHECEndpoints;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+
+/**
+ * The destination DOWN_URL goes down after it has taken POSTS_BEFORE_DOWN event posts. Once down, event posts and
+ * health polls fail to connect, as with DownIndexerEndpoints. Ack polls are still answered so that batches the
+ * destination took before going down do not wait for the ack timeout. After recover() the destination is up again.
+ * The state is static, so tests call reset() before creating their Connection.
+ */
+public class DownDestinationEndpoints extends SimulatedHECEndpoints {
+
+    public static final String DOWN_URL = "https://127.0.0.1:8088";
+    public static final int POSTS_BEFORE_DOWN = 20;
+    private static final AtomicInteger postsToDownDestination = new AtomicInteger(0);
+    private static final AtomicInteger postsSinceRecovery = new AtomicInteger(0);
+    private static volatile boolean recovered;
+    private final DownIndexerEventEndpoint downEventEndpoint = new DownIndexerEventEndpoint();
+    private final DownIndexerHealthEndpoint downHealthEndpoint = new DownIndexerHealthEndpoint();
+
+    public static void reset() {
+        postsToDownDestination.set(0);
+        postsSinceRecovery.set(0);
+        recovered = false;
+    }
+
+    /**
+     * Brings DOWN_URL back up: its event posts and health polls succeed from now on.
+     */
+    public static void recover() {
+        recovered = true;
+    }
+
+    /**
+     * @return the number of event posts DOWN_URL has taken since recover()
+     */
+    public static int getPostsSinceRecovery() {
+        return postsSinceRecovery.get();
+    }
+
+    //channels are not created in a fixed order, so tell the destinations apart by URL
+    private static boolean goesDown(FutureCallback<HttpResponse> cb) {
+        return DOWN_URL.equals(((HttpCallbacksAbstract) cb).getManager().getSender().getBaseUrl());
+    }
+
+    private static boolean isDown(FutureCallback<HttpResponse> cb) {
+        return goesDown(cb) && !recovered && postsToDownDestination.get() >= POSTS_BEFORE_DOWN;
+    }
+
+    @Override
+    public void postEvents(HttpPostable events,
+            FutureCallback<HttpResponse> httpCallback) {
+        if (goesDown(httpCallback) && recovered) {
+            postsSinceRecovery.incrementAndGet();
+            super.postEvents(events, httpCallback);
+        } else if (goesDown(httpCallback) && postsToDownDestination.getAndIncrement() >= POSTS_BEFORE_DOWN) {
+            downEventEndpoint.post(events, httpCallback);
+        } else {
+            super.postEvents(events, httpCallback);
+        }
+    }
+
+    @Override
+    public void checkHealthEndpoint(FutureCallback<HttpResponse> httpCallback) {
+        if (isDown(httpCallback)) {
+            downHealthEndpoint.pollHealth(httpCallback);
+        } else {
+            super.checkHealthEndpoint(httpCallback);
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.sim.errorgen.indexer;
+
+import com.splunk.cloudfwd.impl.http.HecIOManager;
+import com.splunk.cloudfwd.impl.http.HttpPostable;
+import com.splunk.cloudfwd.impl.http.httpascync.HttpCallbacksAbstract;
+import com.splunk.cloudfwd.impl.sim.SimulatedHECEndpoints;
+import java.net.ConnectException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+
+/**
+ * The destination DOWN_URL restarts, and never comes back, after it has taken POSTS_BEFORE_DOWN event posts. From
+ * then on every request to it, ack polls included, is refused with a ConnectException, so the batches it took but
+ * had not acknowledged are never acknowledged through it. Other destinations behave normally.
+ */
+public class RefusingDestinationEndpoints extends SimulatedHECEndpoints {
+
+    public static final String DOWN_URL = "https://127.0.0.1:8088";
+    public static final int POSTS_BEFORE_DOWN = 20;
+    private static final AtomicInteger postsToDownDestination = new AtomicInteger(0);
+
+    private static boolean isDown(FutureCallback<HttpResponse> cb) {
+        return DOWN_URL.equals(((HttpCallbacksAbstract) cb).getManager().getSender().getBaseUrl())
+                && postsToDownDestination.get() >= POSTS_BEFORE_DOWN;
+    }
+
+    private static void refuse(FutureCallback<HttpResponse> cb) {
+        ((HttpCallbacksAbstract) cb).failed(new ConnectException("Connection refused"));
+    }
+
+    @Override
+    public void postEvents(HttpPostable events,
+            FutureCallback<HttpResponse> httpCallback) {
+        if (DOWN_URL.equals(((HttpCallbacksAbstract) httpCallback).getManager().getSender().getBaseUrl())
+                && postsToDownDestination.getAndIncrement() >= POSTS_BEFORE_DOWN) {
+            refuse(httpCallback);
+        } else {
+            super.postEvents(events, httpCallback);
+        }
+    }
+
+    @Override
+    public void pollAcks(HecIOManager ackMgr,
+            FutureCallback<HttpResponse> httpCallback) {
+        if (isDown(httpCallback)) {
+            refuse(httpCallback);
+        } else {
+            super.pollAcks(ackMgr, httpCallback);
+        }
+    }
+
+    @Override
+    public void checkHealthEndpoint(FutureCallback<HttpResponse> httpCallback) {
+        if (isDown(httpCallback)) {
+            refuse(httpCallback);
+        } else {
+            super.checkHealthEndpoint(httpCallback);
+        }
+    }
+
+    @Override
+    public void checkAckEndpoint(FutureCallback<HttpResponse> httpCallback) {
+        if (isDown(httpCallback)) {
+            refuse(httpCallback);
+        } else {
+            super.checkAckEndpoint(httpCallback);
+        }
+    }
+
+    @Override
+    public void checkRawEndpoint(FutureCallback<HttpResponse> httpCallback) {
+        if (isDown(httpCallback)) {
+            refuse(httpCallback);
+        } else {
+            super.checkRawEndpoint(httpCallback);
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.sim.errorgen.slow;
+
+import com.splunk.cloudfwd.impl.http.HttpPostable;
+import com.splunk.cloudfwd.impl.sim.SimulatedHECEndpoints;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+
+/**
+ * Only the first channel created is slow: its event posts are answered after a delay, while every other channel
+ * behaves normally. Unlike SlowEndpoints, the delay does not block the calling thread.
+ */
+public class SlowChannelEndpoints extends SimulatedHECEndpoints {
+
+    public static long delayMS = 300;
+    public static final AtomicInteger instances = new AtomicInteger(0);
+    private static final ScheduledExecutorService delayer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "SlowChannelEndpoints delayer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final boolean slow = instances.getAndIncrement() == 0;
+
+    @Override
+    public void postEvents(HttpPostable events,
+            FutureCallback<HttpResponse> httpCallback) {
+        if (slow) {
+            delayer.schedule(() -> eventEndpoint.post(events, httpCallback), delayMS, TimeUnit.MILLISECONDS);
+        } else {
+            eventEndpoint.post(events, httpCallback);
+        }
+    }
+
+}
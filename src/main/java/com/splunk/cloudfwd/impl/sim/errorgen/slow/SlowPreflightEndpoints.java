@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.sim.errorgen.slow;
+
+import com.splunk.cloudfwd.Connection;
+import com.splunk.cloudfwd.EventBatch;
+import com.splunk.cloudfwd.impl.http.HttpPostable;
+import com.splunk.cloudfwd.impl.http.httpascync.HttpCallbacksAbstract;
+import com.splunk.cloudfwd.impl.sim.SimulatedHECEndpoints;
+import com.splunk.cloudfwd.impl.sim.errorgen.PreFlightAckEndpoint;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+
+/**
+ * Delays the preflight /ack response so that a Connection is usable before any channel has passed preflight. Records
+ * the ids of the EventBatches posted by each Connection, in the order of their first post.
+ */
+public class SlowPreflightEndpoints extends SimulatedHECEndpoints {
+
+    public static long PREFLIGHT_DELAY_MS = 1000;
+    private static final Map<Connection, List<Comparable>> postedIds = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * @param c
+     * @return the ids of the EventBatches the Connection posted, in the order they were first posted
+     */
+    public static List<Comparable> getPostedIds(Connection c) {
+        List<Comparable> ids = postedIds.getOrDefault(c, Collections.emptyList());
+        synchronized (ids) {
+            return new ArrayList<>(ids);
+        }
+    }
+
+    @Override
+    public void postEvents(HttpPostable events, FutureCallback<HttpResponse> httpCallback) {
+        Connection c = ((HttpCallbacksAbstract) httpCallback).getConnection();
+        List<Comparable> ids = postedIds.computeIfAbsent(c, k -> new ArrayList<>());
+        Comparable id = ((EventBatch) events).getId();
+        synchronized (ids) {
+            if (!ids.contains(id)) { //a resend keeps its place
+                ids.add(id);
+            }
+        }
+        super.postEvents(events, httpCallback);
+    }
+
+    @Override
+    protected PreFlightAckEndpoint createPreFlightAckEndpoint() {
+        return new PreFlightAckEndpoint() {
+            @Override
+            protected void delayResponse(Runnable r) {
+                if (!executor.isShutdown()) {
+                    executor.schedule(r, PREFLIGHT_DELAY_MS, TimeUnit.MILLISECONDS);
+                }
+            }
+        };
+    }
+
+}
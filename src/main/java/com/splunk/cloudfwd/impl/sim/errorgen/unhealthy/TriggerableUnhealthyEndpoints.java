@@ -15,9 +15,14 @@
  */
 package com.splunk.cloudfwd.impl.sim.errorgen.unhealthy;
 
+import com.splunk.cloudfwd.Connection;
 import com.splunk.cloudfwd.impl.http.httpascync.HttpCallbacksAbstract;
 import com.splunk.cloudfwd.impl.sim.HealthEndpoint;
 import com.splunk.cloudfwd.impl.sim.SimulatedHECEndpoints;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.http.HttpResponse;
 import org.apache.http.concurrent.FutureCallback;
 import org.slf4j.Logger;
@@ -31,6 +36,17 @@ public class TriggerableUnhealthyEndpoints extends SimulatedHECEndpoints {
   private static final Logger LOG = LoggerFactory.getLogger(TriggerableUnhealthyEndpoints.class.getName());
 
   public static boolean healthy = true;
+  //count of /health requests received, per Connection, so that Connections of other tests do not interfere
+  private static final Map<Connection, AtomicInteger> healthPolls = Collections.synchronizedMap(new WeakHashMap<>());
+
+  public static int getHealthPolls(Connection c) {
+    AtomicInteger polls = healthPolls.get(c);
+    return null == polls ? 0 : polls.get();
+  }
+
+  public static void resetHealthPolls(Connection c) {
+    healthPolls.remove(c);
+  }
   
   @Override
   protected HealthEndpoint createHealthEndpoint() {
@@ -41,6 +57,8 @@ public class TriggerableUnhealthyEndpoints extends SimulatedHECEndpoints {
 
     @Override
     public void pollHealth(FutureCallback<HttpResponse> cb) {
+      healthPolls.computeIfAbsent(((HttpCallbacksAbstract) cb).getConnection(), c -> new AtomicInteger())
+              .incrementAndGet();
       if (healthy) {
         LOG.trace("HEALTH POLL OK");
         ((HttpCallbacksAbstract) cb).completed(               
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.util;
+
+import com.splunk.cloudfwd.ConnectionSettings;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+
+/**
+ * Keeps the channels of a busy indexer out of the load balancer's rotation for a while, so that producers stop
+ * feeding an indexer whose queues are full. A 503 starts a cool-down window of BUSY_COOLDOWN_MS, or of the delay in
+ * the response's Retry-After header. The window doubles with each further 503, up to RETRY_BACKOFF_MAX_MS, and halves
+ * with each success. A cool-down belongs to one channel, or with BUSY_COOLDOWN_DESTINATION to every channel of a
+ * destination. When a window ends the LoadBalancer is woken, since the channels may have become available.
+ */
+public class BusyCooldown {
+
+    private final Logger LOG;
+    private final String name;
+    private final LoadBalancer loadBalancer;
+    private final ConnectionImpl connection;
+    private long windowMS; //guarded by this. Zero until the first 503
+    private volatile long until; //the cool-down lasts until this time
+
+    BusyCooldown(String name, LoadBalancer lb, ConnectionImpl c) {
+        this.LOG = c.getLogger(BusyCooldown.class.getName());
+        this.name = name;
+        this.loadBalancer = lb;
+        this.connection = c;
+    }
+
+    /**
+     * Starts or extends the cool-down, after a 503.
+     * @param retryAfterMS delay requested by the server's Retry-After header, or negative if there was none
+     */
+    public void busy(long retryAfterMS) {
+        ConnectionSettings settings = connection.getSettings();
+        long base = settings.getBusyCooldownMS();
+        if (base <= 0) {
+            return;
+        }
+        long max = Math.max(base, settings.getRetryBackoffMaxMS());
+        long cooldown;
+        synchronized (this) {
+            windowMS = windowMS <= 0 ? base : Math.min(max, windowMS * 2);
+            cooldown = retryAfterMS >= 0 ? Math.min(retryAfterMS, max) : windowMS;
+            long end = System.currentTimeMillis() + cooldown;
+            if (end <= until) {
+                return; //already cooling down for longer
+            }
+            until = end;
+        }
+        LOG.debug("{} busy, cooling down for {} ms", name, cooldown);
+        ThreadScheduler.getSchedulerInstance("busy_cooldown", connection.getThreadPoolScope(), this)
+                .schedule(loadBalancer::wakeUp, cooldown, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Halves the window the next 503 starts from. A cool-down already under way is not cut short.
+     */
+    public synchronized void ok() {
+        if (windowMS > 0) {
+            windowMS = windowMS / 2 < connection.getSettings().getBusyCooldownMS() ? 0 : windowMS / 2;
+        }
+    }
+
+    /**
+     * @return true while in a cool-down window
+     */
+    public boolean isCooling() {
+        return System.currentTimeMillis() < until;
+    }
+
+    /**
+     * @return the window the last 503 started from, or zero
+     */
+    public synchronized long getWindowMS() {
+        return windowMS;
+    }
+
+}
@@ -15,10 +15,18 @@
  */
 package com.splunk.cloudfwd.impl.util;
 
+import com.splunk.cloudfwd.BulkConnectionCallbacks;
 import com.splunk.cloudfwd.ConnectionCallbacks;
 import com.splunk.cloudfwd.EventBatch;
 import com.splunk.cloudfwd.impl.ConnectionImpl;
 import com.splunk.cloudfwd.impl.EventBatchImpl;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.slf4j.Logger;
 
 /**
@@ -26,71 +34,149 @@ import org.slf4j.Logger;
  EventBatchImpl fails, the EventTrackers must be canceled. When an EventBatchImpl is
  acknowledged, also the EventTrackers must be canceled, because in either case
  the EventBatchImpl is no longer tracked by the Connection.
+ * <p>
+ * The EventTrackers are always canceled on the calling thread. Unless an Executor is set (by CALLBACK_EXECUTOR, or
+ * Connection.setCallbackExecutor) the user's callbacks run there too. With an Executor, the user's callbacks are
+ * queued and the queue is delivered on the Executor one callback at a time, in the order they were raised. Because the
+ * CheckpointManager raises acknowledged before checkpoint, and raises checkpoints in increasing order, the user sees
+ * them in that order no matter what threads the Executor uses.
  *
  * @author ghendrey
  */
 public class CallbackInterceptor implements ConnectionCallbacks {
     private static Logger LOG;
+    static final int MAX_BATCH = 64; //callbacks delivered before giving up the Executor's thread
 
     ConnectionCallbacks callbacks;
     CheckpointManager cpManager;
+    SpillQueue spillQueue;
+    private final ConnectionImpl connection;
+    private volatile boolean scopedExecutor; //true to use the Connection's callback_executor, looked up per delivery
+    private volatile Executor executor; //set by setExecutor; null to run callbacks on the calling thread
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final ThreadLocal<Boolean> delivering = ThreadLocal.withInitial(() -> false);
 
     public CallbackInterceptor(ConnectionCallbacks callbacks, ConnectionImpl c) {
         this.LOG = c.getLogger(CallbackInterceptor.class.getName());
         this.callbacks = callbacks;
+        this.connection = c;
         this.cpManager = c.getCheckpointManager();
+        this.spillQueue = c.getSpillQueue();
+        this.scopedExecutor = c.getSettings().isCallbackExecutorOrdered();
+    }
+
+    /**
+     * Set it before sending, since callbacks raised while it changes may be delivered out of order.
+     * @param executor where to run the user's callbacks, or null to run them on the thread that raised them
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+        this.scopedExecutor = false;
+        if (!pending.isEmpty()) {
+            scheduleDelivery();
+        }
     }
 
     @Override
     public void acknowledged(EventBatch events) {
+        deliver(() -> {
+            try {
+                callbacks.acknowledged(events);
+            } catch (Exception e) {
+                LOG.error("Caught exception from ConnectionCallbacks.acknowledged: " + e.getMessage());
+                LOG.error(e.getMessage(), e);
+            }
+        });
         try {
-            callbacks.acknowledged(events);
+            ((EventBatchImpl) events).cancelEventTrackers(); //remove the EventBatchImpl from the places in the system it should be removed
+            spillQueue.done(events);
         } catch (Exception e) {
-            LOG.error("Caught exception from ConnectionCallbacks.acknowledged: " + e.getMessage());
+            LOG.error("Caught exception in callback interceptor acknowledged: " + e.getMessage());
             LOG.error(e.getMessage(), e);
-        } finally {
+        }
+    }
+
+    /**
+     * Acknowledges EventBatches in bulk: with one call to acknowledged(List) if the user's callbacks are
+     * BulkConnectionCallbacks, otherwise with one call to acknowledged(EventBatch) per EventBatch.
+     * @param events
+     */
+    public void acknowledged(List<EventBatch> events) {
+        deliver(() -> {
             try {
-                ((EventBatchImpl) events).cancelEventTrackers(); //remove the EventBatchImpl from the places in the system it should be removed
+                if (callbacks instanceof BulkConnectionCallbacks) {
+                    ((BulkConnectionCallbacks) callbacks).acknowledged(events);
+                } else {
+                    events.forEach(callbacks::acknowledged);
+                }
             } catch (Exception e) {
-                LOG.error("Caught exception in finally block of callback interceptor acknowledged: " + e.getMessage());
+                LOG.error("Caught exception from ConnectionCallbacks.acknowledged: " + e.getMessage());
                 LOG.error(e.getMessage(), e);
             }
+        });
+        for (EventBatch e : events) {
+            try {
+                ((EventBatchImpl) e).cancelEventTrackers();
+                spillQueue.done(e);
+            } catch (Exception ex) {
+                LOG.error("Caught exception in callback interceptor acknowledged: " + ex.getMessage());
+                LOG.error(ex.getMessage(), ex);
+            }
         }
     }
 
     @Override
     public void failed(EventBatch events, Exception ex) {
+        if(null != events && ((EventBatchImpl)events).isFailed()){
+            LOG.debug("Ignoring failed call on already failed events {}", events);
+            return;
+        }
+        deliverFailed(events, ex);
         try {
-            if(null != events && ((EventBatchImpl)events).isFailed()){
-                LOG.debug("Ignoring failed call on already failed events {}", events);
-                return;
+            if (null != events) {
+                ((EventBatchImpl) events).setFailed(true);
+                ((EventBatchImpl) events).cancelEventTrackers();//remove the EventBatchImpl from the places in the system it should be removed
+                this.cpManager.release((EventBatchImpl) events);
+                this.spillQueue.done(events);
             }
-            this.callbacks.failed(events, ex);
         } catch (Exception e) {
-            LOG.error("Caught exception from ConnectionCallbacks.failed: " + e.getMessage());
+            LOG.error("Caught exception in callback interceptor failed: " + e.getMessage());
             LOG.error(e.getMessage(), e);
-        } finally {
+        }
+    }
+
+    /**
+     * Tells the user an EventBatch timed out, without canceling its EventTrackers. The TimeoutChecker is one of those
+     * trackers, and removes the EventBatch itself; going through failed would loop back into it.
+     * @param events
+     * @param ex
+     */
+    public void timedOut(EventBatch events, Exception ex) {
+        deliverFailed(events, ex);
+    }
+
+    private void deliverFailed(EventBatch events, Exception ex) {
+        deliver(() -> {
             try {
-                if (null != events) {
-                    ((EventBatchImpl) events).setFailed(true);
-                    ((EventBatchImpl) events).cancelEventTrackers();//remove the EventBatchImpl from the places in the system it should be removed
-                    this.cpManager.release((EventBatchImpl) events);
-                }
+                this.callbacks.failed(events, ex);
             } catch (Exception e) {
-                LOG.error("Caught exception in finally block of callback interceptor failed: " + e.getMessage());
+                LOG.error("Caught exception from ConnectionCallbacks.failed: " + e.getMessage());
                 LOG.error(e.getMessage(), e);
             }
-        }
+        });
     }
 
     @Override
     public void checkpoint(EventBatch events) {
-        try {
-            callbacks.checkpoint(events); //we don't need to wrap checkpoint at present
-        } catch (Exception e) {
-            LOG.error("Caught exception from ConnectionCallbacks.checkpoint: " + e.getMessage());
-            LOG.error(e.getMessage(), e);
-        }
+        deliver(() -> {
+            try {
+                callbacks.checkpoint(events); //we don't need to wrap checkpoint at present
+            } catch (Exception e) {
+                LOG.error("Caught exception from ConnectionCallbacks.checkpoint: " + e.getMessage());
+                LOG.error(e.getMessage(), e);
+            }
+        });
     }
 
     public ConnectionCallbacks unwrap() {
@@ -99,21 +185,100 @@ public class CallbackInterceptor implements ConnectionCallbacks {
 
     @Override
     public void systemError(Exception e) {
-        try {
-            callbacks.systemError(e);
-        } catch (Exception ex) {
-            LOG.error("Caught exception from ConnectionCallbacks.systemError: " + ex.getMessage());
-            LOG.error(ex.getMessage(), ex);
-        }
+        deliver(() -> {
+            try {
+                callbacks.systemError(e);
+            } catch (Exception ex) {
+                LOG.error("Caught exception from ConnectionCallbacks.systemError: " + ex.getMessage());
+                LOG.error(ex.getMessage(), ex);
+            }
+        });
     }
 
     @Override
     public void systemWarning(Exception e) {
+        deliver(() -> {
+            try {
+                callbacks.systemWarning(e);
+            } catch (Exception ex) {
+                LOG.error("Caught exception from ConnectionCallbacks.systemWarning: " + ex.getMessage());
+                LOG.error(ex.getMessage(), ex);
+            }
+        });
+    }
+
+    /**
+     * Waits for queued callbacks to be delivered. Returns at once if called from a callback, which would otherwise
+     * wait for itself.
+     * @param ms
+     * @return true if no callbacks remain queued
+     */
+    public boolean awaitDelivered(long ms) {
+        long start = System.currentTimeMillis();
+        while (!delivering.get() && (scheduled.get() || !pending.isEmpty())
+                && System.currentTimeMillis() - start < ms) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException ex) {
+                return false;
+            }
+        }
+        return pending.isEmpty();
+    }
+
+    private void deliver(Runnable callback) {
+        if (null == getExecutor()) {
+            callback.run();
+            return;
+        }
+        pending.add(callback);
+        scheduleDelivery();
+    }
+
+    private void scheduleDelivery() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return; //a delivery is already scheduled, and will pick up what was just queued
+        }
+        try {
+            Executor e = getExecutor();
+            if (null == e) {
+                deliverPending();
+            } else if (e instanceof ExecutorService && ((ExecutorService) e).isShutdown()) {
+                throw new RejectedExecutionException("Callback executor is shut down");
+            } else {
+                e.execute(this::deliverPending);
+            }
+        } catch (RejectedExecutionException ex) {
+            LOG.warn("Callback executor rejected delivery ({}), delivering on {}", ex.getMessage(),
+                    Thread.currentThread().getName());
+            deliverPending();
+        }
+    }
+
+    /*
+     * The Connection's callback_executor is looked up on each delivery rather than once, since the Connection's
+     * scoped pools are released when it has drained, and late callbacks must then go to the shared pool.
+     */
+    private Executor getExecutor() {
+        if (scopedExecutor) {
+            return ThreadScheduler.getRejectingExecutorInstance("callback_executor", connection.getThreadPoolScope());
+        }
+        return executor;
+    }
+
+    private void deliverPending() {
+        delivering.set(true);
         try {
-            callbacks.systemWarning(e);
-        } catch (Exception ex) {
-            LOG.error("Caught exception from ConnectionCallbacks.systemWarning: " + ex.getMessage());
-            LOG.error(ex.getMessage(), ex);
+            Runnable callback;
+            for (int i = 0; i < MAX_BATCH && null != (callback = pending.poll()); i++) {
+                callback.run();
+            }
+        } finally {
+            delivering.set(false);
+            scheduled.set(false);
+        }
+        if (!pending.isEmpty()) {
+            scheduleDelivery();
         }
     }
 
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.util;
+
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+
+/**
+ * Number of channels of a LoadBalancer in each State, from the time a channel is created until it finishes closing.
+ * Each HecChannel reports its own state changes, so reading the counts costs nothing per channel, and the summary
+ * is logged every LOG_INTERVAL_MS if anything changed, rather than computed and logged on every send.
+ */
+public class ChannelStateCounts {
+
+    public enum State {
+        PREFLIGHTED, HEALTHY, FULL, QUIESCED, DECOMMISSIONED, DEAD, CLOSED, MISCONFIGURED
+    };
+
+    static final long LOG_INTERVAL_MS = 5000;
+    private final Logger LOG;
+    private final ConnectionImpl connection;
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(State.values().length);
+    private final AtomicInteger channels = new AtomicInteger();
+    private final AtomicLong version = new AtomicLong(); //incremented on every change
+    private long loggedVersion;
+    private ScheduledFuture<?> logTask;
+
+    ChannelStateCounts(ConnectionImpl c) {
+        this.LOG = c.getLogger(ChannelStateCounts.class.getName());
+        this.connection = c;
+    }
+
+    void opened() {
+        channels.incrementAndGet();
+        version.incrementAndGet();
+    }
+
+    void changed(State s, boolean on) {
+        counts.addAndGet(s.ordinal(), on ? 1 : -1);
+        version.incrementAndGet();
+    }
+
+    /**
+     * @param states bits (by State ordinal) the channel was in when it finished closing
+     */
+    void finished(int states) {
+        for (State s : State.values()) {
+            if ((states & (1 << s.ordinal())) != 0) {
+                counts.decrementAndGet(s.ordinal());
+            }
+        }
+        channels.decrementAndGet();
+        version.incrementAndGet();
+    }
+
+    public int get(State s) {
+        return counts.get(s.ordinal());
+    }
+
+    /**
+     * @return channels created and not yet finished closing
+     */
+    public int getChannels() {
+        return channels.get();
+    }
+
+    synchronized void start() {
+        if (null == logTask && LOG.isInfoEnabled()) {
+            logTask = ThreadScheduler.getSchedulerInstance("lb_state_logger", connection.getThreadPoolScope(),
+                    connection).scheduleWithFixedDelay(this::logIfChanged, LOG_INTERVAL_MS, LOG_INTERVAL_MS,
+                            TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized void stop() {
+        if (null != logTask) {
+            logTask.cancel(false);
+            logTask = null;
+        }
+        logIfChanged();
+    }
+
+    private synchronized void logIfChanged() {
+        long v = version.get();
+        if (v == loggedVersion) {
+            return;
+        }
+        loggedVersion = v;
+        LOG.info("LOAD BALANCER: {}", this);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("channels=").append(getChannels());
+        for (State s : State.values()) {
+            sb.append(", ").append(s.name().toLowerCase()).append('=').append(get(s));
+        }
+        return sb.toString();
+    }
+
+}
@@ -19,10 +19,15 @@ import com.splunk.cloudfwd.impl.ConnectionImpl;
 import com.splunk.cloudfwd.impl.EventBatchImpl;
 import com.splunk.cloudfwd.LifecycleEvent;
 import com.splunk.cloudfwd.impl.http.lifecycle.EventBatchResponse;
+import com.splunk.cloudfwd.impl.http.lifecycle.EventBatchesAcknowledged;
 import com.splunk.cloudfwd.impl.http.lifecycle.LifecycleEventObserver;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import org.slf4j.Logger;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import com.splunk.cloudfwd.ConnectionCallbacks;
@@ -38,19 +43,65 @@ import static com.splunk.cloudfwd.LifecycleEvent.Type.ACK_POLL_OK;
 public class CheckpointManager implements LifecycleEventObserver {
     private Logger LOG;
     volatile private SortedMap<Comparable, EventBatchImpl> orderedEvents = new TreeMap<>(); //key EventBatchImpl.id, value is EventBatchImpl
+    //ids in orderedEvents whose acknowledged callback has been raised. An EventBatch is marked acknowledged as soon as
+    //its ack arrives, before its ACK_POLL_OK gets here, and the highwater must not checkpoint it before it is acknowledged
+    private final Set<Comparable> acknowledged = new HashSet<>();
     private final ConnectionImpl connection;
     private Comparable checkpoint;
     private boolean enabled;
+    private final CheckpointStore store;
 
     public CheckpointManager(ConnectionImpl c) {
         this.LOG = c.getLogger(CheckpointManager.class.getName());
         this.connection = c;
         this.enabled = c.getPropertiesFileHelper().isCheckpointEnabled();
+        this.store = new CheckpointStore(c);
+        if (enabled) {
+            store.start();
+        }
+    }
+
+    public CheckpointStore getStore() {
+        return store;
+    }
+
+    /**
+     * @return number of EventBatches not yet passed by the checkpoint
+     */
+    public synchronized int getWindowDepth() {
+        return orderedEvents.size();
+    }
+
+    /**
+     * @return true if no EventBatches await acknowledgement
+     */
+    public synchronized boolean isIdle() {
+        return orderedEvents.isEmpty();
+    }
+
+    /**
+     * Closes the CheckpointStore if no EventBatches await acknowledgement. Otherwise the store is closed when the
+     * last of them is acknowledged or failed.
+     */
+    public synchronized void closeStoreIfIdle() {
+        if (orderedEvents.isEmpty()) {
+            store.close();
+        }
     }
 
     @Override
     public void update(LifecycleEvent e) {
-        if (e.getType() == ACK_POLL_OK) {
+        if (e instanceof EventBatchesAcknowledged) {
+            List<EventBatchImpl> events = ((EventBatchesAcknowledged) e).getEvents();
+            if (enabled) {
+                acknowledgeAll(events);
+            } else {
+                ((CallbackInterceptor) this.connection.getCallbacks()).acknowledged(new ArrayList<>(events));
+                ConnectionCallbacks cb = this.connection.getCallbacks();
+                events.forEach(cb::checkpoint);
+                events.forEach(this::recordEndToEnd);
+            }
+        } else if (e.getType() == ACK_POLL_OK) {
             EventBatchResponse resp = (EventBatchResponse) e;
             Comparable id = resp.getEvents().getId();
             if (enabled) {
@@ -59,6 +110,7 @@ public class CheckpointManager implements LifecycleEventObserver {
                 ConnectionCallbacks cb = this.connection.getCallbacks();
                 cb.acknowledged(resp.getEvents());
                 cb.checkpoint(resp.getEvents());
+                recordEndToEnd(resp.getEvents());
             }
         }
     }
@@ -75,9 +127,25 @@ public class CheckpointManager implements LifecycleEventObserver {
         ConnectionCallbacks cb = this.connection.getCallbacks();
         //callback acknowledge - must do this before bailing if events isn't highwater
         cb.acknowledged(events); //hit the callback to tell the user code that the EventBatchImpl succeeded 
+        if (orderedEvents.containsKey(events.getId())) {
+            acknowledged.add(events.getId());
+        }
         release(events);
     }
 
+    //like acknowledgeHighwaterAndBelow, but slides the highwater once for all of the EventBatches
+    private synchronized void acknowledgeAll(List<EventBatchImpl> events) {
+        ((CallbackInterceptor) this.connection.getCallbacks()).acknowledged(new ArrayList<>(events));
+        for (EventBatchImpl b : events) {
+            if (orderedEvents.containsKey(b.getId())) {
+                acknowledged.add(b.getId());
+            }
+        }
+        if (!orderedEvents.isEmpty() && acknowledged.contains(orderedEvents.firstKey())) {
+            slideHighwaterUp(this.connection.getCallbacks(), orderedEvents.get(orderedEvents.firstKey()));
+        }
+    }
+
     public synchronized void release(EventBatchImpl events) {
       // we need an event batch to checkpoint
       if (events == null) {
@@ -123,8 +191,11 @@ public class CheckpointManager implements LifecycleEventObserver {
                 entrySet().iterator(); iter.hasNext();) {
             Map.Entry<Comparable, EventBatchImpl> e = iter.next();
             //this causes us to cancelEventTrackers all *consecutive* acknowledged EventBatchImpl, forward from the tail
-            if (e.getValue().isAcknowledged() || e.getValue().isFailed()) {
+            if (acknowledged.remove(e.getKey()) || e.getValue().isFailed()) {
                 iter.remove(); //remove the callback (we are going to call it now, so no need to track it any longer)
+                if (e.getValue().isAcknowledged()) {
+                    recordEndToEnd(e.getValue());
+                }
                 ackedOrFailedEvents = e.getValue(); //hang on to highest acknowledged or failed batch id
             } else {
                 break;
@@ -136,6 +207,18 @@ public class CheckpointManager implements LifecycleEventObserver {
             LOG.info("CHECKPOINT at {}", ackedOrFailedEvents.getId());
             cb.checkpoint(ackedOrFailedEvents); //only checkpoint the highwater mark. Checkpointing lower ones is redundant.
             checkpoint = ackedOrFailedEvents.getId();
+            store.update(checkpoint);
+        }
+        if (connection.isClosed() && orderedEvents.isEmpty()) {
+            store.close(); //the last EventBatch of a closed Connection is done, so make its checkpoint durable now
+            connection.releaseThreadPoolsIfDrained();
+        }
+    }
+
+    private void recordEndToEnd(EventBatchImpl events) {
+        HecChannel c = events.getHecChannel();
+        if (null != c) {
+            c.getChannelMetrics().checkpointed(events);
         }
     }
 
@@ -174,6 +257,7 @@ public class CheckpointManager implements LifecycleEventObserver {
         //key was or was not still in the orderedEvents.
         LOG.info("released checkpoint for id {}", id);
         this.orderedEvents.remove(id);
+        this.acknowledged.remove(id);
 //    
 //    LOG.trace("deregister event batch {} on {}", events.getId(), this.hashCode());
 //    if (null == prev) {
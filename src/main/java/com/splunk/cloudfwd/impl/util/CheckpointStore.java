@@ -0,0 +1,186 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.util;
+
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+
+/**
+ * Persists the checkpoint (highwater mark) of a Connection to CHECKPOINT_FILE. The CheckpointManager hands every new
+ * checkpoint to update, which only remembers it; a task writes the latest checkpoint and fsyncs every
+ * CHECKPOINT_FLUSH_MS, so however fast the highwater slides there is at most one fsync per interval.
+ * <p>
+ * The file holds two fixed size slots, written alternately. Each slot is a sequence number, the encoded id, and a
+ * CRC32 of both. A crash while writing one slot leaves the other intact, and on open the valid slot with the higher
+ * sequence number is the last durable checkpoint. The file is written through a RandomAccessFile rather than a
+ * FileChannel, because the flush can run on callback threads, and interrupting a thread that is using a FileChannel
+ * closes the channel.
+ */
+public class CheckpointStore {
+
+    static final int SLOT_BYTES = 512;
+    private static final int MAX_ID_BYTES = SLOT_BYTES - 8 - 4 - 4; //seq, length, crc
+    private final Logger LOG;
+    private final ConnectionImpl connection;
+    private final File file; //null if disabled
+    private RandomAccessFile raf;
+    private Comparable lastDurable; //read on open, then updated by each flush
+    private volatile Comparable latest; //most recent checkpoint, not yet durable if it differs from lastDurable
+    private long seq;
+    private ScheduledFuture<?> flushTask;
+
+    public CheckpointStore(ConnectionImpl c) {
+        this.LOG = c.getLogger(CheckpointStore.class.getName());
+        this.connection = c;
+        String f = c.getSettings().getCheckpointFile();
+        this.file = null == f ? null : new File(f);
+    }
+
+    public boolean isEnabled() {
+        return null != file;
+    }
+
+    /**
+     * Opens the file, reads the last durable checkpoint, and starts flushing.
+     */
+    public synchronized void start() {
+        if (!isEnabled() || null != raf) {
+            return;
+        }
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            read();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not open checkpoint file " + file, ex);
+        }
+        if (null != lastDurable) {
+            LOG.info("Last durable checkpoint in {} is {}", file, lastDurable);
+        }
+        latest = lastDurable;
+        long ms = connection.getSettings().getCheckpointFlushMS();
+        //shared, not connection scoped: acknowledgements that arrive after close() still need flushing until the
+        //store is closed, and the connection's scoped pools are shut down by close()
+        flushTask = ThreadScheduler.getSchedulerInstance("checkpoint_flusher", connection).scheduleWithFixedDelay(this::flushQuietly, ms, ms, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records a new checkpoint. It becomes durable at the next flush.
+     * @param id
+     */
+    public void update(Comparable id) {
+        latest = id;
+    }
+
+    /**
+     * @return the checkpoint most recently made durable, or read from the file when the store was started. Null if
+     * there is none.
+     */
+    public synchronized Comparable getLastDurable() {
+        return lastDurable;
+    }
+
+    /**
+     * Makes the latest checkpoint durable, and stops flushing.
+     */
+    public synchronized void close() {
+        if (null == raf) {
+            return;
+        }
+        flushTask.cancel(false);
+        flushQuietly();
+        try {
+            raf.close();
+        } catch (IOException ex) {
+            LOG.warn("Could not close checkpoint file {}: {}", file, ex.getMessage());
+        }
+        raf = null;
+    }
+
+    private synchronized void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            LOG.error("Could not write checkpoint to {}: {}", file, e.getMessage(), e); //keep the task alive
+        }
+    }
+
+    private void flush() throws IOException {
+        Comparable id = latest;
+        if (null == raf || null == id || id.equals(lastDurable)) {
+            return; //nothing new since the last flush
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        EventIds.write(new DataOutputStream(bytes), id);
+        byte[] encoded = bytes.toByteArray();
+        if (encoded.length > MAX_ID_BYTES) {
+            LOG.warn("Checkpoint id {} is too long to persist ({} bytes)", id, encoded.length);
+            return;
+        }
+        long next = seq + 1;
+        ByteBuffer slot = ByteBuffer.allocate(SLOT_BYTES);
+        slot.putLong(next).putInt(encoded.length).put(encoded);
+        slot.putInt(crc(slot.array(), slot.position()));
+        raf.seek((next % 2) * SLOT_BYTES);
+        raf.write(slot.array());
+        raf.getFD().sync();
+        seq = next;
+        lastDurable = id;
+    }
+
+    private void read() throws IOException {
+        for (int i = 0; i < 2; i++) {
+            if (raf.length() < (i + 1) * SLOT_BYTES) {
+                continue; //never written
+            }
+            ByteBuffer slot = ByteBuffer.allocate(SLOT_BYTES);
+            raf.seek(i * SLOT_BYTES);
+            raf.readFully(slot.array());
+            long s = slot.getLong();
+            int len = slot.getInt();
+            if (len <= 0 || len > MAX_ID_BYTES || s <= seq) {
+                continue;
+            }
+            int crcAt = 8 + 4 + len;
+            if (slot.getInt(crcAt) != crc(slot.array(), crcAt)) {
+                LOG.warn("Ignoring torn checkpoint slot {} in {}", i, file);
+                continue;
+            }
+            byte[] encoded = new byte[len];
+            slot.get(encoded);
+            seq = s;
+            lastDurable = EventIds.read(new DataInputStream(new ByteArrayInputStream(encoded)));
+        }
+    }
+
+    private static int crc(byte[] b, int len) {
+        CRC32 crc = new CRC32();
+        crc.update(b, 0, len);
+        return (int) crc.getValue();
+    }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.util;
+
+import com.splunk.cloudfwd.LifecycleEvent;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.impl.http.lifecycle.Failure;
+import com.splunk.cloudfwd.impl.http.lifecycle.Response;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import org.slf4j.Logger;
+
+/**
+ * Tracks whether one destination (the base URL shared by its channels) can be reached. Any server response counts as
+ * reachable, and a Failure (no response at all) counts against it. When CIRCUIT_BREAKER_FAILURE_RATIO of the last
+ * WINDOW_SIZE outcomes are failures, the breaker opens and every channel to the destination is unavailable, instead
+ * of each channel discovering the outage on its own. Every CIRCUIT_BREAKER_OPEN_MS an open breaker goes half-open
+ * and sends a single health poll through one of the destination's channels. A healthy reply closes it.
+ * <p>
+ * A refused connection or a failed TLS handshake (other than a certificate or trust error) means the destination
+ * itself is down (an indexer restarting, for instance), so the first one opens the breaker at once rather than waiting
+ * for the window, and the destination's channels are failed over together: each is replaced by a channel to a
+ * destination whose breaker is closed, and the events they had posted but not yet had acknowledged are resent through
+ * the other destinations. If every destination's breaker is open there is nowhere to fail over to, and the channels
+ * are kept.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    };
+
+    static final int WINDOW_SIZE = 20;
+    static final int MIN_OUTCOMES = 10; //don't judge a destination on a handful of requests
+    private final Logger LOG;
+    private final String destination;
+    private final LoadBalancer loadBalancer;
+    private final ConnectionImpl connection;
+    private final boolean[] failures = new boolean[WINDOW_SIZE]; //ring of recent outcomes
+    private int next;
+    private int count;
+    private int failureCount;
+    private volatile State state = State.CLOSED;
+    private ScheduledFuture<?> probeTask;
+
+    CircuitBreaker(String destination, LoadBalancer lb, ConnectionImpl c) {
+        this.LOG = c.getLogger(CircuitBreaker.class.getName());
+        this.destination = destination;
+        this.loadBalancer = lb;
+        this.connection = c;
+    }
+
+    /**
+     * @return true unless the breaker is open or half-open
+     */
+    public boolean isClosed() {
+        return state == State.CLOSED;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Records the outcome of a request to the destination. Events that are neither a Response nor a Failure are
+     * ignored.
+     * @param e
+     */
+    public synchronized void record(LifecycleEvent e) {
+        boolean failed = e instanceof Failure;
+        if (!failed && !(e instanceof Response)) {
+            return;
+        }
+        double ratio = connection.getSettings().getCircuitBreakerFailureRatio();
+        if (ratio <= 0) {
+            return;
+        }
+        switch (state) {
+            case CLOSED:
+                add(failed);
+                if (failed && isConnectFailure(e.getException())) {
+                    LOG.warn("Connection to {} failed: {}", destination, e.getException().getMessage());
+                    open();
+                    //failover sends events through other channels, so it must not run on this channel's thread
+                    ThreadScheduler.getExecutorInstance("destination_failover", connection.getThreadPoolScope())
+                            .execute(() -> loadBalancer.failover(destination));
+                } else if (count >= MIN_OUTCOMES && failureCount >= ratio * count) {
+                    open();
+                }
+                break;
+            case HALF_OPEN:
+                if (failed) {
+                    LOG.warn("Probe of {} failed, circuit breaker stays open", destination);
+                    state = State.OPEN;
+                } else if (e.getType() == LifecycleEvent.Type.HEALTH_POLL_OK) {
+                    close();
+                }
+                break;
+            default:
+                break; //while open, the channels' own stragglers say nothing new
+        }
+    }
+
+    //the destination could not be connected to at all, as opposed to a request that timed out or was cut off. A
+    //certificate or trust problem also fails the TLS handshake, but it is a misconfiguration that failing over would
+    //not fix, so it is left to the failure ratio
+    private static boolean isConnectFailure(Throwable t) {
+        boolean connectFailure = false;
+        for (; null != t; t = t.getCause()) {
+            if (isCertificateFailure(t)) {
+                return false;
+            }
+            if (t instanceof ConnectException || t instanceof NoRouteToHostException
+                    || t instanceof SSLHandshakeException) {
+                connectFailure = true;
+            }
+        }
+        return connectFailure;
+    }
+
+    private static boolean isCertificateFailure(Throwable t) {
+        if (t instanceof GeneralSecurityException || t instanceof SSLPeerUnverifiedException) {
+            return true; //CertificateException, CertPathValidatorException, hostname mismatch and the like
+        }
+        //alerts from the peer, such as bad_certificate or certificate_unknown, carry no cause
+        return t instanceof SSLHandshakeException && null != t.getMessage()
+                && t.getMessage().toLowerCase().contains("certificate");
+    }
+
+    private void add(boolean failed) {
+        if (count == WINDOW_SIZE) {
+            if (failures[next]) {
+                failureCount--;
+            }
+        } else {
+            count++;
+        }
+        failures[next] = failed;
+        if (failed) {
+            failureCount++;
+        }
+        next = (next + 1) % WINDOW_SIZE;
+    }
+
+    private void open() {
+        LOG.warn("Opening circuit breaker for {}: {} of last {} requests failed", destination, failureCount, count);
+        state = State.OPEN;
+        long openMS = connection.getSettings().getCircuitBreakerOpenMS();
+        probeTask = ThreadScheduler.getSchedulerInstance("circuit_breaker", connection.getThreadPoolScope(), connection)
+                .scheduleWithFixedDelay(this::probe, openMS, openMS, TimeUnit.MILLISECONDS);
+    }
+
+    private void close() {
+        LOG.info("Closing circuit breaker for {}", destination);
+        state = State.CLOSED;
+        count = 0;
+        failureCount = 0;
+        next = 0;
+        cancelProbes();
+        loadBalancer.wakeUp(); //the destination's channels can take traffic again
+    }
+
+    private void probe() {
+        try {
+            HecChannel c;
+            synchronized (this) {
+                if (state == State.CLOSED) {
+                    return;
+                }
+                c = loadBalancer.getChannelTo(destination);
+                if (null == c) {
+                    LOG.info("No channels left to {}, closing its circuit breaker", destination);
+                    close();
+                    return;
+                }
+                state = State.HALF_OPEN; //a probe that gets no reply at all is simply retried on the next tick
+            }
+            LOG.debug("Probing {} through {}", destination, c);
+            c.getSender().getHecIOManager().pollHealth();
+        } catch (Exception e) {
+            LOG.error("Circuit breaker probe of {} failed: {}", destination, e.getMessage(), e); //keep the task alive
+        }
+    }
+
+    synchronized void cancelProbes() {
+        if (null != probeTask) {
+            probeTask.cancel(false);
+            probeTask = null;
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.util;
+
+/**
+ * JMX view of a Connection. Registered as com.splunk.cloudfwd:type=Connection,connection=N when ENABLE_JMX is true.
+ */
+public interface ConnectionMXBean {
+
+    /**
+     * @return bytes of EventBatches sent but not yet acknowledged or failed
+     */
+    public long getInFlightBytes();
+
+    /**
+     * @return EventBatches sent but not yet acknowledged or failed
+     */
+    public int getInFlightBatches();
+
+    /**
+     * @return EventBatches above the checkpoint, that is, not yet passed by the highwater mark. Zero when checkpoints
+     * are disabled.
+     */
+    public int getCheckpointWindowDepth();
+
+    /**
+     * @return threads waiting in the LoadBalancer for a channel to become available
+     */
+    public int getBlockedProducers();
+
+    /**
+     * @return EventBatches in the spill queue, waiting to be handed to the LoadBalancer
+     */
+    public int getSpilledBatches();
+
+    public long getAckPollMS();
+
+    /**
+     * Changes ACK_POLL_MS, and restarts ack polling on every channel with the new interval.
+     * @param ms
+     */
+    public void setAckPollMS(long ms);
+
+    public long getAckTimeoutMS();
+
+    public void setAckTimeoutMS(long ms);
+
+    public boolean isClosed();
+
+}
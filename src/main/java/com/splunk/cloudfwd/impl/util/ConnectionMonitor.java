@@ -0,0 +1,249 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.util;
+
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+
+/**
+ * Registers the ConnectionMXBean and LoadBalancerMXBean of a Connection, and the HecChannelMXBean of each of its
+ * channels, when ENABLE_JMX is true. Otherwise every method does nothing.
+ */
+public class ConnectionMonitor implements ConnectionMXBean {
+
+    private final Logger LOG;
+    private final ConnectionImpl connection;
+    private final boolean enabled;
+    private final int number;
+    private ObjectName connectionName;
+    private ObjectName loadBalancerName;
+
+    public ConnectionMonitor(ConnectionImpl c) {
+        this.LOG = c.getLogger(ConnectionMonitor.class.getName());
+        this.connection = c;
+        this.enabled = c.getSettings().isJmxEnabled();
+        this.number = enabled ? Jmx.nextConnectionNumber() : 0;
+    }
+
+    public synchronized void register() {
+        if (!enabled || null != connectionName) {
+            return;
+        }
+        connectionName = Jmx.register(this, "type=Connection,connection=" + number, LOG);
+        loadBalancerName = Jmx.register(new LoadBalancerMonitor(), "type=LoadBalancer,connection=" + number, LOG);
+    }
+
+    public synchronized void unregister() {
+        Jmx.unregister(connectionName, LOG);
+        Jmx.unregister(loadBalancerName, LOG);
+        connectionName = null;
+        loadBalancerName = null;
+    }
+
+    /**
+     * @param c
+     * @return the name of the channel's HecChannelMXBean, to pass to unregisterChannel, or null if none was
+     * registered
+     */
+    ObjectName registerChannel(HecChannel c) {
+        if (!enabled) {
+            return null;
+        }
+        return Jmx.register(new ChannelMonitor(c),
+                "type=HecChannel,connection=" + number + ",channel=" + c.getChannelId(), LOG);
+    }
+
+    void unregisterChannel(ObjectName name) {
+        Jmx.unregister(name, LOG);
+    }
+
+    @Override
+    public long getInFlightBytes() {
+        return connection.getTimeoutChecker().getSizeInBytes();
+    }
+
+    @Override
+    public int getInFlightBatches() {
+        return connection.getTimeoutChecker().getNumInFlight();
+    }
+
+    @Override
+    public int getCheckpointWindowDepth() {
+        return connection.getCheckpointManager().getWindowDepth();
+    }
+
+    @Override
+    public int getBlockedProducers() {
+        return connection.getLoadBalancer().getNumBlockedSenders();
+    }
+
+    @Override
+    public int getSpilledBatches() {
+        return connection.getSpillQueue().getNumPending();
+    }
+
+    @Override
+    public long getAckPollMS() {
+        return connection.getSettings().getAckPollMS();
+    }
+
+    @Override
+    public void setAckPollMS(long ms) {
+        connection.getSettings().setAckPollMS(ms);
+    }
+
+    @Override
+    public long getAckTimeoutMS() {
+        return connection.getSettings().getAckTimeoutMS();
+    }
+
+    @Override
+    public void setAckTimeoutMS(long ms) {
+        connection.getSettings().setAckTimeoutMS(ms);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return connection.isClosed();
+    }
+
+    private class LoadBalancerMonitor implements LoadBalancerMXBean {
+
+        private int get(ChannelStateCounts.State s) {
+            return connection.getLoadBalancer().getChannelStateCounts().get(s);
+        }
+
+        @Override
+        public int getChannels() {
+            return connection.getLoadBalancer().getChannelStateCounts().getChannels();
+        }
+
+        @Override
+        public int getPreflighted() {
+            return get(ChannelStateCounts.State.PREFLIGHTED);
+        }
+
+        @Override
+        public int getAvailable() {
+            //availability also depends on the destination's circuit breaker, so it is not counted incrementally
+            return (int) connection.getLoadBalancer().getChannelsSnapshot().stream()
+                    .filter(HecChannel::isAvailable).count();
+        }
+
+        @Override
+        public int getHealthy() {
+            return get(ChannelStateCounts.State.HEALTHY);
+        }
+
+        @Override
+        public int getFull() {
+            return get(ChannelStateCounts.State.FULL);
+        }
+
+        @Override
+        public int getQuiesced() {
+            return get(ChannelStateCounts.State.QUIESCED);
+        }
+
+        @Override
+        public int getDecommissioned() {
+            return get(ChannelStateCounts.State.DECOMMISSIONED);
+        }
+
+        @Override
+        public int getDead() {
+            return get(ChannelStateCounts.State.DEAD);
+        }
+
+        @Override
+        public int getClosed() {
+            return get(ChannelStateCounts.State.CLOSED);
+        }
+
+        @Override
+        public int getMisconfigured() {
+            return get(ChannelStateCounts.State.MISCONFIGURED);
+        }
+
+    }
+
+    private class ChannelMonitor implements HecChannelMXBean {
+
+        private final HecChannel channel;
+
+        ChannelMonitor(HecChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public String getChannelId() {
+            return channel.getChannelId();
+        }
+
+        @Override
+        public String getUrl() {
+            return channel.getSender().getBaseUrl();
+        }
+
+        @Override
+        public int getUnackedCount() {
+            return channel.getUnackedCount();
+        }
+
+        @Override
+        public boolean isHealthy() {
+            return channel.isHealthy();
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return channel.isAvailable();
+        }
+
+        @Override
+        public boolean isQuiesced() {
+            return channel.isQuiesced();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return channel.isClosed();
+        }
+
+        @Override
+        public String getStatus() {
+            return String.valueOf(channel.getHealthNonblocking().getStatus().getType());
+        }
+
+        @Override
+        public long getAgeMS() {
+            return channel.getHealthNonblocking().getChannelAge().toMillis();
+        }
+
+        @Override
+        public void decommission() {
+            try {
+                channel.closeAndReplace();
+            } catch (InterruptedException e) {
+                LOG.warn("Interrupted decommissioning {} over JMX", channel);
+                Thread.currentThread().interrupt();
+            }
+        }
+
+    }
+
+}
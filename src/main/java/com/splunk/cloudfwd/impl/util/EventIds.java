@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * Binary encoding of Event and EventBatch ids, for the SpillQueue and CheckpointStore. Integer, Long and String ids
+ * are written as such, and any other Serializable id with Java serialization, so that ids read back equal, and have
+ * the same type as, the ids written. An id that is not Serializable is written, and read back, as its String form.
+ */
+final class EventIds {
+
+    private static final byte ID_INT = 1;
+    private static final byte ID_LONG = 2;
+    private static final byte ID_STRING = 3;
+    private static final byte ID_SERIALIZED = 4;
+
+    private EventIds() {
+    }
+
+    static void write(DataOutputStream out, Comparable id) throws IOException {
+        if (id instanceof Integer) {
+            out.writeByte(ID_INT);
+            out.writeInt((Integer) id);
+        } else if (id instanceof Long) {
+            out.writeByte(ID_LONG);
+            out.writeLong((Long) id);
+        } else if (id instanceof Serializable && !(id instanceof String)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream o = new ObjectOutputStream(bytes)) {
+                o.writeObject(id);
+            }
+            out.writeByte(ID_SERIALIZED);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        } else {
+            out.writeByte(ID_STRING);
+            out.writeUTF(String.valueOf(id));
+        }
+    }
+
+    static Comparable read(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case ID_INT:
+                return in.readInt();
+            case ID_LONG:
+                return in.readLong();
+            case ID_SERIALIZED:
+                byte[] b = new byte[in.readInt()];
+                in.readFully(b);
+                try (ObjectInputStream o = new ObjectInputStream(new ByteArrayInputStream(b))) {
+                    return (Comparable) o.readObject();
+                } catch (ClassNotFoundException ex) {
+                    throw new IOException("Could not read id", ex);
+                }
+            default:
+                return in.readUTF();
+        }
+    }
+
+}
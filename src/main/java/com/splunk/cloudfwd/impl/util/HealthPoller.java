@@ -0,0 +1,179 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.util;
+
+import com.splunk.cloudfwd.LifecycleEvent;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+
+/**
+ * Polls health once per destination and token, rather than once per channel. Every HEALTH_POLL_MS the poller of a
+ * destination sends the /health and /ack checks through one of the destination's channels, taking turns so that
+ * each channel's own /ack check still runs now and then. The polling channel handles the outcome as it always has,
+ * and the poller applies the same outcome to the health of the destination's other channels.
+ * <p>
+ * Successful traffic counts as a health poll: the poll is skipped while every open channel of the destination is
+ * healthy and one of them had a successful event post or ack poll within HEALTH_POLL_IDLE_MS.
+ * <p>
+ * A channel subscribes once preflight checks pass, and unsubscribes when it closes. A destination with no channels
+ * left stops polling. The LoadBalancer closes the poller once it is closed and its last channel is gone.
+ */
+public class HealthPoller {
+
+    private final Logger LOG;
+    private final ConnectionImpl connection;
+    private final Map<String, Destination> destinations = new HashMap<>(); //guarded by this
+    private boolean closed;
+
+    public HealthPoller(ConnectionImpl c) {
+        this.LOG = c.getLogger(HealthPoller.class.getName());
+        this.connection = c;
+    }
+
+    /**
+     * Starts polling the channel's destination, if it is not already polled, and includes the channel in the
+     * destination's polls.
+     * @param c
+     */
+    public synchronized void subscribe(HecChannel c) {
+        if (closed) {
+            return;
+        }
+        destinations.computeIfAbsent(key(c), Destination::new).add(c);
+    }
+
+    public synchronized void unsubscribe(HecChannel c) {
+        String key = key(c);
+        Destination d = destinations.get(key);
+        if (null != d && d.remove(c)) {
+            destinations.remove(key);
+        }
+    }
+
+    public synchronized void close() {
+        closed = true;
+        destinations.values().forEach(Destination::cancel);
+        destinations.clear();
+    }
+
+    private String key(HecChannel c) {
+        //the token is part of the key: channels created after a token change are polled with the new token
+        return c.getSender().getBaseUrl() + " " + c.getSender().getToken();
+    }
+
+    private class Destination {
+
+        private final String key;
+        private final Set<HecChannel> channels = new LinkedHashSet<>(); //guarded by HealthPoller.this
+        private final ScheduledFuture<?> task;
+        private int turn; //which channel sends the next poll
+
+        Destination(String key) {
+            this.key = key;
+            long interval = connection.getSettings().getHealthPollMS();
+            this.task = ThreadScheduler.getSchedulerInstance("health poller", connection.getThreadPoolScope(), key)
+                    .scheduleWithFixedDelay(this::poll, (long) (interval * Math.random()), interval,
+                            TimeUnit.MILLISECONDS);
+        }
+
+        void add(HecChannel c) {
+            channels.add(c);
+        }
+
+        //returns true if no channels are left, in which case polling has stopped
+        boolean remove(HecChannel c) {
+            channels.remove(c);
+            if (channels.isEmpty()) {
+                cancel();
+                return true;
+            }
+            return false;
+        }
+
+        void cancel() {
+            task.cancel(false);
+        }
+
+        private void poll() {
+            try {
+                HecChannel poller = null;
+                List<HecChannel> others = new ArrayList<>();
+                synchronized (HealthPoller.this) {
+                    List<HecChannel> open = new ArrayList<>();
+                    for (HecChannel c : channels) {
+                        if (!c.isClosed()) {
+                            open.add(c);
+                        }
+                    }
+                    for (int i = 0; i < open.size() && null == poller; i++) {
+                        HecChannel c = open.get((turn + i) % open.size());
+                        if (!c.isQuiesced()) {
+                            poller = c;
+                        }
+                    }
+                    if (null == poller) {
+                        return; //only closed or quiescing channels, which will unsubscribe soon
+                    }
+                    if (isRecentlyActive(open)) {
+                        LOG.trace("skipping health checks on {}, recent traffic was OK", key);
+                        return;
+                    }
+                    turn++;
+                    for (HecChannel c : open) {
+                        if (c != poller) {
+                            others.add(c);
+                        }
+                    }
+                }
+                LOG.trace("health checks on {} through {}", key, poller);
+                poller.getSender().getHecIOManager().pollHealth(e -> fanOut(e, others));
+            } catch (Exception e) {
+                LOG.error("Health poll of {} failed: {}", key, e.getMessage(), e); //keep the task alive
+            }
+        }
+
+        private boolean isRecentlyActive(List<HecChannel> open) {
+            long idle = connection.getSettings().getHealthPollIdleMS();
+            if (idle <= 0) {
+                return false;
+            }
+            long lastOK = 0;
+            for (HecChannel c : open) {
+                HecHealthImpl h = c.getHealthNonblocking();
+                if (!h.isHealthy()) {
+                    return false; //poll, so the health poll can restore it
+                }
+                lastOK = Math.max(lastOK, h.getTimeAtLastTrafficOK());
+            }
+            return System.currentTimeMillis() - lastOK < idle;
+        }
+
+        private void fanOut(LifecycleEvent e, List<HecChannel> others) {
+            for (HecChannel c : others) {
+                c.siblingHealthPolled(e);
+            }
+        }
+    }
+
+}
@@ -16,9 +16,11 @@
 package com.splunk.cloudfwd.impl.util;
 
 import com.splunk.cloudfwd.ConnectionCallbacks;
+import com.splunk.cloudfwd.HecHealth;
 import com.splunk.cloudfwd.impl.EventBatchImpl;
 import com.splunk.cloudfwd.impl.ConnectionImpl;
 import com.splunk.cloudfwd.LifecycleEvent;
+import com.splunk.cloudfwd.MetricsSnapshot.Latency;
 import com.splunk.cloudfwd.impl.http.ChannelMetrics;
 import com.splunk.cloudfwd.impl.http.HttpSender;
 import com.splunk.cloudfwd.impl.http.lifecycle.LifecycleEventObserver;
@@ -37,20 +39,24 @@ import com.splunk.cloudfwd.impl.http.lifecycle.PreflightFailed;
 import com.splunk.cloudfwd.error.HecConnectionStateException;
 import com.splunk.cloudfwd.error.HecIllegalStateException;
 import com.splunk.cloudfwd.error.HecNonStickySessionException;
-import com.splunk.cloudfwd.error.HecConnectionTimeoutException;
-import com.splunk.cloudfwd.error.HecNoValidChannelsException;
+import com.splunk.cloudfwd.impl.http.lifecycle.BusyResponse;
 import com.splunk.cloudfwd.impl.http.lifecycle.EventBatchResponse;
+import com.splunk.cloudfwd.impl.http.lifecycle.EventBatchesAcknowledged;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
 import java.util.logging.Level;
+import javax.management.ObjectName;
 
 /**
  *
  * @author ghendrey
  */
 public class HecChannel implements Closeable, LifecycleEventObserver {
+  private static final long PREFLIGHT_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(5);
+  private static final int LATENCY_WINDOW_SIZE = 64;
   private final Logger LOG;
   private final HttpSender sender;
   private final int maxUnackedEvents;
@@ -62,8 +68,13 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
   private volatile boolean quiesced;
   private HecHealthImpl health;
   private final LoadBalancer loadBalancer;
+  private final CircuitBreaker circuitBreaker; //shared by all channels to the same destination
+  private final BusyCooldown busyCooldown; //keeps the channel out of rotation after a 503
   private final AtomicInteger unackedCount = new AtomicInteger(0);
   private final AtomicInteger ackedCount = new AtomicInteger(0);
+  private final AtomicInteger states = new AtomicInteger(0); //bits by ChannelStateCounts.State ordinal, plus FINISHED
+  private final LatencyWindow postLatency; //the channel's POST_RTT
+  private final LatencyWindow ackLatency; //the channel's POST_TO_ACK
   private final StickySessionEnforcer stickySessionEnforcer = new StickySessionEnforcer();
   private volatile boolean started;
   private final String channelId;
@@ -74,15 +85,24 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
   private boolean preflightCompleted;
   //private volatile boolean closeFinished;
   private CountDownLatch closeFinishedLatched = new CountDownLatch(1);//used to support closeAndFinish which blocks
+  private final ObjectName mxBeanName; //null unless ENABLE_JMX
+
+  private static final int FINISHED = 1 << 31; //states are no longer counted once the channel has finished closing
 
   public HecChannel(LoadBalancer b, HttpSender sender,
           ConnectionImpl c) throws InterruptedException{
     this.LOG = c.getLogger(HecChannel.class.getName());
     this.loadBalancer = b;
     this.sender = sender;
+    this.circuitBreaker = b.getCircuitBreaker(sender.getBaseUrl());
+    this.busyCooldown = b.newBusyCooldown(sender.getBaseUrl());
+    b.getChannelStateCounts().opened();
     this.channelId = newChannelId();
-    this.channelMetrics = new ChannelMetrics(c);
+    this.channelMetrics = new ChannelMetrics(c, c.getMetricsRegistry().newChannelCounters(sender.getBaseUrl()),
+            c.getMetricsRegistry().newChannelLatencies(sender.getBaseUrl()));
     this.channelMetrics.addObserver(this);
+    this.postLatency = new LatencyWindow(channelMetrics.getLatencies().get(Latency.POST_RTT), LATENCY_WINDOW_SIZE);
+    this.ackLatency = new LatencyWindow(channelMetrics.getLatencies().get(Latency.POST_TO_ACK), LATENCY_WINDOW_SIZE);
     this.maxUnackedEvents = loadBalancer.getPropertiesFileHelper().
             getMaxUnackedEventBatchPerChannel();
     this.memoizedToString = this.channelId + "@" + sender.getBaseUrl();
@@ -90,6 +110,7 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
     this.health = new HecHealthImpl(this, new LifecycleEvent(LifecycleEvent.Type.PREFLIGHT_HEALTH_CHECK_PENDING));  
     
     sender.setChannel(this);
+    this.mxBeanName = c.getMonitor().registerChannel(this);
     start();
   }
 
@@ -99,14 +120,25 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
      * @return
      */
     public HecHealthImpl getHealth() {
-        if(!health.await(5, TimeUnit.MINUTES)){
-         Exception ex = new HecConnectionStateException(this+ " timed out waiting for preflight check to respond.",
-                HecConnectionStateException.Type.CHANNEL_PREFLIGHT_TIMEOUT);
-            this.health.setStatus(new PreflightFailed(ex), false);
+        if(!health.await(PREFLIGHT_TIMEOUT_MS, TimeUnit.MILLISECONDS)){
+            preflightTimedOut();
         }
         return health;
     }
     
+    /**
+     * @return a future that completes once the preflight check has set this channel's health, or has timed out.
+     */
+    public CompletableFuture<HecHealth> getHealthFuture() {
+        return health.getFuture();
+    }
+    
+    private void preflightTimedOut() {
+        Exception ex = new HecConnectionStateException(this+ " timed out waiting for preflight check to respond.",
+                HecConnectionStateException.Type.CHANNEL_PREFLIGHT_TIMEOUT);
+        this.health.setStatus(new PreflightFailed(ex), false);
+    }
+    
     public boolean isPreflightCompleted(){
         return preflightCompleted;
     }
@@ -126,7 +158,7 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
   synchronized void pollAcks() {
      if(null == onDemandAckPollFuture || onDemandAckPollFuture.isDone()){
            //onDemandAckPoll = ThreadScheduler.getSchedulerInstance("on_demand_ack-poller").schedule(sender.getHecIOManager()::pollAcks, 0, TimeUnit.MILLISECONDS);
-            onDemandAckPollFuture = ThreadScheduler.getExecutorInstance("on_demand_ack-poll_executor").submit(sender.getHecIOManager()::pollAcks);           
+            onDemandAckPollFuture = ThreadScheduler.getExecutorInstance("on_demand_ack-poll_executor", getConnection().getThreadPoolScope()).submit(sender.getHecIOManager()::pollAcks);           
        }
 
   }
@@ -135,7 +167,12 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
     if (started) {
       return;
     }
-    preflightCheck();
+    if (loadBalancer.getPreflightCache().isVerified(sender)) {
+        preflightFromCache();
+    } else {
+        preflightCheck();
+        setupPreflightTimeout();
+    }
     setupReaper();
     setupDeadChannelDetector();
     started = true;
@@ -154,12 +191,22 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
       return loadBalancer.getConnection().getSettings();
   }
 
+    //Ensures the health future completes even if no response to the preflight check ever arrives. Deliberately not
+    //cancelled on close, since a closed channel's health must still complete for anyone waiting on it.
+    private void setupPreflightTimeout() {
+        ThreadScheduler.getSchedulerInstance("preflight_timeout", getConnection().getThreadPoolScope(), this).schedule(() -> {
+            if (!health.getFuture().isDone()) {
+                preflightTimedOut();
+            }
+        }, PREFLIGHT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
     private void setupReaper() {
         //schedule the channel to be automatically quiesced at LIFESPAN, and closed and replaced when empty
         long decomMs = getConnetionSettings().getChannelDecomMS();
         if (decomMs > 0) {
             long decomTime = (long) (decomMs * (1+Math.random())); //[decomMs, 1+dcommMS]
-            this.reaperTaskFuture  = ThreadScheduler.getSchedulerInstance("channel_reaper").schedule(() -> {
+            this.reaperTaskFuture  = ThreadScheduler.getSchedulerInstance("channel_reaper", getConnection().getThreadPoolScope(), this).schedule(() -> {
                 LOG.info("decommissioning channel (channel_decom_ms={}): {}",
                         decomMs, HecChannel.this);
                 try {
@@ -182,6 +229,7 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
     
     //must increment only *after* we exit the blocking condition above
     int count = unackedCount.incrementAndGet();
+    setState(ChannelStateCounts.State.FULL, isFull());
     LOG.debug("channel=" + getChannelId() + " unack-count=" + count);
     if (!sender.getChannel().equals(this)) {
       String msg = "send channel mismatch: " + this.getChannelId() + " != " + sender.
@@ -189,6 +237,7 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
       throw new HecIllegalStateException(msg, HecIllegalStateException.Type.CHANNEL_MISMATCH);
     }
     events.setHecChannel(this);
+    channelMetrics.posted(events);
     sender.sendBatch(events);
     if (unackedCount.get() == maxUnackedEvents) {
       pollAcks();
@@ -202,16 +251,33 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
         LOG.warn("Discarding {} on CLOSED channel {}", e, this);
         return;
     }
+    circuitBreaker.record(e);
     boolean wasAvailable = isAvailable();
     switch (e.getType()) {
       case ACK_POLL_OK: {
-        ackReceived(e);
+        if (e instanceof EventBatchesAcknowledged) {
+          for (EventBatchResponse r : ((EventBatchesAcknowledged) e).getResponses()) {
+            ackReceived(r);
+          }
+        } else {
+          ackReceived(e);
+        }
+        health.trafficOK();
         break;
       }
       case EVENT_POST_OK: {
         checkForStickySessionViolation(e);
+        health.trafficOK();
+        busyCooldown.ok();
         break;
       }
+      case EVENT_POST_INDEXER_BUSY:
+        //the next health poll would make the channel available again, so keep it out of rotation for a while
+        busyCooldown.busy(e instanceof BusyResponse ? ((BusyResponse) e).getRetryAfterMS() : -1);
+        break;
+      case HEALTH_POLL_OK:
+        busyCooldown.ok();
+        break;
       //we don't want to update the health when we get 503/504/fail for preflight; We want to resend preflight
       case PREFLIGHT_BUSY:
       case PREFLIGHT_GATEWAY_TIMEOUT:
@@ -220,32 +286,52 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
         return; //don't update health since we did not actually get an 'answer' to our pre-flight check     
       case PREFLIGHT_OK:
           LOG.info("Preflight checks OK on {}", this);
+          loadBalancer.getPreflightCache().verified(sender);
           preflightCompleted = true;
+          setState(ChannelStateCounts.State.PREFLIGHTED, true);
           //Note: we also start polling health if/when we give up on prflight checks due to max retries of preflight failing
-          sender.getHecIOManager().startHealthPolling(); //when preflight is OK we can start polling health
+          loadBalancer.getHealthPoller().subscribe(this); //when preflight is OK we can start polling health
     }
     updateHealth(e, wasAvailable);
   }
 
+    /**
+     * Applies the outcome of a health poll that a sibling channel to the same destination sent. Unlike update, this
+     * does not record the outcome in the CircuitBreaker, since the sibling's own update already did.
+     * @param e
+     */
+    public void siblingHealthPolled(LifecycleEvent e) {
+        if (closed) {
+            return;
+        }
+        updateHealth(e, isAvailable());
+    }
+
     private void updateHealth(LifecycleEvent e, boolean wasAvailable) {
         //only health poll  or preflight ok will set health to true
         if(e.getType()==LifecycleEvent.Type.PREFLIGHT_OK || e.getType()==LifecycleEvent.Type.HEALTH_POLL_OK){
             this.health.setStatus(e, true);
         }
+        if(e.getType()==LifecycleEvent.Type.HEALTH_POLL_OK){
+            loadBalancer.getPreflightCache().verified(sender);
+        }
         //any other non-200 that we have not excplicitly handled above will set the health false
         if (e instanceof Response) {
             Response r = (Response) e;
             if(!r.isOK()){
                 this.health.setStatus(e, false);
+                loadBalancer.getPreflightCache().invalidate(sender);
             }
         }
         if(e instanceof Failure){
             this.health.setStatus(e, false);           
+            loadBalancer.getPreflightCache().invalidate(sender);
         }
         //when an event batch is NOT successfully delivered we must consider it "gone" from this channel
         if(EventBatchHelper.isEventBatchFailOrNotOK(e)){
             LOG.info("FAIL or NOT OK caused  DECREMENT {}", e);
             this.unackedCount.decrementAndGet();
+            setState(ChannelStateCounts.State.FULL, isFull());
         }
         
         if (!wasAvailable && isAvailable()) { //channel has become available where as previously NOT available
@@ -261,6 +347,7 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
     }
 
     private void resendPreflight(LifecycleEvent e, boolean wasAvailable) {
+        loadBalancer.getPreflightCache().invalidate(sender);
         if (++preflightCount <= getSettings().getMaxPreflightRetries() && !closed && !quiesced) {
             //preflight resends must be decoupled
             //Runnable r = () -> {
@@ -293,6 +380,7 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
     private void ackReceived(LifecycleEvent s) {
         int count = unackedCount.decrementAndGet();
         ackedCount.incrementAndGet();
+        setState(ChannelStateCounts.State.FULL, isFull());
         if (count < 0) {
             String msg = "unacked count is illegal negative value: " + count + " on channel " + getChannelId();
             throw new HecIllegalStateException(msg,
@@ -312,6 +400,7 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
       return;
     }
     this.health.decomissioned();
+    setState(ChannelStateCounts.State.DECOMMISSIONED, true);
     //must add channel *before* quiesce(). 'cause if channel empty, quiesce proceeds directly to close which will kill terminate
     //the reaperScheduler, which will interrupt this very thread which was spawned by the reaper scheduler, and then  we
     //never get to add the channel.
@@ -336,7 +425,7 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
     if(!quiesced){
         this.health.quiesced();
         LOG.debug("Scheduling watchdog to forceClose channel (if needed) in 3 minutes");
-        closeWatchDogTaskFuture = ThreadScheduler.getSchedulerInstance("channel_reaper").schedule(()->{
+        closeWatchDogTaskFuture = ThreadScheduler.getSchedulerInstance("channel_reaper", getConnection().getThreadPoolScope(), this).schedule(()->{
             if(this.closeFinishedLatched.getCount()!=0){
                 LOG.warn("Channel isn't closed. Watchdog will force close it now.");
                 HecChannel.this.interalForceClose();
@@ -346,6 +435,7 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
         }, channelQuiesceTimeout, TimeUnit.MILLISECONDS);
     }
     quiesced = true;
+    setState(ChannelStateCounts.State.QUIESCED, true);
 
     if (isEmpty()) {
       close();
@@ -361,6 +451,7 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
 
   void interalForceClose() {  
       this.closed = true;
+      setState(ChannelStateCounts.State.CLOSED, true);
       Runnable r = ()->{
         try {
             LOG.debug("finishing closing channel");
@@ -368,6 +459,11 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
             this.channelMetrics.removeObserver(this);
             cancelTasks(); //make sure all the Excutors are terminated before closing sender (else get ConnectionClosedException)
             this.sender.close();
+            loadBalancer.getConnection().getMonitor().unregisterChannel(mxBeanName);
+            int s = states.getAndSet(FINISHED);
+            if ((s & FINISHED) == 0) {
+                loadBalancer.getChannelStateCounts().finished(s);
+            }
             closeFinishedLatched.countDown();
         } catch (Exception e) {
             LOG.error(e.getMessage(), e);
@@ -426,7 +522,8 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
   private void cancelTasks() {
     LOG.trace("closing executors on  {}", this);
     
-    sender.getHecIOManager().close(); //shutdown ack and health polling
+    loadBalancer.getHealthPoller().unsubscribe(this);
+    sender.getHecIOManager().close(); //shutdown ack polling
     sender.abortPreflightAndHealthcheckRequests(); //if any ack and health poll are in flight, abort them
     
     if(null != reaperTaskFuture && !reaperTaskFuture.isCancelled()){
@@ -440,8 +537,8 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
         onDemandAckPollFuture.cancel(false);
     }
     
-    if(null != preflightCheckFuture&& ! preflightCheckFuture.isCancelled()){
-        preflightCheckFuture.cancel(true); //interrupt preflight
+    if(null != preflightCheckFuture&& ! preflightCheckFuture.isDone()){
+        preflightCheckFuture.cancel(false); //the in-flight preflight requests were aborted above
     }
     
         
@@ -504,13 +601,45 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
   }
 
   public boolean isAvailable() {
-    return !quiesced && !closed && health.isHealthy() && !isFull();
+    return !quiesced && !closed && health.isHealthy() && !isFull() && circuitBreaker.isClosed()
+            && !busyCooldown.isCooling();
   }
   
   public boolean isHealthy(){
       return health.isHealthy();
   }
 
+  public BusyCooldown getBusyCooldown() {
+      return busyCooldown;
+  }
+
+  public LatencyWindow getPostLatency() {
+      return postLatency;
+  }
+
+  public LatencyWindow getAckLatency() {
+      return ackLatency;
+  }
+
+  /**
+   * Records that the channel entered or left a state, in the LoadBalancer's ChannelStateCounts.
+   * @param s
+   * @param on
+   */
+  void setState(ChannelStateCounts.State s, boolean on) {
+      int bit = 1 << s.ordinal();
+      while (true) {
+          int cur = states.get();
+          if ((cur & FINISHED) != 0 || ((cur & bit) != 0) == on) {
+              return; //no change
+          }
+          if (states.compareAndSet(cur, cur ^ bit)) {
+              break;
+          }
+      }
+      loadBalancer.getChannelStateCounts().changed(s, on);
+  }
+
   @Override
   public String toString() {
     return memoizedToString; //for logging performance we memo-ize the toString
@@ -540,11 +669,20 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
         return sender;
     }
 
+    //a sibling channel to the same destination passed preflight recently, so this channel is healthy at once.
+    //Health polling will catch the destination going bad.
+    private void preflightFromCache() {
+        LOG.info("Preflight checks skipped on {} ({} verified within {} ms)", this, sender.getBaseUrl(),
+                getSettings().getPreflightCacheTtlMS());
+        preflightCompleted = true;
+        setState(ChannelStateCounts.State.PREFLIGHTED, true);
+        loadBalancer.getHealthPoller().subscribe(this);
+        updateHealth(new LifecycleEvent(LifecycleEvent.Type.PREFLIGHT_OK), false);
+    }
+
+    //does not block: each preflight request is sent from the callback of the previous response
     private void preflightCheck() {
-        preflightCheckFuture = ThreadScheduler.getExecutorInstance("preflight_executor")
-            .submit(()->{
-                this.sender.getHecIOManager().preflightCheck();
-            });
+        preflightCheckFuture = this.sender.getHecIOManager().preflightCheck();
     }
 
   private class StickySessionEnforcer {
@@ -569,6 +707,46 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
     }
   }
 
+  /**
+   * Replaces the channel at once, because the destination refused a connection. The open CircuitBreaker already
+   * keeps new events off it. Its events that were posted but not yet acknowledged are resent through other channels.
+   * Events whose post is still outstanding are left alone, since the failure of the post resends them.
+   */
+  void failover() {
+    if (closed) {
+      return;
+    }
+    LOG.warn("Failing over {}: destination refused a connection", this);
+    replaceAndResend(true);
+  }
+
+  //Only adding the replacement and handing over the in-flight batches hold the load balancer's monitor. Holding it
+  //keeps the load balancer from being closed in between, which would quiesce the replacement before the batches
+  //reach it. The batches are resent in parallel by LoadBalancer.redistribute, whose workers are submitted after the
+  //monitor is released, so a channel with many batches neither stalls dead channel detection nor blocks channels
+  //from being added and removed.
+  private void replaceAndResend(boolean onlyPosted) {
+    Runnable resend;
+    synchronized (loadBalancer) {
+      try{
+          loadBalancer.addChannelFromRandomlyChosenHost(); //add a replacement               
+      }catch(InterruptedException ex){
+          LOG.warn("Unable to replace dead channel: {}", ex);
+      }
+      List<EventBatchImpl> unacked = loadBalancer.getConnection().getTimeoutChecker().getUnackedEvents(this);
+      if (onlyPosted) {
+        unacked.removeIf(e -> null == e.getAckId()); //post still outstanding, its failure will resend it
+      }
+      LOG.trace("{} events need resending on dead channel {}", unacked.size(), this);
+      resend = loadBalancer.redistribute(this, unacked);
+    }
+    resend.run();
+    LOG.warn("Force closing dead channel {}", this);            
+    interalForceClose();
+    health.dead();
+    setState(ChannelStateCounts.State.DEAD, true);
+  }
+
   private class DeadChannelDetector implements Closeable {
 
     //private ThreadScheduler deadChannelChecker = new ThreadScheduler(
@@ -596,24 +774,7 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
           LOG.warn(msg);
           quiesce();
           getCallbacks().systemWarning(new HecChannelDeathException(msg));
-          //synchronize on the load balancer so we do not allow the load balancer to be
-          //closed before  resendInFlightEvents. If that
-          //could happen, then the channel we replace this one with
-          //can be removed before we resendInFlightEvents
-          synchronized (loadBalancer) {
-            try{
-                loadBalancer.addChannelFromRandomlyChosenHost(); //add a replacement               
-            }catch(InterruptedException ex){
-                LOG.warn("Unable to replace dead channel: {}", ex);
-            }
-            resendInFlightEvents(); 
-            //don't force close until after events resent. 
-            //If you do, you will interrupt this very thread when this DeadChannelDetector is shutdownNow()
-            //and the events will never send.
-            LOG.warn("Force closing dead channel {}", HecChannel.this);            
-            interalForceClose();
-            health.dead();
-          }
+          replaceAndResend(false);
           if(getConnection().isClosed()) {
             loadBalancer.close();
           }
@@ -622,7 +783,7 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
           lastCountOfUnacked = unackedCount.get();
         }
       };
-      task = ThreadScheduler.getSchedulerInstance( "ChannelDeathChecker").scheduleWithFixedDelay(r, 0, intervalMS, TimeUnit.MILLISECONDS);
+      task = ThreadScheduler.getSchedulerInstance("ChannelDeathChecker", getConnection().getThreadPoolScope(), HecChannel.this).scheduleWithFixedDelay(r, 0, intervalMS, TimeUnit.MILLISECONDS);
     }
 
     @Override
@@ -632,31 +793,6 @@ public class HecChannel implements Closeable, LifecycleEventObserver {
       }
     }
 
-    //take messages out of the jammed-up/dead channel and resend them to other channels
-    private void resendInFlightEvents() {
-        List<EventBatchImpl> unacked = loadBalancer.getConnection().getTimeoutChecker().getUnackedEvents(HecChannel.this);
-        LOG.trace("{} events need resending on dead channel {}", unacked.size(), HecChannel.this);       
-        AtomicInteger count = new AtomicInteger(0);
-        unacked.forEach((e) -> {
-                //we must force messages to be sent because the connection could have been gracefully closed
-                //already, in which case sendRoundRobbin will just ignore the sent messages
-                while (true) { 
-                  try {
-                      if(!loadBalancer.sendRoundRobin(e, true)){
-                          LOG.trace("LoadBalancer did not accept resend of {} (it was resent max_retries times?)", e);
-                      }else{
-                        LOG.trace("LB ACCEPTED events");//fixme remove
-                        count.incrementAndGet();
-                      }
-                      break;
-                  } catch (HecConnectionTimeoutException|HecNoValidChannelsException ex) {
-                     LOG.warn("Caught exception resending {}, exception was {}", ex.getMessage());
-                  }
-                }
-              });
-        LOG.info("Resent {} Events from dead channel {}", count,  HecChannel.this);
-    }
-
   }
 
 }
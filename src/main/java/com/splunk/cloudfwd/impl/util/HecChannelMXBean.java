@@ -0,0 +1,51 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.util;
+
+/**
+ * JMX view of a HecChannel. Registered as com.splunk.cloudfwd:type=HecChannel,connection=N,channel=ID when
+ * ENABLE_JMX is true, and unregistered when the channel has finished closing.
+ */
+public interface HecChannelMXBean {
+
+    public String getChannelId();
+
+    public String getUrl();
+
+    public int getUnackedCount();
+
+    public boolean isHealthy();
+
+    public boolean isAvailable();
+
+    public boolean isQuiesced();
+
+    public boolean isClosed();
+
+    /**
+     * @return type of the LifecycleEvent that last set the channel's health
+     */
+    public String getStatus();
+
+    public long getAgeMS();
+
+    /**
+     * Closes the channel gracefully and replaces it with a new one, like the channel decommissioning done every
+     * CHANNEL_DECOM_MS.
+     */
+    public void decommission();
+
+}
@@ -17,8 +17,10 @@ package com.splunk.cloudfwd.impl.util;
 
 import com.splunk.cloudfwd.HecHealth;
 import com.splunk.cloudfwd.LifecycleEvent;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import com.splunk.cloudfwd.error.HecServerErrorResponseException;
 import java.time.Duration;
@@ -32,7 +34,7 @@ import org.slf4j.Logger;
 public class HecHealthImpl implements HecHealth {
     private final long birth = System.currentTimeMillis();
     private String channelCreatorThreadName;
-    private CountDownLatch latch = new CountDownLatch(1); //wait for first setStatus to be called
+    private final CompletableFuture<HecHealth> firstStatus = new CompletableFuture<>(); //completed by first setStatus
     private Logger LOG;
     private boolean healthy;
     private LifecycleEvent status;
@@ -42,6 +44,7 @@ public class HecHealthImpl implements HecHealth {
     private long declaredDeadTime;
     private long quiesceTime;
     private long finishCloseTime;
+    private volatile long timeAtLastTrafficOK; //zero until a post or ack poll succeeds, and whenever unhealthy
 
     public HecHealthImpl(HecChannel c, LifecycleEvent status) {
         this.channelCreatorThreadName = Thread.currentThread().getName(); //record name of thread that created this channel
@@ -78,10 +81,32 @@ public class HecHealthImpl implements HecHealth {
     public void setStatus(LifecycleEvent status, boolean healthy) {
         this.status = status;
         this.healthy = healthy;
-        this.latch.countDown();
+        if (!healthy) {
+            this.timeAtLastTrafficOK = 0; //past traffic doesn't vouch for a channel that has since failed
+        }
+        channel.setState(ChannelStateCounts.State.HEALTHY, healthy);
+        channel.setState(ChannelStateCounts.State.MISCONFIGURED, isMisconfigured());
+        this.firstStatus.complete(this);
         LOG.trace("{} health={} due to {}", getChannel(), healthy, status);
     }
 
+    /**
+     * Records that an event post or ack poll on the channel just succeeded, which is as good as a health poll
+     * for a healthy channel.
+     */
+    public void trafficOK() {
+        if (healthy) {
+            this.timeAtLastTrafficOK = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @return time of the latest successful event post or ack poll while healthy, or zero if there was none
+     */
+    public long getTimeAtLastTrafficOK() {
+        return timeAtLastTrafficOK;
+    }
+
     @Override
     public String getUrl() {
         return channel.getSender().getBaseUrl();
@@ -144,12 +169,21 @@ public class HecHealthImpl implements HecHealth {
 
     public boolean await(long wait, TimeUnit unit){
         try {
-            return latch.await(wait, unit); //five minute timeout
-        } catch (InterruptedException ex) {
+            firstStatus.get(wait, unit); //five minute timeout
+            return true;
+        } catch (InterruptedException | ExecutionException | TimeoutException ex) {
            LOG.warn("Timed out waiting for HecHealth to become available.");
            return false;
         }        
     }
+    
+    /**
+     * @return a future that completes with this HecHealth once the channel's health has been set for the first time
+     * (by the preflight check, or by the preflight check timing out or failing)
+     */
+    public CompletableFuture<HecHealth> getFuture() {
+        return firstStatus;
+    }
 
     @Override
     public Duration getChannelAge() {
@@ -21,11 +21,14 @@ import java.net.URL;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
-import java.util.Random;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import com.splunk.cloudfwd.error.HecConnectionStateException;
 import org.slf4j.Logger;
@@ -34,6 +37,13 @@ import com.splunk.cloudfwd.impl.ConnectionImpl;
 import static com.splunk.cloudfwd.error.HecConnectionStateException.Type.CONFIGURATION_EXCEPTION;
 
 /**
+ * Resolves the configured URLs to InetSocketAddresses. The result of the last lookup is cached so that callers
+ * (channel creation and replacement) never block on DNS. Every DNS_CACHE_TTL_MS the URLs are re-resolved in the
+ * background, and each address that appeared or disappeared is published to Observers as a Change.
+ * <p>
+ * Observers (the LoadBalancer) call back into this class while holding their own monitor, so neither DNS lookups
+ * made by the refresher nor the publishing of Changes happen while holding this object's monitor, and stop() does
+ * not take it at all.
  *
  * @author ghendrey
  */
@@ -43,30 +53,77 @@ public class IndexDiscoverer extends Observable {
   //Object be used as the key. This is because URL implements equals based on comparing the set of
   //InetSocketAddresses resolved. This means that equality for URL changes based on DNS host resolution
   //and would be changing over time
-  //private Map<String, List<InetSocketAddress>> mappings;
+  private volatile Map<String, List<InetSocketAddress>> mappings; //null until first lookup
+  private volatile List<InetSocketAddress> cachedAddrs;
   private final PropertiesFileHelper propertiesFileHelper;// = new PropertiesFileHelper();
   private ConnectionImpl connection;
+  private volatile ScheduledFuture<?> refreshTask;
+  private volatile HostResolver hostResolver = InetAddress::getAllByName;
 
   public IndexDiscoverer(PropertiesFileHelper f, ConnectionImpl c) {
     this.LOG = c.getLogger(IndexDiscoverer.class.getName());
     this.connection = c;
     this.propertiesFileHelper = f;
   }
-  
 
-  public synchronized List<InetSocketAddress> getAddrs(){
-    // perform DNS lookup
-    Map<String, List<InetSocketAddress>> mappings = getInetAddressMap(propertiesFileHelper.getUrls());
-    List<InetSocketAddress> addrs = new ArrayList<>();
-    for (List<InetSocketAddress> sockAddrs : mappings.values()) {
-      addrs.addAll(sockAddrs);
+  /**
+   * Starts re-resolving the URLs in the background every DNS_CACHE_TTL_MS. Does nothing if the TTL is not positive.
+   */
+  public synchronized void start() {
+    long ttl = connection.getSettings().getDnsCacheTtlMS();
+    if (ttl <= 0 || null != refreshTask) {
+      return;
+    }
+    refreshTask = ThreadScheduler.getSchedulerInstance("dns_refresher", connection.getThreadPoolScope(), connection)
+            .scheduleWithFixedDelay(this::discover, ttl, ttl, TimeUnit.MILLISECONDS);
+  }
+
+  public void stop() {
+    ScheduledFuture<?> task = refreshTask;
+    if (null != task) {
+      task.cancel(false);
+      refreshTask = null;
+    }
+  }
+
+  /**
+   * Replaces the DNS lookup of host names, for instance to simulate addresses appearing and disappearing.
+   * @param r
+   */
+  public void setHostResolver(HostResolver r) {
+    this.hostResolver = r;
+  }
+
+  /**
+   * @return the addresses from the last lookup. Only does a DNS lookup if there has not been one yet.
+   */
+  public List<InetSocketAddress> getAddrs() {
+    if (null == cachedAddrs) {
+      refresh();
     }
-    return addrs;
+    return new ArrayList<>(cachedAddrs);
+  }
+
+  /**
+   * Does a DNS lookup of every URL now, replacing the cache without notifying Observers. Used when the URLs
+   * themselves have changed.
+   */
+  public synchronized void refresh() {
+    setMappings(getInetAddressMap(propertiesFileHelper.getUrls()));
   }
 
   public InetSocketAddress randomlyChooseAddr(){
     List<InetSocketAddress> addrs = getAddrs();
-    return addrs.get(new Random(System.currentTimeMillis()).nextInt(addrs.size()));
+    return addrs.get(ThreadLocalRandom.current().nextInt(addrs.size()));
+  }
+
+  private void setMappings(Map<String, List<InetSocketAddress>> m) {
+    List<InetSocketAddress> addrs = new ArrayList<>();
+    for (List<InetSocketAddress> sockAddrs : m.values()) {
+      addrs.addAll(sockAddrs);
+    }
+    this.mappings = m;
+    this.cachedAddrs = Collections.unmodifiableList(addrs);
   }
   
   /**
@@ -83,18 +140,7 @@ public class IndexDiscoverer extends Observable {
     ConcurrentSkipListMap<String, List<InetSocketAddress>> mappings = new ConcurrentSkipListMap<>();
     for (URL url : urls) {
       try {
-        String host = url.getHost();
-
-        List<InetAddress> addrs = new ArrayList<>();
-       addrs.addAll(Arrays.asList(InetAddress.getAllByName(host)));
-
-        for (InetAddress iaddr : addrs) {
-          InetSocketAddress sockAddr = new InetSocketAddress(iaddr, url.
-                  getPort());
-          mappings.computeIfAbsent(url.toString(), k -> {
-            return new ArrayList<>();
-          }).add(sockAddr);
-        }
+        mappings.put(url.toString(), resolve(url));
       } catch (UnknownHostException e) {
         String msg = "Unknown host. " + url;
         HecConnectionStateException ex = new HecConnectionStateException(
@@ -113,124 +159,135 @@ public class IndexDiscoverer extends Observable {
     }
     return mappings;
   }
-  
-/*
-  // avoids doing a DNS lookup if possible
-  public List<InetSocketAddress> getCachedAddrs() throws UnknownHostException {
-    if (mappings == null || mappings.isEmpty()) {
-      return getAddrs(true);
+
+  private List<InetSocketAddress> resolve(URL url) throws UnknownHostException {
+    List<InetSocketAddress> sockAddrs = new ArrayList<>();
+    for (InetAddress iaddr : Arrays.asList(hostResolver.getAllByName(url.getHost()))) {
+      sockAddrs.add(new InetSocketAddress(iaddr, url.getPort()));
     }
-    List<InetSocketAddress> addrs = new ArrayList<>();
-    for (List<InetSocketAddress> list : mappings.values()) {
-      addrs.addAll(list);
+    return sockAddrs;
+  }
+
+  /*
+  * called by the dns_refresher. A URL that fails to resolve keeps its previous addresses, so a transient
+  * DNS failure does not drain channels. The lookups are done, and the Changes published, without holding the
+  * monitor, which is only held to swap in the new mappings.
+  */
+  void discover(){
+    try {
+      Map<String, List<InetSocketAddress>> resolved = new ConcurrentSkipListMap<>();
+      List<URL> unresolved = new ArrayList<>();
+      for (URL url : propertiesFileHelper.getUrls()) {
+        try {
+          resolved.put(url.toString(), resolve(url));
+        } catch (UnknownHostException e) {
+          LOG.warn("Could not re-resolve {}, keeping previous addresses", url);
+          unresolved.add(url);
+        }
+      }
+      List<Change> changes;
+      synchronized (this) {
+        Map<String, List<InetSocketAddress>> prev = mappings; //read here, in case refresh replaced it meanwhile
+        if (null == prev) {
+          return;
+        }
+        Map<String, List<InetSocketAddress>> current = new ConcurrentSkipListMap<>(resolved);
+        for (URL url : unresolved) {
+          if (prev.containsKey(url.toString())) {
+            current.put(url.toString(), prev.get(url.toString()));
+          }
+        }
+        if (current.isEmpty()) {
+          return;
+        }
+        setMappings(current);
+        changes = update(current, prev);
+      }
+      if (!changes.isEmpty()) {
+        LOG.info("DNS changes: {}", changes);
+        publish(changes);
+      }
+    } catch (Exception e) {
+      LOG.error("DNS refresh failed: {}", e.getMessage(), e); //never let the exception cancel the refresh task
+    }
+  }
+
+  List<Change> update(Map<String, List<InetSocketAddress>> current,
+          Map<String, List<InetSocketAddress>> prev) {
+    List<InetSocketAddress> added = new ArrayList<>();
+    List<InetSocketAddress> removed = new ArrayList<>();
+    for (String url : current.keySet()) {
+      List<InetSocketAddress> prevSockAddrs = prev.getOrDefault(url, Collections.emptyList());
+      List<InetSocketAddress> a = new ArrayList<>(current.get(url)); //make a copy (.removeAll is mutating)
+      a.removeAll(prevSockAddrs);
+      added.addAll(a);
+      List<InetSocketAddress> r = new ArrayList<>(prevSockAddrs);
+      r.removeAll(current.get(url));
+      removed.addAll(r);
+    }
+    return asChanges(added, removed);
+  }
+
+  //additions are published first, so that draining a removed address never leaves the LoadBalancer empty
+  List<Change> asChanges(List<InetSocketAddress> added,
+          List<InetSocketAddress> removed) {
+    List<Change> changes = new ArrayList<>();
+    for (InetSocketAddress a : added) {
+      changes.add(new Change(Change.Diff.ADDED, a));
+    }
+    for (InetSocketAddress a : removed) {
+      changes.add(new Change(Change.Diff.REMOVED, a));
+    }
+    return changes;
+  }
+
+  //must not be called holding the monitor: Observers take their own
+  private void publish(List<Change> changes) {
+    for (Change change : changes) {
+      setChanged();
+      notifyObservers(change);
+    }
+  }
+
+  /**
+   * Looks up the addresses of a host name. InetAddress.getAllByName by default.
+   */
+  public interface HostResolver {
+
+    InetAddress[] getAllByName(String host) throws UnknownHostException;
+  }
+
+  public static class Change {
+
+    public static enum Diff {
+      ADDED, REMOVED
+    }
+    private final Diff change;
+    private final InetSocketAddress inetSocketAddress;
+
+    public Change(Diff change, InetSocketAddress inetSocketAddress) {
+      this.change = change;
+      this.inetSocketAddress = inetSocketAddress;
+    }
+
+    @Override
+    public String toString() {
+      return "NETWORK: Change{" + "change=" + change + ", inetSocketAddress=" + inetSocketAddress + '}';
+    }
+
+    /**
+     * @return the change
+     */
+    public Diff getChange() {
+      return change;
+    }
+
+    /**
+     * @return the inetAddress
+     */
+    public InetSocketAddress getInetAddress() {
+      return inetSocketAddress;
     }
-    return addrs;
   }
-*/
-  
-  
-//  /*
-//  * called by IndexerDiscoveryScheduler
-//  */
-//  synchronized void discover(){
-//    update(getInetAddressMap(propertiesFileHelper.getUrls(),
-//        this.forceUrlMapToOne), mappings);
-//  }
-
-//  List<Change> update(Map<String, List<InetSocketAddress>> current,
-//          Map<String, List<InetSocketAddress>> prev) {
-//    List<Change> changes = new ArrayList<>();
-//    for (String url : current.keySet()) {
-//      List<InetSocketAddress> prevSockAddrs = prev.get(url);
-//      changes.addAll(computeDiff(current.get(url), prevSockAddrs));
-//    }
-//    return changes;
-//  }
-
-//  List<Change> computeDiff(List<InetSocketAddress> current,
-//          List<InetSocketAddress> prev) {
-//    if (null == prev && null == current) {
-//      return Collections.EMPTY_LIST;
-//    }
-//    if (null == current && null != prev) {
-//      return asChanges(Collections.EMPTY_LIST, prev);
-//    }
-//    if (null == prev && null != current) {
-//      return asChanges(current, Collections.EMPTY_LIST);
-//    }
-//    List<Change> changes = new ArrayList<>();
-//    List<InetSocketAddress> added = new ArrayList<>(current); //make a copy (.removeAll is mutating)
-//    added.removeAll(prev);
-//    List<InetSocketAddress> removed = new ArrayList<>(prev);
-//    removed.removeAll(current);
-//    return asChanges(added, removed);
-//  }
-
-//  final Map<String, List<InetSocketAddress>> getInetAddressMap(
-//          List<URL> urls, boolean forceSingle) {
-//    Map<String, List<InetSocketAddress>> mappings;
-//      mappings = getInetAddressMap(urls, forceSingle);
-//    return mappings;
-//  }
-
-
-
-//  List<Change> asChanges(List<InetSocketAddress> added,
-//          List<InetSocketAddress> removed) {
-//    List<Change> changes = new ArrayList<>();
-//    for (InetSocketAddress a : added) {
-//      addChange(changes, new Change(Change.Diff.ADDED, a));
-//    }
-//    for (InetSocketAddress a : added) {
-//      addChange(changes, new Change(Change.Diff.REMOVED, a));
-//    }
-//    return changes;
-//  }
-//
-//  void addChange(List<Change> changes, Change change){
-//    changes.add(change);
-//    setChanged();
-//    notifyObservers(change);
-//  }
-//
-//  public static class Change {
-//
-//    public static enum Diff {
-//      ADDED, REMOVED
-//    }
-//    private Diff change;
-//    private InetSocketAddress inetSocketAddress;
-//
-//    public Change(Diff change, InetSocketAddress inetSocketAddress) {
-//      this.change = change;
-//      this.inetSocketAddress = inetSocketAddress;
-//    }
-//
-//    @Override
-//    public String toString() {
-//      return "NETWORK: Change{" + "change=" + change + ", inetSocketAddress=" + inetSocketAddress + '}';
-//    }
-//
-//    /**
-//     * @return the change
-//     */
-//    public Diff getChange() {
-//      return change;
-//    }
-//
-//    /**
-//     * @param change the change to set
-//     */
-//    public void setChange(Diff change) {
-//      this.change = change;
-//    }
-//
-//    /**
-//     * @return the inetAddress
-//     */
-//    public InetSocketAddress getInetAddress() {
-//      return inetSocketAddress;
-//    }
-//  }
 
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+
+/**
+ * Registers MXBeans with the platform MBeanServer under the com.splunk.cloudfwd domain. Failing to register or
+ * unregister is logged, never thrown, since monitoring must not break sending.
+ */
+final class Jmx {
+
+    static final String DOMAIN = "com.splunk.cloudfwd";
+    private static final AtomicInteger connectionCount = new AtomicInteger();
+
+    private Jmx() {
+    }
+
+    /**
+     * @return a number identifying a Connection in the names of its MXBeans
+     */
+    static int nextConnectionNumber() {
+        return connectionCount.incrementAndGet();
+    }
+
+    /**
+     * @param bean
+     * @param keys ObjectName key properties, such as type=Connection,connection=1
+     * @param log
+     * @return the ObjectName the bean was registered under, or null if it could not be registered
+     */
+    static ObjectName register(Object bean, String keys, Logger log) {
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":" + keys);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, name);
+            return name;
+        } catch (JMException e) {
+            log.warn("Could not register MXBean {}: {}", keys, e.getMessage());
+            return null;
+        }
+    }
+
+    static void unregister(ObjectName name, Logger log) {
+        if (null == name) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            log.debug("Could not unregister MXBean {}: {}", name, e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.util;
+
+import com.splunk.cloudfwd.LatencySnapshot;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear histogram of latencies, in the style of HdrHistogram. Each power of two is split into SUB_BUCKETS linear
+ * buckets, so a value is kept to within about 3% across the whole range of a long, in a fixed array of counts.
+ * Recording is an atomic increment, without locks. The histogram counts every sample: snapshot covers everything
+ * recorded, and intervalSnapshot what was recorded since the previous intervalSnapshot. A LatencyWindow views the
+ * most recent samples of a histogram, for outlier detection.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; //linear buckets per power of two
+    static final int NUM_BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private long[] intervalStart = new long[NUM_BUCKETS]; //counts at the previous intervalSnapshot
+    private long intervalStartSum;
+
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(index(v));
+        sum.add(v);
+    }
+
+    public LatencySnapshot snapshot() {
+        return toSnapshot(copyCounts(), sum.sum());
+    }
+
+    public synchronized LatencySnapshot intervalSnapshot() {
+        long[] now = copyCounts();
+        long nowSum = sum.sum();
+        long[] delta = new long[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            delta[i] = now[i] - intervalStart[i];
+        }
+        LatencySnapshot s = toSnapshot(delta, nowSum - intervalStartSum);
+        intervalStart = now;
+        intervalStartSum = nowSum;
+        return s;
+    }
+
+    static int index(long v) {
+        if (v < SUB_BUCKETS) {
+            return (int) v;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((v >> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * @param index
+     * @return the highest value counted in the bucket
+     */
+    static long highestValueIn(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long sub = (index - SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    long[] copyCounts() {
+        long[] c = new long[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            c[i] = counts.get(i);
+        }
+        return c;
+    }
+
+    private static LatencySnapshot toSnapshot(long[] c, long sum) {
+        long total = 0;
+        int highest = 0;
+        for (int i = 0; i < c.length; i++) {
+            total += c[i];
+            if (c[i] > 0) {
+                highest = i;
+            }
+        }
+        if (0 == total) {
+            return new LatencySnapshot(0, 0, 0, 0, 0, 0);
+        }
+        return new LatencySnapshot(total, sum / total, percentile(c, total, 50), percentile(c, total, 99),
+                percentile(c, total, 99.9), highestValueIn(highest));
+    }
+
+    static long percentile(long[] c, long total, double p) {
+        long rank = Math.max(1, (long) Math.ceil(p / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < c.length; i++) {
+            seen += c[i];
+            if (seen >= rank) {
+                return highestValueIn(i);
+            }
+        }
+        return highestValueIn(c.length - 1);
+    }
+
+}
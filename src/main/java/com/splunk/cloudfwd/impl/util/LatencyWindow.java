@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.util;
+
+/**
+ * The most recent samples of a channel's LatencyHistogram, so that percentiles reflect current behavior rather than
+ * the channel's whole lifetime. The window holds the counts recorded since a start mark. The start mark advances to
+ * a newer mark whenever size samples have been recorded since that newer mark was taken. After warming up, the window
+ * therefore covers between size and twice size of the most recent samples.
+ */
+public class LatencyWindow {
+
+    private final LatencyHistogram histogram; //in microseconds
+    private final int size;
+    private long[] start = new long[LatencyHistogram.NUM_BUCKETS]; //counts where the window begins
+    private long[] next = new long[LatencyHistogram.NUM_BUCKETS]; //counts where the window will begin next
+
+    public LatencyWindow(LatencyHistogram histogram, int size) {
+        this.histogram = histogram;
+        this.size = size;
+    }
+
+    public synchronized int size() {
+        return (int) total(window());
+    }
+
+    /**
+     * @param p percentile in (0,100]
+     * @return the p-th percentile of the samples in the window in milliseconds, or -1 if there are none
+     */
+    public synchronized long percentile(double p) {
+        long[] w = window();
+        long total = total(w);
+        if (0 == total) {
+            return -1;
+        }
+        return LatencyHistogram.percentile(w, total, p) / 1000;
+    }
+
+    private long[] window() {
+        long[] now = histogram.copyCounts();
+        if (total(delta(now, next)) >= size) {
+            start = next;
+            next = now;
+        }
+        return delta(now, start);
+    }
+
+    private static long[] delta(long[] to, long[] from) {
+        long[] d = new long[to.length];
+        for (int i = 0; i < to.length; i++) {
+            d[i] = to[i] - from[i];
+        }
+        return d;
+    }
+
+    private static long total(long[] c) {
+        long total = 0;
+        for (long n : c) {
+            total += n;
+        }
+        return total;
+    }
+
+}
@@ -25,11 +25,19 @@ import java.io.Closeable;
 import java.net.*;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 
@@ -41,16 +49,29 @@ import static com.splunk.cloudfwd.LifecycleEvent.Type.EVENT_POST_FAILED;
  *
  * @author ghendrey
  */
-public class LoadBalancer implements Closeable {
+public class LoadBalancer implements Closeable, Observer {
     private final Logger LOG;
     private int channelsPerDestination;
     private final Map<String, HecChannel> channels = new ConcurrentHashMap<>();
     private final Map<String, HecChannel> staleChannels = new ConcurrentHashMap<>();
+    private final ChannelStateCounts channelStateCounts;
+    private final AtomicInteger blockedSenders = new AtomicInteger(); //threads waiting in waitIfSpinCountTooHigh
+    private final AtomicInteger redistributing = new AtomicInteger(); //batches handed to redistribute, not yet resent
+    private final Map<String, InetSocketAddress> channelAddrs = new ConcurrentHashMap<>(); //channelId to address
+    private final Map<InetSocketAddress, String> addrUrls = new ConcurrentHashMap<>(); //address to its senders' base URL
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>(); //keyed by sender base URL
+    private final Map<String, BusyCooldown> busyCooldowns = new ConcurrentHashMap<>(); //keyed by sender base URL
     private final IndexDiscoverer discoverer;
+    private final PreflightCache preflightCache;
+    private final HealthPoller healthPoller;
+    private final OutlierDetector outlierDetector;
+    private final RetryBudget retryBudget;
+    private final CompletableFuture<Void> ready = new CompletableFuture<>(); //completes when first channel is available
+    private StartupBuffer startupBuffer; //null unless LAZY_STARTUP
     //private final IndexDiscoveryScheduler discoveryScheduler;
     private int robin; //incremented (mod channels) to perform round robin
     private final ConnectionImpl connection;
-    private boolean closed;
+    private volatile boolean closed;
     private volatile CountDownLatch latch;
 
     public LoadBalancer(ConnectionImpl c) {
@@ -59,11 +80,219 @@ public class LoadBalancer implements Closeable {
         this.channelsPerDestination = c.getSettings().
                 getChannelsPerDestination();
         this.discoverer = new IndexDiscoverer(c.getPropertiesFileHelper(), c);
+        this.preflightCache = new PreflightCache(c);
+        this.healthPoller = new HealthPoller(c); //before any channel is created
+        this.retryBudget = new RetryBudget(c);
+        this.channelStateCounts = new ChannelStateCounts(c); //before any channel is created
+        this.channelStateCounts.start();
         //this.discoveryScheduler = new IndexDiscoveryScheduler(c);
         createChannels(discoverer.getAddrs());
-        //this.discoverer.addObserver(this);
+        this.discoverer.addObserver(this);
+        this.discoverer.start();
+        this.outlierDetector = new OutlierDetector(this, c);
+        this.outlierDetector.start();
+        if (c.getSettings().isLazyStartup()) {
+            this.startupBuffer = new StartupBuffer(c);
+            ready.thenRunAsync(() -> startupBuffer.drain(this),
+                    ThreadScheduler.getExecutorInstance("startup_buffer_drainer", c.getThreadPoolScope()));
+            getHealthFuture().thenAccept(this::failStartupBufferIfNoChannelOK);
+        }
+    }
+    
+    //with lazy startup, the Connection constructor does not check channel health, so if every channel
+    //fails preflight, whatever was buffered must be failed here
+    private void failStartupBufferIfNoChannelOK(List<HecHealth> healths) {
+        if (healths.stream().anyMatch(HecHealth::isHealthy)) {
+            return;
+        }
+        RuntimeException ex = healths.stream().map(HecHealth::getStatusException).filter(e -> null != e).findFirst()
+                .orElse(new HecConnectionStateException("No HEC channels could be instatiated on Connection.",
+                        HecConnectionStateException.Type.NO_HEC_CHANNELS));
+        startupBuffer.fail(ex);
+    }
+
+
+    public IndexDiscoverer getIndexDiscoverer() {
+        return discoverer;
+    }
+
+    public PreflightCache getPreflightCache() {
+        return preflightCache;
+    }
+
+    public HealthPoller getHealthPoller() {
+        return healthPoller;
+    }
+
+    public ChannelStateCounts getChannelStateCounts() {
+        return channelStateCounts;
+    }
+
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    /**
+     * @param baseUrl the base URL of a channel's HttpSender
+     * @return the CircuitBreaker for the destination, created on first use
+     */
+    public CircuitBreaker getCircuitBreaker(String baseUrl) {
+        return circuitBreakers.computeIfAbsent(baseUrl, url -> new CircuitBreaker(url, this, connection));
+    }
+
+    /**
+     * @param baseUrl the base URL of a new channel's HttpSender
+     * @return the BusyCooldown shared by the destination's channels if BUSY_COOLDOWN_DESTINATION is set, otherwise
+     * a new one for the channel alone
+     */
+    BusyCooldown newBusyCooldown(String baseUrl) {
+        if (!connection.getSettings().isBusyCooldownPerDestination()) {
+            return new BusyCooldown(baseUrl, this, connection);
+        }
+        return busyCooldowns.computeIfAbsent(baseUrl, url -> new BusyCooldown(url, this, connection));
+    }
+
+    /**
+     * Fails over every open channel to the destination in one pass, after a connection to it was refused. Each is
+     * replaced, and its posted but unacknowledged events are resent through the remaining channels.
+     * @param baseUrl the base URL of the destination's HttpSenders
+     */
+    void failover(String baseUrl) {
+        if (getReplacementAddrs().isEmpty()) {
+            //replacements would go straight back to a refusing destination. The open breaker keeps the channels out
+            //of rotation instead, until a probe finds the destination up again
+            LOG.warn("Not failing over channels to {}: every destination's circuit breaker is open", baseUrl);
+            return;
+        }
+        List<HecChannel> failed = channels.values().stream()
+                .filter(c -> !c.isClosed() && c.getSender().getBaseUrl().equals(baseUrl))
+                .collect(Collectors.toList());
+        LOG.warn("Failing over {} channels to {}", failed.size(), baseUrl);
+        for (HecChannel c : failed) {
+            c.failover();
+        }
+    }
+
+    /**
+     * Resends the in-flight batches of a dead or failed over channel through the other channels. The batches are
+     * dealt out to one worker per available channel, so a channel holding many batches drains in parallel, and each
+     * worker waits in sendRoundRobin whenever every channel is full. The batches are registered at once, so callers
+     * that must keep close from running first call this while holding this LoadBalancer's monitor, since close waits
+     * for them. The workers are submitted by the returned Runnable, which the caller must run after releasing the
+     * monitor. A share the event_redistributor rejects is failed.
+     * @param from the channel the batches are taken from
+     * @param batches
+     * @return submits the workers; run it without holding this LoadBalancer's monitor
+     */
+    Runnable redistribute(HecChannel from, List<EventBatchImpl> batches) {
+        if (batches.isEmpty()) {
+            return () -> {};
+        }
+        long available = channels.values().stream().filter(c -> c != from && c.isAvailable()).count();
+        int workers = (int) Math.max(1, Math.min(batches.size(), available));
+        LOG.debug("Redistributing {} batches from {} across {} workers", batches.size(), from, workers);
+        List<List<EventBatchImpl>> shares = new ArrayList<>();
+        for (int w = 0; w < workers; w++) {
+            List<EventBatchImpl> share = new ArrayList<>();
+            for (int i = w; i < batches.size(); i += workers) {
+                share.add(batches.get(i));
+            }
+            shares.add(share);
+        }
+        redistributing.addAndGet(batches.size());
+        return () -> {
+            //rejecting rather than caller-runs: the caller may be the I/O reactor, which must not block resending
+            ExecutorService pool = ThreadScheduler.getRejectingExecutorInstance("event_redistributor",
+                    connection.getThreadPoolScope());
+            for (List<EventBatchImpl> share : shares) {
+                try {
+                    pool.execute(() -> resend(from, share));
+                } catch (RejectedExecutionException ex) {
+                    LOG.error("Failing {} batches from {}: event_redistributor rejected them ({})", share.size(),
+                            from, ex.getMessage());
+                    for (EventBatchImpl e : share) {
+                        try {
+                            connection.getCallbacks().failed(e, ex);
+                        } finally {
+                            redistributed();
+                        }
+                    }
+                }
+            }
+        };
+    }
+
+    private void resend(HecChannel from, List<EventBatchImpl> share) {
+        int count = 0;
+        for (EventBatchImpl e : share) {
+            try {
+                //force the resend, because the connection could have been gracefully closed already, in which case
+                //sendRoundRobin would just ignore the batch
+                if (sendRoundRobin(e, true)) {
+                    count++;
+                } else {
+                    LOG.trace("LoadBalancer did not accept resend of {} (it was resent max_retries times?)", e);
+                }
+            } catch (HecConnectionTimeoutException | HecNoValidChannelsException ex) {
+                //the batch is still tracked by the TimeoutChecker, so ACK_TIMEOUT_MS will report it
+                LOG.warn("Caught exception resending {} from {}, exception was {}", e, from, ex.getMessage());
+            } catch (RuntimeException ex) {
+                LOG.error("Failed to resend {} from {}: {}", e, from, ex.getMessage(), ex);
+            } finally {
+                redistributed();
+            }
+        }
+        LOG.info("Resent {} Events from dead channel {}", count, from);
+    }
+
+    //counts off one batch handed to redistribute, waking awaitRedistribution when none remain
+    private void redistributed() {
+        if (redistributing.decrementAndGet() == 0) {
+            synchronized (redistributing) {
+                redistributing.notifyAll();
+            }
+        }
+    }
+
+    //waits until the batches handed to redistribute are resent, or the deadline passes. False if interrupted
+    private boolean awaitRedistribution(long deadline) {
+        synchronized (redistributing) {
+            long remaining;
+            while (redistributing.get() > 0 && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    redistributing.wait(remaining);
+                } catch (InterruptedException ex) {
+                    LOG.warn("Interrupted waiting for {} batches to be redistributed", redistributing.get());
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
     }
 
+    //any channel to the destination that can still carry a request, used to probe an open CircuitBreaker
+    /**
+     * @return number of threads waiting for a channel to become available
+     */
+    public int getNumBlockedSenders() {
+        return blockedSenders.get();
+    }
+
+    /**
+     * Restarts ack polling on every channel, so that a new ACK_POLL_MS takes effect.
+     */
+    public void restartAckPolling() {
+        for (HecChannel c : getChannelsSnapshot()) {
+            c.getSender().getHecIOManager().restartAckPolling();
+        }
+    }
+
+    HecChannel getChannelTo(String baseUrl) {
+        return channels.values().stream()
+                .filter(c -> !c.isClosed() && !c.isQuiesced() && c.getSender().getBaseUrl().equals(baseUrl))
+                .findAny().orElse(null);
+    }
 
     /**
      * Gets the current HecHealth of each channel. This method does not initiate any HTTP traffic.  It just
@@ -76,6 +305,27 @@ public class LoadBalancer implements Closeable {
         return h;
     }
     
+    /**
+     * @return a future that completes when every current channel's health has been set at least once
+     */
+    public CompletableFuture<List<HecHealth>> getHealthFuture() {
+        List<CompletableFuture<HecHealth>> futures = channels.values().stream()
+                .map(HecChannel::getHealthFuture).collect(Collectors.toList());
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]))
+                .thenApply(v -> futures.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+    }
+    
+    /**
+     * @return true if some channel could take an EventBatch right now
+     */
+    public boolean hasAvailableChannel() {
+        return channels.values().stream().anyMatch(HecChannel::isAvailable);
+    }
+
+    List<HecChannel> getChannelsSnapshot() {
+        return new ArrayList<>(channels.values());
+    }
+
     public List<HecHealth> getHealthNonBlocking() {
         final List<HecHealth> h = new ArrayList<>();
         channels.values().forEach(c->h.add(c.getHealthNonblocking()));
@@ -89,22 +339,109 @@ public class LoadBalancer implements Closeable {
                     "Connection FutureCallback has not been set.",
                     HecConnectionStateException.Type.CONNECTION_CALLBACK_NOT_SET);
         }
+        retryBudget.recordSend();
+        if (null != startupBuffer && startupBuffer.offer(events)) {
+            return; //will be sent when the first channel is available
+        }
         sendRoundRobin(events);
     }
+    
+    //Sends an EventBatch out of the StartupBuffer. Like a resend, it was registered with the CheckpointManager already.
+    void sendBuffered(EventBatchImpl events) throws HecNoValidChannelsException {
+        events.incrementNumTries();
+        spinSend(true, events);
+    }
+
+    /**
+     * Called by the IndexDiscoverer when re-resolving the URLs finds an address that appeared or disappeared.
+     * @param o
+     * @param arg an IndexDiscoverer.Change
+     */
+    @Override
+    public synchronized void update(Observable o, Object arg) {
+        IndexDiscoverer.Change change = (IndexDiscoverer.Change) arg;
+        if (closed) {
+            return;
+        }
+        InetSocketAddress addr = change.getInetAddress();
+        if (change.getChange() == IndexDiscoverer.Change.Diff.ADDED) {
+            LOG.info("Adding channels for new address {}", addr);
+            createChannels(Collections.singletonList(addr));
+        } else {
+            LOG.info("Draining channels for removed address {}", addr);
+            channelAddrs.forEach((id, a) -> {
+                HecChannel c = channels.get(id);
+                if (a.equals(addr) && null != c) {
+                    staleChannels.put(id, c);
+                    channels.remove(id);
+                    c.close(); //quiesces until unacked events are acknowledged
+                }
+            });
+        }
+    }
 
     @Override
-    public synchronized void close() {
+    public void close() {
+        //the replacements of dead channels must not be quiesced before the batches they will take are resent. Wait
+        //without holding the monitor, and close under it once no channel has handed over batches in the meantime
+        //the drain sends through this LoadBalancer, so wait for it before taking the monitor too
+        if (null != startupBuffer && !startupBuffer.awaitDrained(connection.getBlockingTimeoutMS())) {
+            startupBuffer.fail(new HecConnectionStateException("Connection closed before any channel became available.",
+                    HecConnectionStateException.Type.CONNECTION_CLOSED));
+        }
+        long deadline = System.currentTimeMillis() + connection.getBlockingTimeoutMS();
+        while (true) {
+            boolean interrupted = !awaitRedistribution(deadline);
+            synchronized (this) {
+                if (interrupted || redistributing.get() == 0 || System.currentTimeMillis() >= deadline) {
+                    closeChannels();
+                    return;
+                }
+            }
+        }
+    }
+
+    private synchronized void closeChannels() {
+        discoverer.stop();
+        outlierDetector.stop();
+        circuitBreakers.values().forEach(CircuitBreaker::cancelProbes);
         for (HecChannel c : this.channels.values()) {
             c.close();
         }
+        channelStateCounts.stop(); //the health of draining channels is still polled, until each closes
         this.closed = true;
+        closeHealthPollerIfDrained();
+    }
+
+    //once a closed LoadBalancer has no channels left, stop health polling rather than rely on each channel having
+    //unsubscribed, and let the Connection release its scoped thread pools
+    private void closeHealthPollerIfDrained() {
+        if (isDrained()) {
+            healthPoller.close();
+            connection.releaseThreadPoolsIfDrained();
+        }
+    }
+
+    /**
+     * @return true once the LoadBalancer is closed and every channel has finished closing
+     */
+    public boolean isDrained() {
+        return closed && channels.isEmpty() && staleChannels.isEmpty();
     }
 
     public void closeNow() {
-        //this.discoveryScheduler.stop();
+        discoverer.stop();
+        outlierDetector.stop();
+        circuitBreakers.values().forEach(CircuitBreaker::cancelProbes);
+        if (null != startupBuffer) {
+            startupBuffer.fail(new HecConnectionStateException("Connection closed before any channel became available.",
+                    HecConnectionStateException.Type.CONNECTION_CLOSED));
+        }
         Collection<EventBatchImpl> unacked = getConnection().getTimeoutChecker().getUnackedEvents();
         unacked.forEach((e)->getConnection().getCallbacks().failed(e, new HecConnectionStateException(
             "Connection closed with unacknowleged events remaining.", HecConnectionStateException.Type.CONNECTION_CLOSED)));
+        channelStateCounts.stop();
+        healthPoller.close();
         for (HecChannel c : this.channels.values()) {
             c.forceClose();
         }
@@ -129,12 +466,23 @@ public class LoadBalancer implements Closeable {
         }
     }
 
+    //a replacement goes to a destination whose circuit breaker is closed, unless there is none
     void addChannelFromRandomlyChosenHost() throws InterruptedException {
-        InetSocketAddress addr = discoverer.randomlyChooseAddr();
+        List<InetSocketAddress> addrs = getReplacementAddrs();
+        InetSocketAddress addr = addrs.isEmpty() ? discoverer.randomlyChooseAddr()
+                : addrs.get(ThreadLocalRandom.current().nextInt(addrs.size()));
         LOG.debug("Adding channel for socket address  {}", addr);
         addChannel(addr, true); //this will force the channel to be added, even if we are ac MAX_TOTAL_CHANNELS
     }
 
+    //addresses whose destination's circuit breaker is closed. An address without channels yet is assumed to be fine
+    private List<InetSocketAddress> getReplacementAddrs() {
+        return discoverer.getAddrs().stream().filter(a -> {
+            String url = addrUrls.get(a);
+            return null == url || getCircuitBreaker(url).isClosed();
+        }).collect(Collectors.toList());
+    }
+
     private boolean addChannel(InetSocketAddress s, boolean force) throws InterruptedException {
         //sometimes we need to force add a channel. Specifically, when we are replacing a reaped channel
         //we must add a new one, before we cancelEventTrackers the old one. If we did not have the force
@@ -155,6 +503,8 @@ public class LoadBalancer implements Closeable {
         HecChannel channel = new HecChannel(this, sender, this.connection);
         channel.getChannelMetrics().addObserver(this.connection.getCheckpointManager());
         LOG.debug("Adding channel {}", channel);
+        channelAddrs.put(channel.getChannelId(), s);
+        addrUrls.put(s, sender.getBaseUrl());
         channels.put(channel.getChannelId(), channel);
         return true;
     }
@@ -162,9 +512,11 @@ public class LoadBalancer implements Closeable {
     //also must not be synchronized
     void removeChannel(String channelId, boolean force) {
         HecChannel c = this.channels.remove(channelId);
+        channelAddrs.remove(channelId);
         if (c == null) {
             c = this.staleChannels.remove(channelId);
         }
+        closeHealthPollerIfDrained();
         /*
     if (c == null) {
       LOG.severe("attempt to cancelEventTrackers unknown channel: " + channelId);
@@ -295,6 +647,7 @@ public class LoadBalancer implements Closeable {
     private void waitIfSpinCountTooHigh(int spinCount,
             List<HecChannel> channelsSnapshot, EventBatchImpl events) throws HecNoValidChannelsException {
         if (spinCount % channelsSnapshot.size() == 0) {
+            blockedSenders.incrementAndGet();
             try {
                 latch = new CountDownLatch(1);
                 if (!latch.await(1, TimeUnit.SECONDS)) {
@@ -312,6 +665,8 @@ public class LoadBalancer implements Closeable {
                 LOG.error(
                         "LoadBalancer latch caught InterruptedException and resumed. Interruption message was: " + e.
                         getMessage());
+            } finally {
+                blockedSenders.decrementAndGet();
             }
         }
     }
@@ -378,6 +733,7 @@ public class LoadBalancer implements Closeable {
     }
 
     void wakeUp() {
+        ready.complete(null); //a channel is available, so a lazily started Connection can send what it buffered
         //we need to take hold a reference to latch in tmp, which won't get nullled between the if block
         //and calling latch.countdown
         CountDownLatch tmp = latch;
@@ -388,6 +744,7 @@ public class LoadBalancer implements Closeable {
 
     public synchronized void refreshChannels()  {
         // do DNS lookup BEFORE closing channels, in case we throw an exception due to a bad URL
+        discoverer.refresh();
         List<InetSocketAddress> addrs = discoverer.getAddrs();
         for (HecChannel c : this.channels.values()) {
             c.closeAndFinish();
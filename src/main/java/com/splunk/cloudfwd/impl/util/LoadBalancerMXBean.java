@@ -0,0 +1,45 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.util;
+
+/**
+ * JMX view of the channels of a LoadBalancer, counted by state from creation until they finish closing. A channel
+ * may be counted in several states.
+ * Registered as com.splunk.cloudfwd:type=LoadBalancer,connection=N when ENABLE_JMX is true.
+ */
+public interface LoadBalancerMXBean {
+
+    public int getChannels();
+
+    public int getPreflighted();
+
+    public int getAvailable();
+
+    public int getHealthy();
+
+    public int getFull();
+
+    public int getQuiesced();
+
+    public int getDecommissioned();
+
+    public int getDead();
+
+    public int getClosed();
+
+    public int getMisconfigured();
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.util;
+
+import com.splunk.cloudfwd.MetricsSnapshot;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.impl.http.ChannelMetrics;
+import com.splunk.cloudfwd.impl.http.Counters;
+import com.splunk.cloudfwd.impl.http.Latencies;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Counters and latency histograms of a Connection, rolled up per destination and for the Connection as a whole. Each
+ * HecChannel's ChannelMetrics gets its own Counters and Latencies, whose parents are those of the channel's
+ * destination.
+ */
+public class MetricsRegistry {
+
+    private final ConnectionImpl connection;
+    private final Counters connectionCounters = new Counters(null);
+    private final Latencies connectionLatencies = new Latencies(null);
+    private final Map<String, Destination> destinations = new ConcurrentSkipListMap<>(); //key is base URL
+
+    public MetricsRegistry(ConnectionImpl c) {
+        this.connection = c;
+    }
+
+    public Counters getConnectionCounters() {
+        return connectionCounters;
+    }
+
+    /**
+     * @param baseUrl destination of the channel
+     * @return new Counters for a channel, rolling up into those of its destination
+     */
+    public Counters newChannelCounters(String baseUrl) {
+        return new Counters(getDestination(baseUrl).counters);
+    }
+
+    /**
+     * @param baseUrl destination of the channel
+     * @return new Latencies for a channel, rolling up into those of its destination
+     */
+    public Latencies newChannelLatencies(String baseUrl) {
+        return new Latencies(getDestination(baseUrl).latencies);
+    }
+
+    private Destination getDestination(String baseUrl) {
+        return destinations.computeIfAbsent(baseUrl, url -> new Destination());
+    }
+
+    /**
+     * @param interval if true, latencies cover only what was recorded since the previous interval snapshot
+     * @return
+     */
+    public MetricsSnapshot snapshot(boolean interval) {
+        List<HecChannel> channels = connection.getLoadBalancer().getChannelsSnapshot();
+        List<MetricsSnapshot> dests = new ArrayList<>();
+        int totalUnacked = 0;
+        for (Map.Entry<String, Destination> d : destinations.entrySet()) {
+            List<MetricsSnapshot> children = new ArrayList<>();
+            int unacked = 0;
+            for (HecChannel c : channels) {
+                if (d.getKey().equals(c.getSender().getBaseUrl())) {
+                    int u = c.getUnackedCount();
+                    unacked += u;
+                    ChannelMetrics m = c.getChannelMetrics();
+                    children.add(new MetricsSnapshot(c.toString(), m.getCounters().sum(),
+                            m.getLatencies().snapshot(interval), u, new ArrayList<>()));
+                }
+            }
+            totalUnacked += unacked;
+            dests.add(new MetricsSnapshot(d.getKey(), d.getValue().counters.sum(),
+                    d.getValue().latencies.snapshot(interval), unacked, children));
+        }
+        return new MetricsSnapshot("connection", connectionCounters.sum(), connectionLatencies.snapshot(interval),
+                totalUnacked, dests);
+    }
+
+    /**
+     * Counters and Latencies of one destination, created together so a snapshot never sees one without the other.
+     */
+    private class Destination {
+
+        private final Counters counters = new Counters(connectionCounters);
+        private final Latencies latencies = new Latencies(connectionLatencies);
+    }
+
+}
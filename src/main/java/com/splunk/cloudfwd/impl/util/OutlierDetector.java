@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.util;
+
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.slf4j.Logger;
+
+/**
+ * Every OUTLIER_CHECK_INTERVAL_MS, compares the p95 post and ack latency of each channel to the median p95 of all
+ * channels. A channel slower than OUTLIER_LATENCY_MULTIPLE times the median, and than OUTLIER_MIN_LATENCY_MS, is
+ * closed and replaced, just as the reaper would. Unlike the DeadChannelDetector this catches channels that are slow
+ * but not frozen. At most one channel is ejected per check, and a replacement channel is not judged until it has
+ * MIN_SAMPLES of its own.
+ */
+public class OutlierDetector {
+
+    static final int MIN_SAMPLES = 8;
+    private static final int MIN_CHANNELS = 3; //the median of fewer channels says little about the rest
+    private final Logger LOG;
+    private final LoadBalancer loadBalancer;
+    private final ConnectionImpl connection;
+    private ScheduledFuture<?> task;
+
+    OutlierDetector(LoadBalancer lb, ConnectionImpl c) {
+        this.LOG = c.getLogger(OutlierDetector.class.getName());
+        this.loadBalancer = lb;
+        this.connection = c;
+    }
+
+    /**
+     * Starts checking every OUTLIER_CHECK_INTERVAL_MS. Does nothing if OUTLIER_LATENCY_MULTIPLE is not positive.
+     */
+    public synchronized void start() {
+        if (connection.getSettings().getOutlierLatencyMultiple() <= 0 || null != task) {
+            return;
+        }
+        long interval = connection.getSettings().getOutlierCheckIntervalMS();
+        task = ThreadScheduler.getSchedulerInstance("outlier_detector", connection.getThreadPoolScope(), connection)
+                .scheduleWithFixedDelay(this::check, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (null != task) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    private void check() {
+        try {
+            List<HecChannel> candidates = new ArrayList<>();
+            for (HecChannel c : loadBalancer.getChannelsSnapshot()) {
+                if (!c.isQuiesced() && !c.isClosed()) {
+                    candidates.add(c);
+                }
+            }
+            HecChannel outlier = findOutlier(candidates, HecChannel::getAckLatency, "ack");
+            if (null == outlier) {
+                outlier = findOutlier(candidates, HecChannel::getPostLatency, "post");
+            }
+            if (null != outlier) {
+                outlier.closeAndReplace();
+            }
+        } catch (Exception e) {
+            LOG.error("Outlier check failed: {}", e.getMessage(), e); //never let the exception cancel the task
+        }
+    }
+
+    private HecChannel findOutlier(List<HecChannel> candidates, Function<HecChannel, LatencyWindow> latency,
+            String kind) {
+        Map<HecChannel, Long> p95s = new HashMap<>();
+        for (HecChannel c : candidates) {
+            LatencyWindow w = latency.apply(c);
+            if (w.size() >= MIN_SAMPLES) {
+                p95s.put(c, w.percentile(95));
+            }
+        }
+        if (p95s.size() < MIN_CHANNELS) {
+            return null;
+        }
+        List<Long> sorted = new ArrayList<>(p95s.values());
+        Collections.sort(sorted);
+        long median = sorted.get(sorted.size() / 2);
+        Map.Entry<HecChannel, Long> worst = Collections.max(p95s.entrySet(), Map.Entry.comparingByValue());
+        double multiple = connection.getSettings().getOutlierLatencyMultiple();
+        //never eject a channel that is fast in absolute terms
+        if (worst.getValue() >= connection.getSettings().getOutlierMinLatencyMS()
+                && worst.getValue() > multiple * median) {
+            LOG.warn("Ejecting outlier channel {}: p95 {} latency {} ms exceeds {} x median {} ms", worst.getKey(),
+                    kind, worst.getValue(), multiple, median);
+            return worst.getKey();
+        }
+        return null;
+    }
+
+}
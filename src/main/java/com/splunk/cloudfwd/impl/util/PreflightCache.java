@@ -0,0 +1,63 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.util;
+
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.impl.http.HttpSender;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers, per destination and token, when a channel last passed preflight checks or a health poll. A new channel
+ * to a destination verified within PREFLIGHT_CACHE_TTL_MS can skip preflight and take traffic at once. Any response
+ * that makes a channel unhealthy invalidates its destination.
+ */
+public class PreflightCache {
+
+    private final Map<String, Long> verifiedAt = new ConcurrentHashMap<>();
+    private final ConnectionImpl connection;
+
+    public PreflightCache(ConnectionImpl c) {
+        this.connection = c;
+    }
+
+    /**
+     * @param sender
+     * @return true if the sender's destination passed preflight or a health poll within the TTL
+     */
+    public boolean isVerified(HttpSender sender) {
+        long ttl = connection.getSettings().getPreflightCacheTtlMS();
+        if (ttl <= 0) {
+            return false;
+        }
+        Long t = verifiedAt.get(key(sender));
+        return null != t && System.currentTimeMillis() - t < ttl;
+    }
+
+    public void verified(HttpSender sender) {
+        verifiedAt.put(key(sender), System.currentTimeMillis());
+    }
+
+    public void invalidate(HttpSender sender) {
+        verifiedAt.remove(key(sender));
+    }
+
+    private String key(HttpSender sender) {
+        //the token is part of the key so that changing the token forces preflight on new channels
+        return sender.getBaseUrl() + " " + connection.getSettings().getToken();
+    }
+
+}
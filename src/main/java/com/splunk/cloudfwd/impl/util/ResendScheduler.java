@@ -0,0 +1,80 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.util;
+
+import com.splunk.cloudfwd.ConnectionSettings;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.impl.EventBatchImpl;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+
+/**
+ * Delays resends of EventBatches that got a busy (503) or gateway timeout (504) response, so that a busy indexer
+ * tier is not hit by a storm of immediate retries. The delay grows exponentially with the batch's number of tries,
+ * with full jitter, up to RETRY_BACKOFF_MAX_MS. A Retry-After header from the server replaces the computed delay.
+ * Delays are driven by a single timer; the resend itself runs on the event_resender executor since it may block in
+ * the LoadBalancer. MAX_RETRIES is still enforced by the LoadBalancer when the resend runs.
+ */
+public class ResendScheduler {
+
+    private final Logger LOG;
+    private final ConnectionImpl connection;
+
+    public ResendScheduler(ConnectionImpl c) {
+        this.LOG = c.getLogger(ResendScheduler.class.getName());
+        this.connection = c;
+    }
+
+    /**
+     * @param events the batch to resend. Its number of tries determines the backoff.
+     * @param retryAfterMS delay requested by the server's Retry-After header, or negative if there was none
+     * @param resend sends the batch
+     */
+    public void schedule(EventBatchImpl events, long retryAfterMS, Runnable resend) {
+        ExecutorService executor = ThreadScheduler.getExecutorInstance("event_resender", connection.getThreadPoolScope());
+        long delay = getDelayMS(events.getNumTries(), retryAfterMS);
+        if (delay <= 0) {
+            executor.execute(resend);
+            return;
+        }
+        LOG.debug("resending {} in {} ms", events, delay);
+        ThreadScheduler.getSchedulerInstance("resend_timer", connection.getThreadPoolScope(), connection)
+                .schedule(() -> executor.execute(resend), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param numTries how many times the batch has been sent
+     * @param retryAfterMS delay requested by the server, or negative if none
+     * @return how long to wait before the next try
+     */
+    public long getDelayMS(int numTries, long retryAfterMS) {
+        ConnectionSettings settings = connection.getSettings();
+        long max = settings.getRetryBackoffMaxMS();
+        if (retryAfterMS >= 0) {
+            return Math.min(retryAfterMS, max);
+        }
+        long base = settings.getRetryBackoffBaseMS();
+        if (base <= 0 || max <= 0) {
+            return 0;
+        }
+        int doublings = Math.min(Math.max(numTries - 1, 0), 30); //cap the shift so it cannot overflow
+        long ceiling = Math.min(max, base << doublings);
+        return ThreadLocalRandom.current().nextLong(ceiling + 1); //full jitter: uniform in [0, ceiling]
+    }
+
+}
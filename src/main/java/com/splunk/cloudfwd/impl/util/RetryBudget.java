@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.util;
+
+import com.splunk.cloudfwd.ConnectionSettings;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+
+/**
+ * Limits resends across a whole Connection, so that during a partial outage retries cannot multiply the load on a
+ * recovering cluster. Over a sliding window of WINDOW_SECONDS, resends may not exceed RETRY_BUDGET_RATIO times the
+ * number of first sends, plus RETRY_BUDGET_MIN_PER_SEC per second so that a quiet Connection can still retry. The
+ * window is a ring of one-second buckets.
+ */
+public class RetryBudget {
+
+    static final int WINDOW_SECONDS = 10;
+    private final ConnectionSettings settings;
+    private final long[] sends = new long[WINDOW_SECONDS];
+    private final long[] retries = new long[WINDOW_SECONDS];
+    private long currentSecond; //the second the bucket at currentSecond % WINDOW_SECONDS belongs to
+
+    public RetryBudget(ConnectionImpl c) {
+        this.settings = c.getSettings();
+    }
+
+    public synchronized void recordSend() {
+        sends[advance()]++;
+    }
+
+    /**
+     * Takes one retry from the budget if there is one left.
+     * @return false if the budget is exhausted and the batch must not be resent
+     */
+    public synchronized boolean tryAcquire() {
+        double ratio = settings.getRetryBudgetRatio();
+        if (ratio < 0) {
+            return true; //disabled
+        }
+        int idx = advance();
+        long totalSends = 0;
+        long totalRetries = 0;
+        for (int i = 0; i < WINDOW_SECONDS; i++) {
+            totalSends += sends[i];
+            totalRetries += retries[i];
+        }
+        double budget = ratio * totalSends + settings.getRetryBudgetMinPerSec() * WINDOW_SECONDS;
+        if (totalRetries >= budget) {
+            return false;
+        }
+        retries[idx]++;
+        return true;
+    }
+
+    //zeroes the buckets of seconds that have passed since the last call, and returns the current bucket
+    private int advance() {
+        long now = System.currentTimeMillis() / 1000;
+        long elapsed = Math.min(now - currentSecond, WINDOW_SECONDS);
+        for (long s = 1; s <= elapsed; s++) {
+            int i = (int) ((currentSecond + s) % WINDOW_SECONDS);
+            sends[i] = 0;
+            retries[i] = 0;
+        }
+        if (elapsed > 0) {
+            currentSecond = now;
+        }
+        return (int) (now % WINDOW_SECONDS);
+    }
+
+}
@@ -0,0 +1,565 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.splunk.cloudfwd.Event;
+import com.splunk.cloudfwd.EventBatch;
+import com.splunk.cloudfwd.EventWithMetadata;
+import com.splunk.cloudfwd.RawEvent;
+import com.splunk.cloudfwd.UnvalidatedByteBufferEvent;
+import com.splunk.cloudfwd.UnvalidatedBytesEvent;
+import com.splunk.cloudfwd.error.HecConnectionStateException;
+import com.splunk.cloudfwd.error.HecConnectionTimeoutException;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.impl.EventBatchImpl;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+
+/**
+ * Write-ahead spill queue for EventBatches that cannot be sent at once because no channel is available or too many
+ * bytes are in flight. Spilled EventBatches are appended to memory-mapped segment files in SPILL_DIR, so they no
+ * longer occupy the heap, and a single drainer thread sends them through the LoadBalancer in the order they were
+ * spilled. While anything is spilled, newly sent EventBatches are spilled behind it to preserve ordering.
+ * <p>
+ * Each record is an int length, a state byte (PENDING or DONE), and the serialized Events. Each Event is written
+ * with its class (RawEvent, EventWithMetadata, UnvalidatedBytesEvent or UnvalidatedByteBufferEvent) and its id (see
+ * EventIds), and is read back as the same class with an equal id. The callbacks of a spilled EventBatch therefore
+ * get an equal EventBatch, but not the instance that was sent. The length is written last, so a record torn by a
+ * crash is not seen on recovery. A record is marked DONE when its EventBatch is acknowledged or failed, and a
+ * segment is deleted and unmapped once all of its records are DONE. When the queue is created, the PENDING records
+ * of any segments left in SPILL_DIR (for instance by a crash or closeNow) are sent again before anything new.
+ * Delivery of replayed records is at least once. Because the segments are memory-mapped, records survive the
+ * process dying but not the machine losing power before the OS writes the pages back; segments are forced to disk
+ * when they fill up and when the queue is closed.
+ * <p>
+ * The drainer sends each record with the blocking semantics of Connection.sendBatch. A record that still cannot be
+ * sent after SPILL_MAX_RETRIES further attempts is failed with the HecConnectionTimeoutException.
+ */
+public class SpillQueue {
+
+    private static final byte PENDING = 0;
+    private static final byte DONE = 1;
+    private static final int HEADER_BYTES = 5; //int length + state byte
+    private static final String PREFIX = "spill-";
+    private static final String SUFFIX = ".seg";
+    private static final byte RAW_JSON = 1;
+    private static final byte RAW_TEXT = 2;
+    private static final byte WITH_METADATA = 3;
+    private static final byte UNVALIDATED_BYTES = 4;
+    private static final byte UNVALIDATED_BYTE_BUFFER = 5;
+    private static final ObjectMapper jsonMapper = new ObjectMapper();
+    private final Logger LOG;
+    private final ConnectionImpl connection;
+    private final File dir; //null if disabled
+    private final Deque<Record> pending = new ArrayDeque<>(); //spilled, not yet handed to the LoadBalancer
+    private final Map<Comparable, Record> inFlight = new ConcurrentHashMap<>(); //handed to the LoadBalancer, keyed by EventBatch id
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicLong numSpilled = new AtomicLong();
+    private final AtomicLong numReplayed = new AtomicLong();
+    private final List<Segment> segments = new ArrayList<>(); //mapped segments, not yet retired
+    private Segment current; //segment being appended to
+    private long nextSegmentSeq;
+    private volatile boolean closed;
+
+    public SpillQueue(ConnectionImpl c) {
+        this.LOG = c.getLogger(SpillQueue.class.getName());
+        this.connection = c;
+        String d = c.getSettings().getSpillDir();
+        this.dir = null == d ? null : new File(d);
+    }
+
+    public boolean isEnabled() {
+        return null != dir;
+    }
+
+    /**
+     * Recovers segments left in SPILL_DIR, and starts sending their PENDING records.
+     */
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new HecConnectionStateException("Could not create spill directory " + dir,
+                    HecConnectionStateException.Type.CONFIGURATION_EXCEPTION);
+        }
+        try {
+            recover();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not recover spill directory " + dir, ex);
+        }
+        drainAsync();
+    }
+
+    /**
+     * Spills the EventBatch if anything is already spilled, or if it cannot be sent without blocking.
+     * @param events
+     * @return true if the EventBatch was spilled, and will be sent by the drainer
+     */
+    public boolean offer(EventBatchImpl events) {
+        if (!isEnabled()) {
+            return false;
+        }
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            if (pending.isEmpty() && !connection.getTimeoutChecker().isFull()
+                    && connection.getLoadBalancer().hasAvailableChannel()) {
+                return false;
+            }
+            pending.add(append(serialize(events)));
+        }
+        numSpilled.incrementAndGet();
+        LOG.debug("spilled {}", events);
+        drainAsync();
+        return true;
+    }
+
+    /**
+     * Marks the spilled record of an acknowledged or failed EventBatch DONE. Does nothing if the EventBatch was never
+     * spilled.
+     * @param events
+     */
+    public void done(EventBatch events) {
+        if (!isEnabled() || null == events) {
+            return;
+        }
+        Record r = inFlight.remove(events.getId());
+        if (null != r) {
+            synchronized (this) {
+                r.segment.markDone(r.offset);
+                if (closed && inFlight.isEmpty()) {
+                    release(); //nothing left that could be marked done
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the drainer to hand every spilled EventBatch to the LoadBalancer.
+     * @param ms
+     * @return true if nothing is left spilled
+     */
+    public boolean awaitDrained(long ms) {
+        long start = System.currentTimeMillis();
+        while (getNumPending() > 0 && System.currentTimeMillis() - start < ms) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException ex) {
+                return false;
+            }
+        }
+        return getNumPending() == 0;
+    }
+
+    /**
+     * Stops the drainer and forces every segment to disk. PENDING records remain in SPILL_DIR and are replayed by the
+     * next SpillQueue on the directory.
+     */
+    public synchronized void close() {
+        if (!isEnabled() || closed) {
+            return;
+        }
+        closed = true;
+        if (!pending.isEmpty()) {
+            LOG.warn("{} spilled EventBatches left in {} for the next Connection", pending.size(), dir);
+        }
+        if (null != current) {
+            current.seal(); //deletes it if every record is done
+        }
+        if (inFlight.isEmpty()) {
+            release();
+        } //else released by done, once the last EventBatch handed to the LoadBalancer is acknowledged or failed
+    }
+
+    /**
+     * Unmaps the segments that still have PENDING records, without waiting for EventBatches in flight. An EventBatch
+     * acknowledged after this stays PENDING and is replayed by the next SpillQueue.
+     */
+    public synchronized void release() {
+        for (Segment s : new ArrayList<>(segments)) {
+            s.retire();
+        }
+    }
+
+    public synchronized int getNumPending() {
+        return pending.size();
+    }
+
+    /**
+     * @return the number of EventBatches spilled since the queue was created
+     */
+    public long getNumSpilled() {
+        return numSpilled.get();
+    }
+
+    /**
+     * @return the number of PENDING records recovered from segments left by a previous queue
+     */
+    public long getNumReplayed() {
+        return numReplayed.get();
+    }
+
+    private void drainAsync() {
+        if (!closed && draining.compareAndSet(false, true)) {
+            ThreadScheduler.getExecutorInstance("spill_drainer", connection.getThreadPoolScope()).execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            Record r;
+            int retries = 0;
+            while (!closed && null != (r = peek())) {
+                EventBatchImpl events = deserialize(r); //fresh each attempt, since a failed attempt leaves state behind
+                if (null == events) {
+                    break; //released while reading
+                }
+                inFlight.put(events.getId(), r);
+                try {
+                    connection.sendSpilled(events); //blocks, like Connection.sendBatch, until a channel takes it
+                } catch (HecConnectionTimeoutException e) {
+                    if (retries < connection.getSettings().getSpillMaxRetries()) {
+                        retries++;
+                        inFlight.remove(events.getId());
+                        events.cancelEventTrackers();
+                        LOG.warn("Still no channel available for spilled {}, retry {}", events, retries);
+                        continue;
+                    }
+                    LOG.error("Giving up on spilled {} after {} retries", events, retries);
+                    connection.getCallbacks().failed(events, e); //marks it done
+                } catch (Exception e) {
+                    LOG.error("Failed to send spilled {}: {}", events, e.getMessage());
+                    connection.getCallbacks().failed(events, e); //marks it done
+                }
+                remove(r);
+                retries = 0;
+            }
+        } catch (Exception e) {
+            LOG.error("Spill queue drainer stopped: {}", e.getMessage(), e);
+        } finally {
+            draining.set(false);
+        }
+        if (null != peek()) {
+            drainAsync(); //a record spilled as the loop exited
+        }
+    }
+
+    private synchronized Record peek() {
+        return pending.peek();
+    }
+
+    //the record is removed only after it is sent, so that offer keeps spilling until the drainer has caught up
+    private synchronized void remove(Record r) {
+        pending.remove(r);
+    }
+
+    private Record append(byte[] payload) {
+        int needed = HEADER_BYTES + payload.length;
+        try {
+            if (null == current || current.remaining() < needed) {
+                if (null != current) {
+                    current.seal();
+                }
+                current = new Segment(nextSegmentSeq++,
+                        Math.max(connection.getSettings().getSpillSegmentBytes(), needed));
+                segments.add(current);
+            }
+            return current.append(payload);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not spill to " + dir, ex);
+        }
+    }
+
+    private void recover() throws IOException {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        Arrays.sort(files); //zero padded sequence numbers sort in order
+        for (File f : files) {
+            String seq = f.getName().substring(PREFIX.length(), f.getName().length() - SUFFIX.length());
+            nextSegmentSeq = Math.max(nextSegmentSeq, Long.parseLong(seq) + 1);
+            Segment s = new Segment(f);
+            segments.add(s);
+            for (Record r : s.scan()) {
+                pending.add(r);
+                numReplayed.incrementAndGet();
+            }
+            s.seal();
+        }
+        if (numReplayed.get() > 0) {
+            LOG.info("Replaying {} spilled EventBatches from {}", numReplayed.get(), dir);
+        }
+    }
+
+    private static byte[] serialize(EventBatchImpl events) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(events.getLength() + 64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(events.getNumEvents());
+            for (Event e : events.getEvents()) {
+                out.writeByte(typeOf(e));
+                EventIds.write(out, e.getId());
+                out.writeInt(e.length());
+                e.writeTo(out);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex); //cannot happen writing to memory
+        }
+    }
+
+    //returns null if the segment was retired by release
+    private EventBatchImpl deserialize(Record r) throws IOException {
+        byte[] payload;
+        synchronized (this) {
+            payload = r.segment.read(r.offset);
+        }
+        if (null == payload) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        EventBatchImpl events = new EventBatchImpl();
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            byte type = in.readByte();
+            Comparable id = EventIds.read(in);
+            byte[] b = new byte[in.readInt()];
+            in.readFully(b);
+            events.add(toEvent(type, b, id));
+        }
+        return events;
+    }
+
+    private static byte typeOf(Event e) {
+        if (e instanceof RawEvent) {
+            return e.getType() == Event.Type.TEXT ? RAW_TEXT : RAW_JSON;
+        } else if (e instanceof EventWithMetadata) {
+            return WITH_METADATA;
+        } else if (e instanceof UnvalidatedByteBufferEvent) {
+            return UNVALIDATED_BYTE_BUFFER;
+        }
+        return UNVALIDATED_BYTES;
+    }
+
+    private static Event toEvent(byte type, byte[] b, Comparable id) throws IOException {
+        switch (type) {
+            case RAW_JSON:
+                return RawEvent.fromJsonAsBytes(b, id);
+            case RAW_TEXT:
+                return RawEvent.fromText(new String(b, "UTF-8"), id);
+            case WITH_METADATA:
+                return toEventWithMetadata(b, id);
+            case UNVALIDATED_BYTE_BUFFER:
+                return new UnvalidatedByteBufferEvent(ByteBuffer.wrap(b), id);
+            default:
+                return new UnvalidatedBytesEvent(b, id);
+        }
+    }
+
+    //the inverse of EventWithMetadata.getBytes
+    private static EventWithMetadata toEventWithMetadata(byte[] b, Comparable id) throws IOException {
+        JsonNode node = jsonMapper.readTree(b);
+        EventWithMetadata e = new EventWithMetadata(
+                jsonMapper.treeToValue(node.get(EventWithMetadata.EVENT), Object.class), id);
+        if (node.has(EventWithMetadata.TIME)) {
+            e.setTime(node.get(EventWithMetadata.TIME).asLong());
+        }
+        e.setIndex(text(node, EventWithMetadata.INDEX));
+        e.setHost(text(node, EventWithMetadata.HOST));
+        e.setSourceType(text(node, EventWithMetadata.SOURCETYPE));
+        e.setSource(text(node, EventWithMetadata.SOURCE));
+        return e;
+    }
+
+    private static String text(JsonNode node, String field) {
+        return node.has(field) ? node.get(field).asText() : null;
+    }
+
+    //releases the mapping now, rather than whenever the buffer happens to be garbage collected
+    private static void unmap(MappedByteBuffer buf) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class); //Java 9+
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buf);
+        } catch (NoSuchMethodException e) {
+            try { //Java 8
+                Method cleaner = buf.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                Object c = cleaner.invoke(buf);
+                if (null != c) {
+                    c.getClass().getMethod("clean").invoke(c);
+                }
+            } catch (Exception ex) {
+                //left to the garbage collector
+            }
+        } catch (Exception e) {
+            //left to the garbage collector
+        }
+    }
+
+    private static class Record {
+
+        final Segment segment;
+        final int offset;
+
+        Record(Segment segment, int offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+
+    private class Segment {
+
+        private final File file;
+        private final MappedByteBuffer buf;
+        private int writePos;
+        private int numRecords;
+        private int numDone;
+        private boolean sealed; //no more appends, so it can be deleted once every record is done
+        private boolean retired; //unmapped, so buf must not be touched
+
+        //a new, empty segment
+        Segment(long seq, int size) throws IOException {
+            this.file = new File(dir, String.format("%s%019d%s", PREFIX, seq, SUFFIX));
+            this.buf = map(file, size);
+        }
+
+        //an existing segment, to be scanned
+        Segment(File f) throws IOException {
+            this.file = f;
+            this.buf = map(f, (int) f.length());
+        }
+
+        private MappedByteBuffer map(File f, int size) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+                return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size); //mapping outlives the channel
+            }
+        }
+
+        int remaining() {
+            return buf.capacity() - writePos;
+        }
+
+        Record append(byte[] payload) {
+            ByteBuffer b = buf.duplicate();
+            b.position(writePos + HEADER_BYTES);
+            b.put(payload);
+            buf.put(writePos + 4, PENDING);
+            buf.putInt(writePos, payload.length); //written last, which commits the record
+            Record r = new Record(this, writePos);
+            writePos += HEADER_BYTES + payload.length;
+            numRecords++;
+            return r;
+        }
+
+        //returns null if the segment was retired
+        byte[] read(int offset) {
+            if (retired) {
+                return null;
+            }
+            byte[] payload = new byte[buf.getInt(offset)];
+            ByteBuffer b = buf.duplicate();
+            b.position(offset + HEADER_BYTES);
+            b.get(payload);
+            return payload;
+        }
+
+        //returns the PENDING records, and counts the DONE ones
+        Deque<Record> scan() {
+            Deque<Record> found = new ArrayDeque<>();
+            while (writePos + HEADER_BYTES <= buf.capacity()) {
+                int len = buf.getInt(writePos);
+                if (len <= 0 || writePos + HEADER_BYTES + len > buf.capacity()) {
+                    break; //end of the records, or a record torn by a crash
+                }
+                numRecords++;
+                if (buf.get(writePos + 4) == DONE) {
+                    numDone++;
+                } else {
+                    found.add(new Record(this, writePos));
+                }
+                writePos += HEADER_BYTES + len;
+            }
+            return found;
+        }
+
+        void markDone(int offset) {
+            if (retired) {
+                return; //released, so the record stays PENDING and is replayed
+            }
+            buf.put(offset + 4, DONE);
+            numDone++;
+            deleteIfDone();
+        }
+
+        void seal() {
+            if (retired) {
+                return;
+            }
+            sealed = true;
+            buf.force();
+            deleteIfDone();
+        }
+
+        private void deleteIfDone() {
+            if (sealed && numDone == numRecords) {
+                retire();
+                if (!file.delete()) {
+                    LOG.warn("Could not delete spill segment {}", file);
+                }
+            }
+        }
+
+        void retire() {
+            if (retired) {
+                return;
+            }
+            retired = true; //already forced by seal
+            unmap(buf);
+            segments.remove(this);
+            if (this == current) {
+                current = null;
+            }
+        }
+    }
+
+}
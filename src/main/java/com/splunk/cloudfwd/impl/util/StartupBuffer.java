@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.splunk.cloudfwd.impl.util;
+
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.error.HecConnectionTimeoutException;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.impl.EventBatchImpl;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+
+/**
+ * Holds EventBatches sent on a Connection with LAZY_STARTUP enabled, until the first channel passes preflight. The
+ * buffered EventBatches are then sent in the order they arrived. Sends keep going through the buffer until it is
+ * empty, so an EventBatch sent while older ones are still being drained cannot overtake them; only then do sends go
+ * straight to the LoadBalancer. While the buffer is full, a send waits for room for up to BLOCKING_TIMEOUT_MS.
+ * EventBatches are registered with the CheckpointManager when they are buffered, so the checkpoint cannot slide past
+ * a buffered EventBatch.
+ */
+class StartupBuffer {
+
+    private final Logger LOG;
+    private final ConnectionImpl connection;
+    private final int capacity;
+    private final List<EventBatchImpl> buffered = new ArrayList<>(); //guarded by this
+    private final CompletableFuture<Void> drained = new CompletableFuture<>(); //completes once buffer is sent or failed
+    private boolean bypassed; //guarded by this, true once the buffer is drained or failed
+
+    StartupBuffer(ConnectionImpl c) {
+        this.LOG = c.getLogger(StartupBuffer.class.getName());
+        this.connection = c;
+        this.capacity = c.getSettings().getStartupBufferMaxBatches();
+    }
+
+    /**
+     * Buffers the EventBatch, waiting while the buffer is full.
+     * @param events
+     * @return false if the buffer was drained or failed, in which case the caller must send the EventBatch itself
+     * @throws HecConnectionTimeoutException if the buffer stayed full for BLOCKING_TIMEOUT_MS
+     */
+    synchronized boolean offer(EventBatchImpl events) throws HecConnectionTimeoutException {
+        long timeout = connection.getBlockingTimeoutMS();
+        long deadline = System.currentTimeMillis() + timeout;
+        while (!bypassed && buffered.size() >= capacity) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new HecConnectionTimeoutException(PropertyKeys.BLOCKING_TIMEOUT_MS
+                        + " timeout exceeded waiting for room in the startup buffer for EventBatch with id="
+                        + events.getId() + " Timeout was " + timeout);
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new HecConnectionTimeoutException("Interrupted waiting for room in the startup buffer for "
+                        + "EventBatch with id=" + events.getId());
+            }
+        }
+        if (bypassed) {
+            return false;
+        }
+        connection.getCheckpointManager().registerEventBatch(events, false);
+        buffered.add(events);
+        LOG.debug("buffered {} until a channel is ready ({} buffered)", events, buffered.size());
+        return true;
+    }
+
+    //takes what is buffered, or if nothing is, stops buffering
+    private synchronized List<EventBatchImpl> take() {
+        List<EventBatchImpl> l = new ArrayList<>(buffered);
+        buffered.clear();
+        if (l.isEmpty()) {
+            bypassed = true;
+        }
+        notifyAll(); //there is room again, or sends no longer need it
+        return l;
+    }
+
+    /**
+     * Sends each buffered EventBatch through the LoadBalancer, blocking as LoadBalancer.sendBatch would, including
+     * the ones buffered while this runs. Returns once the buffer is empty and sends bypass it.
+     * @param lb
+     */
+    void drain(LoadBalancer lb) {
+        LOG.info("first channel ready, sending buffered EventBatches");
+        for (List<EventBatchImpl> l = take(); !l.isEmpty(); l = take()) {
+            LOG.debug("sending {} buffered EventBatches", l.size());
+            for (EventBatchImpl events : l) {
+                try {
+                    lb.sendBuffered(events);
+                } catch (Exception e) {
+                    LOG.warn("failed to send buffered EventBatch {} because {}", events.getId(), e.getMessage());
+                    connection.getCallbacks().failed(events, e);
+                }
+            }
+        }
+        drained.complete(null);
+    }
+
+    /**
+     * Stops buffering and invokes the failed callback for each buffered EventBatch.
+     * @param e
+     */
+    void fail(Exception e) {
+        List<EventBatchImpl> l;
+        synchronized (this) {
+            bypassed = true;
+            l = new ArrayList<>(buffered);
+            buffered.clear();
+            notifyAll();
+        }
+        if (!l.isEmpty()) {
+            LOG.warn("failing {} buffered EventBatches because {}", l.size(), e.getMessage());
+        }
+        l.forEach(events -> connection.getCallbacks().failed(events, e));
+        drained.complete(null);
+    }
+
+    /**
+     * @param ms
+     * @return true if the buffer was drained (or failed) within ms
+     */
+    boolean awaitDrained(long ms) {
+        try {
+            drained.get(ms, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException | ExecutionException | TimeoutException ex) {
+            return false;
+        }
+    }
+
+}
@@ -15,6 +15,9 @@
  */
 package com.splunk.cloudfwd.impl.util;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
@@ -22,30 +25,135 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * Maintains a singleton map of ScheduledThreadPoolExecutors, one for each threadpool name.
+ * Maintains a singleton map of ScheduledThreadPoolExecutors, one for each threadpool name. Schedulers
+ * that are requested with a shard key are sharded across NUM_SHARDS single-threaded schedulers so that
+ * a busy named scheduler (such as "ack poller") is not limited to one thread for the whole process.
+ * Executors keep one core thread per core, add a thread (up to a bound) only when none is idle, and queue
+ * what arrives beyond the bound. Queueing before growing would leave tasks waiting behind core threads
+ * that are blocked, for instance in a user callback. When an executor's threads and queue are both
+ * exhausted the task runs on the submitting thread, except for executors obtained with getRejectingExecutorInstance, which throw
+ * RejectedExecutionException instead; their callers submit from threads (such as the I/O reactor) that
+ * must not run the task themselves. A shut down executor always throws RejectedExecutionException.
+ * Rejections are counted and logged. Pools may optionally be scoped to a Connection so that one
+ * misbehaving Connection cannot starve the others.
  *
  * @author ghendrey
  */
 public class ThreadScheduler {
 
-  //private Logger LOG = LoggerFactory.getLogger(ThreadScheduler.class.getName());
+  private static final Logger LOG = LoggerFactory.getLogger(ThreadScheduler.class.getName());
   private static final ConcurrentMap<String, ScheduledThreadPoolExecutor> schedulers = new ConcurrentHashMap<>();
-  private static final ConcurrentMap<String, ExecutorService> executors = new ConcurrentHashMap<>(); 
+  private static final ConcurrentMap<String, ThreadPoolExecutor> executors = new ConcurrentHashMap<>(); 
+  private static final ConcurrentMap<String, AtomicLong> rejections = new ConcurrentHashMap<>();
   private static final int MAX_THREADS_IN_SCHEDULER_POOL = 1;
-  private static int MAX_THREADS_IN_EXECUTOR_POOL = Integer.MAX_VALUE; //Pools need to be able to grow large because pre-flight check waits on several latches and will tie up a thread for a long time
+  //each shard is its own single-threaded scheduler, so tasks keyed to the same shard still run serially
+  private static final int NUM_SHARDS = Runtime.getRuntime().availableProcessors();
+  //Pools need to be able to grow large because pre-flight check waits on several latches and will tie up a thread for a long time,
+  //but they must not grow without bound. A pool grows past its core only while every thread is busy.
+  private static final int CORE_THREADS_IN_EXECUTOR_POOL = NUM_SHARDS;
+  private static final int MAX_THREADS_IN_EXECUTOR_POOL = Math.max(64, 16*NUM_SHARDS);
+  private static final int MAX_EXECUTOR_QUEUE_SIZE = 10000;
+  private static final AtomicInteger scopeCounter = new AtomicInteger(0);
   
   public synchronized  static ScheduledThreadPoolExecutor getSchedulerInstance(String name){
-      return getFromSchedulerCache(name);
+      return getFromSchedulerCache(name, false);
+  }
+  
+  /**
+   * Returns one of NUM_SHARDS schedulers for the given name, chosen by the hash of shardKey. The same
+   * shardKey always maps to the same scheduler thread.
+   * @param name
+   * @param shardKey typically the HecChannel or Connection the task belongs to
+   * @return
+   */
+  public static ScheduledThreadPoolExecutor getSchedulerInstance(String name, Object shardKey){
+      return getSchedulerInstance(name, null, shardKey);
+  }
+  
+  /**
+   * @param name
+   * @param scope null for the process-wide pools, otherwise the scope returned by newScope
+   * @param shardKey
+   * @return
+   */
+  public static ScheduledThreadPoolExecutor getSchedulerInstance(String name, String scope, Object shardKey){
+      int shard = (shardKey.hashCode() & Integer.MAX_VALUE) % NUM_SHARDS;
+      return getFromSchedulerCache(scopedName(name + "-" + shard, scope), null != scope);
   }
   
   public synchronized  static ExecutorService getExecutorInstance(String name){
-      return getFromExecutorCache(name);
+      return getFromExecutorCache(name, true);
   }  
   
+  public static ExecutorService getExecutorInstance(String name, String scope){
+      return getFromExecutorCache(scopedName(name, scope), true);
+  }
+  
+  /**
+   * Like getExecutorInstance, but when saturated the executor throws RejectedExecutionException rather than
+   * running the task on the submitting thread. A pool name must always be obtained the same way.
+   * @param name
+   * @param scope
+   * @return
+   */
+  public static ExecutorService getRejectingExecutorInstance(String name, String scope){
+      return getFromExecutorCache(scopedName(name, scope), false);
+  }
+  
+  /**
+   * @return a new scope under which a Connection can obtain pools that are not shared with other Connections
+   */
+  public static String newScope() {
+      return "connection-" + scopeCounter.incrementAndGet();
+  }
+  
+  /**
+   * Shuts down (without waiting or interrupting) every scheduler and executor that was created for the scope.
+   * @param scope
+   */
+  public static void shutdownScope(String scope) {
+      if (null == scope) {
+          return;
+      }
+      String suffix = "@" + scope;
+      schedulers.entrySet().removeIf(e -> {
+          if (e.getKey().endsWith(suffix)) {
+              e.getValue().shutdown();
+              return true;
+          }
+          return false;
+      });
+      executors.entrySet().removeIf(e -> {
+          if (e.getKey().endsWith(suffix)) {
+              e.getValue().shutdown();
+              rejections.remove(e.getKey());
+              return true;
+          }
+          return false;
+      });
+  }
+  
+  /**
+   * @return a snapshot of the size, activity, and rejection count of every pool, keyed by pool name
+   */
+  public static Map<String, PoolStats> getPoolStats() {
+      Map<String, PoolStats> stats = new HashMap<>();
+      schedulers.forEach((name, s) -> stats.put(name, new PoolStats(name, s, 0)));
+      executors.forEach((name, e) -> stats.put(name, new PoolStats(name, e,
+              rejections.getOrDefault(name, new AtomicLong()).get())));
+      return Collections.unmodifiableMap(stats);
+  }
+  
     public static void shutdownNowAndAwaitTermination() {
         for (ScheduledThreadPoolExecutor scheduler:schedulers.values()) {
             scheduler.shutdownNow();
@@ -76,28 +184,137 @@ public class ThreadScheduler {
 
     }       
 
-    private static ExecutorService getFromExecutorCache(String name) {
+    private static String scopedName(String name, String scope) {
+        return null == scope ? name : name + "@" + scope;
+    }
+
+    private static ExecutorService getFromExecutorCache(String name, boolean callerRunsWhenSaturated) {
         return executors.computeIfAbsent(name, k->{
             ThreadFactory f = (Runnable r) -> new Thread(r, name);            
-            ThreadPoolExecutor tpe = new ThreadPoolExecutor(2, MAX_THREADS_IN_EXECUTOR_POOL,
-                                   30L, TimeUnit.SECONDS,
-                                   new LinkedBlockingQueue<Runnable>(), f);
-            tpe.prestartAllCoreThreads();
+            AtomicLong rejected = rejections.computeIfAbsent(name, n->new AtomicLong());
+            RejectedExecutionHandler onReject = (Runnable r, ThreadPoolExecutor e) -> {
+                if (!e.isShutdown() && ((GrowFirstQueue) e.getQueue()).enqueue(r)) {
+                    return; //the pool reached its bound after the queue declined the task
+                }
+                long n = rejected.incrementAndGet();
+                if (e.isShutdown()) {
+                    LOG.warn("Executor '{}' is shut down; rejecting task from thread {} (rejections={})",
+                            name, Thread.currentThread().getName(), n);
+                    throw new RejectedExecutionException("Executor '" + name + "' is shut down");
+                }
+                if (!callerRunsWhenSaturated) {
+                    LOG.warn("Executor '{}' saturated ({} threads, {} queued); rejecting task from thread {} (rejections={})",
+                            name, e.getPoolSize(), e.getQueue().size(), Thread.currentThread().getName(), n);
+                    throw new RejectedExecutionException("Executor '" + name + "' is saturated");
+                }
+                LOG.warn("Executor '{}' saturated ({} threads, {} queued); running task on caller thread {} (rejections={})",
+                        name, e.getPoolSize(), e.getQueue().size(), Thread.currentThread().getName(), n);
+                r.run();
+            };
+            GrowFirstQueue queue = new GrowFirstQueue(MAX_EXECUTOR_QUEUE_SIZE);
+            ThreadPoolExecutor tpe = new ThreadPoolExecutor(CORE_THREADS_IN_EXECUTOR_POOL, MAX_THREADS_IN_EXECUTOR_POOL,
+                                   30L, TimeUnit.SECONDS, queue, f, onReject);
+            queue.executor = tpe;
+            //idle threads time out, so an unused pool holds no threads
+            tpe.allowCoreThreadTimeOut(true);
             return tpe;
       });
     }
     
-    private static ScheduledThreadPoolExecutor getFromSchedulerCache(String name) {
+    /**
+     * Declines a task while its executor has no idle thread and is below its maximum, so that the executor adds
+     * a thread rather than queueing the task. A declined task that finds the executor at its maximum is queued by
+     * the executor's RejectedExecutionHandler.
+     */
+    private static class GrowFirstQueue extends LinkedBlockingQueue<Runnable> {
+        private volatile ThreadPoolExecutor executor;
+
+        GrowFirstQueue(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        public boolean offer(Runnable r) {
+            ThreadPoolExecutor e = executor;
+            if (null != e && e.getPoolSize() < e.getMaximumPoolSize() && e.getActiveCount() >= e.getPoolSize()) {
+                return false;
+            }
+            return super.offer(r);
+        }
+
+        boolean enqueue(Runnable r) {
+            return super.offer(r);
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor getFromSchedulerCache(String name, boolean scoped) {
         return schedulers.computeIfAbsent(name, k->{
             ThreadFactory f = (Runnable r) -> new Thread(r, name);
              ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(MAX_THREADS_IN_SCHEDULER_POOL, f);
              scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
              scheduler.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
              scheduler.setRemoveOnCancelPolicy(true); 
-             scheduler.setKeepAliveTime(1, TimeUnit.MINUTES); //probably this is not applicable to ScheduledThreadPoolExecutor since it always keeps exactly corePoolSize 
-             scheduler.prestartAllCoreThreads();
+             scheduler.setKeepAliveTime(1, TimeUnit.MINUTES);
+             if (scoped) {
+                 //a closed Connection must not pin threads in its scoped schedulers
+                 scheduler.allowCoreThreadTimeOut(true);
+             } else {
+                 scheduler.prestartAllCoreThreads();
+             }
              return scheduler;
       });
     }    
+    
+    /**
+     * Point in time statistics for one named pool.
+     */
+    public static class PoolStats {
+        private final String name;
+        private final int poolSize;
+        private final int activeCount;
+        private final int queueSize;
+        private final long completedTaskCount;
+        private final long rejectedCount;
+
+        PoolStats(String name, ThreadPoolExecutor e, long rejectedCount) {
+            this.name = name;
+            this.poolSize = e.getPoolSize();
+            this.activeCount = e.getActiveCount();
+            this.queueSize = e.getQueue().size();
+            this.completedTaskCount = e.getCompletedTaskCount();
+            this.rejectedCount = rejectedCount;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public int getActiveCount() {
+            return activeCount;
+        }
+
+        public int getQueueSize() {
+            return queueSize;
+        }
+
+        public long getCompletedTaskCount() {
+            return completedTaskCount;
+        }
+
+        public long getRejectedCount() {
+            return rejectedCount;
+        }
+
+        @Override
+        public String toString() {
+            return "PoolStats{" + "name=" + name + ", poolSize=" + poolSize + ", activeCount=" + activeCount
+                    + ", queueSize=" + queueSize + ", completedTaskCount=" + completedTaskCount
+                    + ", rejectedCount=" + rejectedCount + '}';
+        }
+    }
   
 }
@@ -15,6 +15,7 @@
  */
 package com.splunk.cloudfwd.impl.util;
 
+import com.splunk.cloudfwd.MetricsSnapshot;
 import com.splunk.cloudfwd.impl.ConnectionImpl;
 import com.splunk.cloudfwd.impl.EventBatchImpl;
 import com.splunk.cloudfwd.error.HecAcknowledgmentTimeoutException;
@@ -38,7 +39,7 @@ import org.slf4j.Logger;
 public class TimeoutChecker implements EventTracker {
     private final Logger LOG;
    // private ThreadScheduler timeoutCheckScheduler = new ThreadScheduler("Event Timeout Scheduler");
-    private ScheduledThreadPoolExecutor timeoutCheckScheduler = ThreadScheduler.getSchedulerInstance("Event Timeout Scheduler");
+    private final ScheduledThreadPoolExecutor timeoutCheckScheduler;
     private ScheduledFuture task;
     private final Map<Comparable, EventBatchImpl> eventBatches = new ConcurrentHashMap<>();
     private ConnectionImpl connection;
@@ -50,6 +51,7 @@ public class TimeoutChecker implements EventTracker {
         //timeoutCheckScheduler.setLogger(c);
 
         this.connection = c;
+        this.timeoutCheckScheduler = ThreadScheduler.getSchedulerInstance("Event Timeout Scheduler", c.getThreadPoolScope(), c);
     }
 
     public void setTimeout(long ms) {
@@ -105,10 +107,10 @@ public class TimeoutChecker implements EventTracker {
                 iter.remove(); //ignore failed events
             }else if (events.isTimedOut(getTimeoutMs())) {
                 events.setState(EVENT_TIMED_OUT);
-                //this is the one case were we cannot call failed() directly, but rather have to go directly (via unwrap)
-                //to the user-supplied callback. Otherwise we just loop back here over and over!
-                ((CallbackInterceptor) connection.getCallbacks()).unwrap().
-                        failed(events,
+                connection.getMetricsRegistry().getConnectionCounters().increment(MetricsSnapshot.Counter.TIMEOUTS);
+                //this is the one case were we cannot call failed() directly, but rather have to go straight
+                //to the user-supplied callback (via timedOut). Otherwise we just loop back here over and over!
+                ((CallbackInterceptor) connection.getCallbacks()).timedOut(events,
                                 new HecAcknowledgmentTimeoutException(
                                         "EventBatch with id " + events.getId() + " timed out."));
                 events.setFailed(true);
@@ -149,9 +151,10 @@ public class TimeoutChecker implements EventTracker {
     }
 
     public List<EventBatchImpl> getUnackedEvents(HecChannel c) {
-        //return only the batches whose channel matches c
+        //return only the batches whose channel matches c. A batch that has not been given a channel yet has none
         return eventBatches.values().stream().filter(b -> {
-            return b.getHecChannel().getChannelId() == c.getChannelId();
+            HecChannel bc = b.getHecChannel();
+            return null != bc && bc.getChannelId() == c.getChannelId();
         }).collect(Collectors.toList());
     }
 
@@ -166,6 +169,13 @@ public class TimeoutChecker implements EventTracker {
         return sizeInBytes.get();
     }
 
+    /**
+     * @return number of EventBatches being tracked for timeout
+     */
+    public int getNumInFlight() {
+        return eventBatches.size();
+    }
+
     boolean isFull() {
         return  getSizeInBytes() >= 1024*1024*256;//256 MB max 'in flight' FIXME TODO this needs to be a config param
     }
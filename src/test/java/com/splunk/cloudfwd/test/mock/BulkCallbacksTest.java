@@ -0,0 +1,89 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.BulkConnectionCallbacks;
+import com.splunk.cloudfwd.EventBatch;
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import com.splunk.cloudfwd.test.util.BasicCallbacks;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Checks that BulkConnectionCallbacks get every acknowledgement through acknowledged(List), never through
+ * acknowledged(EventBatch), and that a poll can acknowledge several EventBatches at once.
+ */
+public class BulkCallbacksTest extends AbstractConnectionTest {
+
+  private static final int NUM_EVENTS = 1000;
+  private final AtomicInteger bulkCalls = new AtomicInteger();
+  private final AtomicInteger singleCalls = new AtomicInteger();
+  private final AtomicInteger largest = new AtomicInteger();
+
+  @Override
+  protected int getNumEventsToSend() {
+    return NUM_EVENTS;
+  }
+
+  @Override
+  protected Properties getProps() {
+    Properties props = new Properties();
+    props.put(PropertyKeys.EVENT_BATCH_SIZE, "0"); //one EventBatch per Event
+    props.put(PropertyKeys.ENABLE_CHECKPOINTS, "true");
+    return props;
+  }
+
+  @Override
+  protected BasicCallbacks getCallbacks() {
+    return new BulkCallbacks(getNumEventsToSend());
+  }
+
+  @Test
+  public void acknowledgesInBulk() throws Exception {
+    sendEvents();
+    Assert.assertEquals("expected no acknowledged(EventBatch) calls", 0, singleCalls.get());
+    Assert.assertEquals("expected every EventBatch to be acknowledged", NUM_EVENTS,
+            callbacks.getAcknowledgedBatches().size());
+    Assert.assertTrue("expected a poll to acknowledge more than one EventBatch", largest.get() > 1);
+    Assert.assertTrue("expected fewer bulk calls than EventBatches", bulkCalls.get() < NUM_EVENTS);
+  }
+
+  private class BulkCallbacks extends BasicCallbacks implements BulkConnectionCallbacks {
+
+    BulkCallbacks(int expected) {
+      super(expected);
+    }
+
+    @Override
+    public void acknowledged(List<EventBatch> events) {
+      bulkCalls.incrementAndGet();
+      largest.accumulateAndGet(events.size(), Math::max);
+      events.forEach(super::acknowledged);
+    }
+
+    @Override
+    public void acknowledged(EventBatch events) {
+      singleCalls.incrementAndGet();
+      super.acknowledged(events);
+    }
+  }
+
+}
@@ -0,0 +1,111 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.HecHealth;
+import com.splunk.cloudfwd.LifecycleEvent;
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.impl.http.lifecycle.BusyResponse;
+import com.splunk.cloudfwd.impl.http.lifecycle.Response;
+import com.splunk.cloudfwd.impl.util.BusyCooldown;
+import com.splunk.cloudfwd.impl.util.HecChannel;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * A 503 should keep every channel of the destination out of rotation for the cool-down window, even once a health
+ * poll says the destination is healthy again. The window grows with repeated 503s and shrinks with successes.
+ */
+public class BusyCooldownTest extends AbstractConnectionTest {
+
+  private static final String URL = "https://127.0.0.1:8088";
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 0;
+  }
+
+  @Override
+  protected Properties getProps() {
+    Properties props = new Properties();
+    props.put(PropertyKeys.COLLECTOR_URI, URL);
+    props.put(PropertyKeys.CHANNELS_PER_DESTINATION, "2");
+    props.put(PropertyKeys.BUSY_COOLDOWN_MS, "100");
+    props.put(PropertyKeys.BUSY_COOLDOWN_DESTINATION, "true");
+    props.put(PropertyKeys.RETRY_BACKOFF_MAX_MS, "5000");
+    return props;
+  }
+
+  @Test
+  public void windowGrowsAndShrinks() throws InterruptedException {
+    List<HecChannel> channels = awaitAvailableChannels();
+    BusyCooldown cooldown = channels.get(0).getBusyCooldown();
+    Assert.assertSame("expected the destination's channels to share a cool-down", cooldown,
+            channels.get(1).getBusyCooldown());
+    cooldown.busy(-1);
+    Assert.assertEquals(100, cooldown.getWindowMS());
+    cooldown.busy(-1);
+    cooldown.busy(-1);
+    Assert.assertEquals(400, cooldown.getWindowMS());
+    cooldown.ok();
+    Assert.assertEquals(200, cooldown.getWindowMS());
+    cooldown.ok();
+    cooldown.ok();
+    Assert.assertEquals(0, cooldown.getWindowMS());
+  }
+
+  @Test
+  public void busyDestinationLeavesRotation() throws InterruptedException {
+    List<HecChannel> channels = awaitAvailableChannels();
+    HecChannel busy = channels.get(0);
+    long start = System.currentTimeMillis();
+    busy.update(new BusyResponse(LifecycleEvent.Type.EVENT_POST_INDEXER_BUSY, 503,
+            "{\"text\":\"Server is busy\",\"code\":9}", URL, 500)); //Retry-After, rather than the 100 ms window
+    busy.update(new Response(LifecycleEvent.Type.HEALTH_POLL_OK, 200, "{\"text\":\"HEC is healthy\",\"code\":17}",
+            URL));
+    Assert.assertTrue("expected the health poll to restore health", busy.isHealthy());
+    for (HecChannel c : channels) {
+      Assert.assertFalse("expected " + c + " to cool down", c.isAvailable());
+    }
+    while (!channels.stream().allMatch(HecChannel::isAvailable) && System.currentTimeMillis() - start < 5000) {
+      Thread.sleep(10);
+    }
+    long elapsed = System.currentTimeMillis() - start;
+    Assert.assertTrue("expected the channels to be available after the cool-down", channels.stream().allMatch(
+            HecChannel::isAvailable));
+    Assert.assertTrue("expected Retry-After to be honored, cool-down took " + elapsed, elapsed >= 500);
+  }
+
+  private List<HecChannel> awaitAvailableChannels() throws InterruptedException {
+    long start = System.currentTimeMillis();
+    List<HecChannel> channels;
+    do {
+      Thread.sleep(10);
+      channels = ((ConnectionImpl) connection).getLoadBalancer().getHealthNonBlocking().stream()
+              .map(HecHealth::getChannel).collect(Collectors.toList());
+    } while (!(channels.size() == 2 && channels.stream().allMatch(HecChannel::isAvailable))
+            && System.currentTimeMillis() - start < 10000);
+    Assert.assertEquals(2, channels.size());
+    return channels;
+  }
+
+}
@@ -0,0 +1,68 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.impl.util.ThreadScheduler;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.util.Properties;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * With CALLBACK_EXECUTOR "ordered", shuts down the Connection's callback_executor halfway through sending. Callbacks
+ * raised after that must be treated as rejected and still delivered, so every EventBatch is acknowledged.
+ */
+public class CallbackExecutorShutdownTest extends AbstractConnectionTest {
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 1000;
+  }
+
+  @Override
+  protected Properties getProps() {
+    Properties props = new Properties();
+    props.put(PropertyKeys.EVENT_BATCH_SIZE, "0"); //one EventBatch per Event
+    props.put(PropertyKeys.CALLBACK_EXECUTOR, "ordered");
+    props.put(PropertyKeys.ISOLATE_THREAD_POOLS, "true"); //so that only this Connection's callback_executor is shut down
+    return props;
+  }
+
+  @Test
+  public void deliversAfterCallbackExecutorShutdown() throws InterruptedException {
+    String scope = ((ConnectionImpl) connection).getThreadPoolScope();
+    int half = getNumEventsToSend() / 2;
+    for (int i = 0; i < getNumEventsToSend(); i++) {
+      if (i == half) {
+        ThreadScheduler.getRejectingExecutorInstance("callback_executor", scope).shutdown();
+      }
+      connection.send(nextEvent(i + 1));
+    }
+    connection.close();
+    long start = System.currentTimeMillis();
+    while (callbacks.getAcknowledgedBatches().size() < getNumEventsToSend()
+            && System.currentTimeMillis() - start < 30000) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals("expected every EventBatch to be acknowledged after the callback_executor shut down",
+            getNumEventsToSend(), callbacks.getAcknowledgedBatches().size());
+    callbacks.checkFailures();
+  }
+
+}
@@ -0,0 +1,90 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.EventBatch;
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import com.splunk.cloudfwd.test.util.BasicCallbacks;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * With CALLBACK_EXECUTOR "ordered", checks that callbacks run only on the callback_executor pool, that every
+ * EventBatch is acknowledged before it is checkpointed, and that checkpoints increase.
+ */
+public class CallbackExecutorTest extends AbstractConnectionTest {
+
+  private static final int NUM_EVENTS = 1000;
+  private final Set<String> threads = new ConcurrentSkipListSet<>();
+  private final Set<Comparable> acked = new ConcurrentSkipListSet<>();
+  private volatile String outOfOrder;
+  private int lastCheckpoint; //only touched by callbacks, which are delivered one at a time
+
+  @Override
+  protected int getNumEventsToSend() {
+    return NUM_EVENTS;
+  }
+
+  @Override
+  protected Properties getProps() {
+    Properties props = new Properties();
+    props.put(PropertyKeys.EVENT_BATCH_SIZE, "0"); //one EventBatch per Event
+    props.put(PropertyKeys.ENABLE_CHECKPOINTS, "true");
+    props.put(PropertyKeys.CALLBACK_EXECUTOR, "ordered");
+    return props;
+  }
+
+  @Override
+  protected BasicCallbacks getCallbacks() {
+    return new BasicCallbacks(getNumEventsToSend()) {
+      @Override
+      public void acknowledged(EventBatch events) {
+        threads.add(Thread.currentThread().getName());
+        acked.add(events.getId());
+        super.acknowledged(events);
+      }
+
+      @Override
+      public void checkpoint(EventBatch events) {
+        threads.add(Thread.currentThread().getName());
+        int id = (Integer) events.getId();
+        if (!acked.contains(id)) {
+          outOfOrder = "checkpoint " + id + " before it was acknowledged";
+        } else if (id <= lastCheckpoint) {
+          outOfOrder = "checkpoint " + id + " after " + lastCheckpoint;
+        }
+        lastCheckpoint = id;
+        super.checkpoint(events);
+      }
+    };
+  }
+
+  @Test
+  public void deliversInOrderOnCallbackExecutor() throws Exception {
+    sendEvents();
+    Assert.assertNull(outOfOrder, outOfOrder);
+    Assert.assertEquals("expected every EventBatch to be acknowledged", NUM_EVENTS, acked.size());
+    for (String t : threads) {
+      Assert.assertTrue("expected callbacks only on callback_executor, not " + t, t.startsWith("callback_executor"));
+    }
+  }
+
+}
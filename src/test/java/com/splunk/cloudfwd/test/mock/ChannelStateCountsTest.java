@@ -0,0 +1,69 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.HecHealth;
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.impl.util.ChannelStateCounts;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * The incrementally maintained channel state counts should agree with the channels' own health once preflight is
+ * done, and drop to zero once the closed Connection's channels have finished closing.
+ */
+public class ChannelStateCountsTest extends AbstractConnectionTest {
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 1000;
+  }
+
+  @Override
+  protected Properties getProps() {
+    Properties props = new Properties();
+    props.put(PropertyKeys.CHANNELS_PER_DESTINATION, "4");
+    return props;
+  }
+
+  @Test
+  public void countsFollowChannels() throws Exception {
+    List<HecHealth> healths = connection.getHealthFuture().get(10, TimeUnit.SECONDS);
+    ChannelStateCounts counts = ((ConnectionImpl) connection).getLoadBalancer().getChannelStateCounts();
+    Assert.assertEquals(healths.size(), counts.getChannels());
+    Assert.assertEquals(healths.stream().filter(HecHealth::isHealthy).count(),
+            counts.get(ChannelStateCounts.State.HEALTHY));
+    Assert.assertEquals(healths.size(), counts.get(ChannelStateCounts.State.PREFLIGHTED));
+    Assert.assertEquals(0, counts.get(ChannelStateCounts.State.CLOSED));
+
+    sendEvents();
+    long start = System.currentTimeMillis();
+    while (counts.getChannels() > 0 && System.currentTimeMillis() - start < 10000) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals("expected every channel to finish closing: " + counts, 0, counts.getChannels());
+    for (ChannelStateCounts.State s : ChannelStateCounts.State.values()) {
+      Assert.assertEquals("expected no channel left in " + s, 0, counts.get(s));
+    }
+  }
+
+}
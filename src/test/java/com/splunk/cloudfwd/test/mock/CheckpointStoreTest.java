@@ -0,0 +1,81 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.Connection;
+import com.splunk.cloudfwd.Connections;
+import com.splunk.cloudfwd.DefaultConnectionCallbacks;
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Properties;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Once every event is acknowledged and the Connection closed, the checkpoint file should hold the id of the last
+ * event, and a new Connection on the same file should report it as the last durable checkpoint.
+ */
+public class CheckpointStoreTest extends AbstractConnectionTest {
+
+  private static final int NUM_EVENTS = 1000;
+  private File checkpointFile;
+
+  @Override
+  protected int getNumEventsToSend() {
+    return NUM_EVENTS;
+  }
+
+  @Override
+  protected Properties getProps() {
+    try {
+      checkpointFile = File.createTempFile("checkpoint", ".dat");
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    checkpointFile.deleteOnExit();
+    Properties props = new Properties();
+    props.put(PropertyKeys.ENABLE_CHECKPOINTS, "true");
+    props.put(PropertyKeys.CHECKPOINT_FILE, checkpointFile.getAbsolutePath());
+    props.put(PropertyKeys.CHECKPOINT_FLUSH_MS, "100");
+    return props;
+  }
+
+  @Test
+  public void checkpointSurvivesRestart() throws Exception {
+    sendEvents();
+    long start = System.currentTimeMillis();
+    while (!Integer.valueOf(NUM_EVENTS).equals(connection.getLastDurableCheckpoint())
+            && System.currentTimeMillis() - start < 5000) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals("expected the last checkpoint to be durable", NUM_EVENTS,
+            connection.getLastDurableCheckpoint());
+
+    Properties props = new Properties();
+    props.putAll(getTestProps());
+    props.put(PropertyKeys.ENABLE_CHECKPOINTS, "true");
+    props.put(PropertyKeys.CHECKPOINT_FILE, checkpointFile.getAbsolutePath());
+    Connection restarted = Connections.create(new DefaultConnectionCallbacks(), props);
+    Assert.assertEquals("expected a new Connection to read the last checkpoint", NUM_EVENTS,
+            restarted.getLastDurableCheckpoint());
+    restarted.close();
+  }
+
+}
@@ -0,0 +1,111 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.error.HecConnectionTimeoutException;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.impl.sim.errorgen.indexer.DownDestinationEndpoints;
+import com.splunk.cloudfwd.impl.util.CircuitBreaker;
+import com.splunk.cloudfwd.impl.util.LoadBalancer;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * One of two destinations goes down while events are being sent. Its circuit breaker should open and stay open, and
+ * every event should be delivered through the other destination.
+ */
+public class CircuitBreakerTest extends AbstractConnectionTest {
+
+  private static final String DOWN_URL = DownDestinationEndpoints.DOWN_URL;
+  private static final String UP_URL = "https://127.0.1.1:8088";
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 5000;
+  }
+
+  @Override
+  protected Properties getProps() {
+    DownDestinationEndpoints.reset(); //its state is static, and the Connection is created right after this
+    Properties props = new Properties();
+    props.put(PropertyKeys.MOCK_HTTP_CLASSNAME,
+            "com.splunk.cloudfwd.impl.sim.errorgen.indexer.DownDestinationEndpoints");
+    props.put(PropertyKeys.COLLECTOR_URI, DOWN_URL + "," + UP_URL);
+    props.put(PropertyKeys.CHANNELS_PER_DESTINATION, "2");
+    props.put(PropertyKeys.HEALTH_POLL_MS, "50"); //one poll per destination, so poll often to fill the window
+    props.put(PropertyKeys.CIRCUIT_BREAKER_OPEN_MS, "500");
+    props.put(PropertyKeys.UNRESPONSIVE_MS, "-1"); //no dead channel detection
+    return props;
+  }
+
+  @Test
+  public void downDestinationIsCutOff() throws InterruptedException, HecConnectionTimeoutException {
+    LoadBalancer lb = ((ConnectionImpl) connection).getLoadBalancer();
+    AtomicBoolean downOpened = new AtomicBoolean();
+    AtomicBoolean upOpened = new AtomicBoolean();
+    //the Connection is closed at the end of sendEvents, so watch the breakers while sending
+    ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor();
+    watcher.scheduleWithFixedDelay(() -> {
+      downOpened.compareAndSet(false, !lb.getCircuitBreaker(DOWN_URL).isClosed());
+      upOpened.compareAndSet(false, !lb.getCircuitBreaker(UP_URL).isClosed());
+    }, 0, 10, TimeUnit.MILLISECONDS);
+    try {
+      super.sendEvents();
+    } finally {
+      watcher.shutdownNow();
+    }
+    Assert.assertTrue("expected the breaker for the down destination to open", downOpened.get());
+    Assert.assertFalse("expected the breaker for the live destination to stay closed", upOpened.get());
+  }
+
+  @Test
+  public void recoveredDestinationIsClosedByProbe() throws InterruptedException, HecConnectionTimeoutException {
+    CircuitBreaker down = ((ConnectionImpl) connection).getLoadBalancer().getCircuitBreaker(DOWN_URL);
+    long deadline = System.currentTimeMillis() + 60000;
+    int seqno = 0;
+    while (down.isClosed()) {
+      Assert.assertTrue("expected the breaker for the down destination to open",
+              System.currentTimeMillis() < deadline);
+      connection.send(nextEvent(++seqno));
+    }
+
+    DownDestinationEndpoints.recover();
+    //the probe is a health poll every CIRCUIT_BREAKER_OPEN_MS, its HEALTH_POLL_OK takes the breaker from HALF_OPEN
+    //to CLOSED. Keep sending meanwhile, which the destination's channels must not take until then
+    while (!down.isClosed()) {
+      Assert.assertTrue("expected the probe to close the breaker once the destination recovered",
+              System.currentTimeMillis() < deadline);
+      connection.send(nextEvent(++seqno));
+      Thread.sleep(1);
+    }
+    while (DownDestinationEndpoints.getPostsSinceRecovery() == 0) {
+      Assert.assertTrue("expected the recovered destination to take posts again",
+              System.currentTimeMillis() < deadline);
+      connection.send(nextEvent(++seqno));
+      Thread.sleep(1);
+    }
+    connection.close();
+  }
+
+}
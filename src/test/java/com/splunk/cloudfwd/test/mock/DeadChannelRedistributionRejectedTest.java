@@ -0,0 +1,84 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.error.HecChannelDeathException;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.impl.util.ThreadScheduler;
+import com.splunk.cloudfwd.test.util.BasicCallbacks;
+import java.util.Properties;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Shuts down the Connection's event_redistributor before channels die holding unacknowledged batches. The batches
+ * it rejects should be failed with the RejectedExecutionException rather than silently dropped.
+ */
+public class DeadChannelRedistributionRejectedTest extends DeadChannelTest {
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 100;
+  }
+
+  @Override
+  protected Properties getProps() {
+    Properties props = super.getProps();
+    props.put(PropertyKeys.ISOLATE_THREAD_POOLS, "true"); //so that only this Connection's redistributor is shut down
+    return props;
+  }
+
+  @Override
+  protected BasicCallbacks getCallbacks() {
+    return new BasicCallbacks(getNumEventsToSend()) {
+      @Override
+      protected boolean isExpectedWarningType(Exception e) {
+        return e instanceof HecChannelDeathException;
+      }
+
+      @Override
+      public boolean shouldWarn() {
+        return true;
+      }
+
+      @Override
+      protected boolean isExpectedFailureType(Exception e) {
+        return e instanceof RejectedExecutionException;
+      }
+
+      @Override
+      public boolean shouldFail() {
+        return true;
+      }
+    };
+  }
+
+  @Override
+  @Test
+  public void testDeadChannel() throws InterruptedException {
+    ThreadScheduler.getRejectingExecutorInstance("event_redistributor",
+            ((ConnectionImpl) connection).getThreadPoolScope()).shutdown();
+    for (int i = 0; i < getNumEventsToSend(); i++) {
+      connection.send(nextEvent(i + 1));
+    }
+    callbacks.await(1, TimeUnit.MINUTES);
+    callbacks.checkFailures();
+  }
+
+}
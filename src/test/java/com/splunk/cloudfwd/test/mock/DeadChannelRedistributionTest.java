@@ -0,0 +1,62 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.error.HecConnectionTimeoutException;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.impl.util.LoadBalancer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Channels whose acks are lost die holding thousands of unacknowledged batches. Those batches should be resent
+ * without holding the LoadBalancer's monitor, so the monitor never stays held for long while they are.
+ */
+public class DeadChannelRedistributionTest extends DeadChannelTest {
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 50000;
+  }
+
+  @Override
+  @Test
+  public void testDeadChannel() throws TimeoutException, InterruptedException, HecConnectionTimeoutException {
+    LoadBalancer lb = ((ConnectionImpl) connection).getLoadBalancer();
+    AtomicLong longestWait = new AtomicLong();
+    ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor();
+    watcher.scheduleWithFixedDelay(() -> {
+      long start = System.currentTimeMillis();
+      synchronized (lb) {
+        longestWait.accumulateAndGet(System.currentTimeMillis() - start, Math::max);
+      }
+    }, 0, 10, TimeUnit.MILLISECONDS);
+    try {
+      super.sendEvents();
+    } finally {
+      watcher.shutdownNow();
+    }
+    Assert.assertTrue("expected the LoadBalancer monitor to be free while batches are resent, waited "
+            + longestWait.get() + " ms", longestWait.get() < 500);
+  }
+
+}
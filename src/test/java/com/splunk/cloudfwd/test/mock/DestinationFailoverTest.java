@@ -0,0 +1,105 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.HecHealth;
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.error.HecConnectionTimeoutException;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.impl.sim.errorgen.indexer.RefusingDestinationEndpoints;
+import com.splunk.cloudfwd.impl.util.HecChannel;
+import com.splunk.cloudfwd.impl.util.LoadBalancer;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * One of two destinations starts refusing connections while events are being sent. The first refusal should open its
+ * circuit breaker and fail over its channels, so the batches it had taken but not acknowledged are resent through the
+ * other destination long before ACK_TIMEOUT_MS.
+ */
+public class DestinationFailoverTest extends AbstractConnectionTest {
+
+  private static final String UP_URL = "https://127.0.1.1:8088";
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 1000;
+  }
+
+  @Override
+  protected Properties getProps() {
+    Properties props = new Properties();
+    props.put(PropertyKeys.MOCK_HTTP_CLASSNAME,
+            "com.splunk.cloudfwd.impl.sim.errorgen.indexer.RefusingDestinationEndpoints");
+    props.put(PropertyKeys.COLLECTOR_URI, RefusingDestinationEndpoints.DOWN_URL + "," + UP_URL);
+    props.put(PropertyKeys.CHANNELS_PER_DESTINATION, "2");
+    props.put(PropertyKeys.ACK_TIMEOUT_MS, "120000"); //longer than the test may take
+    props.put(PropertyKeys.UNRESPONSIVE_MS, "-1"); //no dead channel detection
+    return props;
+  }
+
+  @Test
+  public void refusedDestinationFailsOver() throws InterruptedException, HecConnectionTimeoutException {
+    LoadBalancer lb = ((ConnectionImpl) connection).getLoadBalancer();
+    AtomicBoolean downOpened = new AtomicBoolean();
+    AtomicBoolean replacedOntoDown = new AtomicBoolean();
+    Set<String> failedOver = ConcurrentHashMap.newKeySet();
+    //the Connection is closed at the end of sendEvents, so watch the breaker while sending
+    ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor();
+    watcher.scheduleWithFixedDelay(() -> {
+      if (lb.getCircuitBreaker(RefusingDestinationEndpoints.DOWN_URL).isClosed()) {
+        return;
+      }
+      for (HecHealth h : lb.getHealthNonBlocking()) {
+        HecChannel c = h.getChannel();
+        if (RefusingDestinationEndpoints.DOWN_URL.equals(c.getSender().getBaseUrl())) {
+          if (!downOpened.get()) {
+            failedOver.add(c.getChannelId()); //the channels that were there when it opened
+          } else if (!failedOver.contains(c.getChannelId()) && !c.isClosed()) {
+            replacedOntoDown.set(true);
+          }
+        }
+      }
+      downOpened.set(true);
+    }, 0, 10, TimeUnit.MILLISECONDS);
+    long start = System.currentTimeMillis();
+    try {
+      super.sendEvents();
+      //sendEvents returns once the last event is checkpointed, so wait for the batches the refusing destination took
+      while (callbacks.getAcknowledgedBatches().size() < getNumEventsToSend()
+              && System.currentTimeMillis() - start < 60000) {
+        Thread.sleep(100);
+      }
+    } finally {
+      watcher.shutdownNow();
+    }
+    Assert.assertTrue("expected the breaker for the refusing destination to open", downOpened.get());
+    Assert.assertFalse("expected no replacement channel to the refusing destination while its breaker is open",
+            replacedOntoDown.get());
+    Assert.assertEquals("expected unacknowledged batches to be resent well before the ack timeout",
+            getNumEventsToSend(), callbacks.getAcknowledgedBatches().size());
+  }
+
+}
@@ -0,0 +1,101 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.HecHealth;
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.impl.util.IndexDiscoverer;
+import com.splunk.cloudfwd.impl.util.LoadBalancer;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Re-resolves the URLs every 100 ms while an address appears and later disappears from DNS. Channels should be
+ * added for the new address, and drained once it is gone, without losing any of the EventBatches sent meanwhile.
+ */
+public class DnsChangeTest extends AbstractConnectionTest {
+
+  private static final byte[] ADDED_ADDR = {127, 0, 0, 2};
+  private static final String ADDED_URL = "https://127.0.0.2:8088";
+  private volatile boolean resolveAdded;
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 1000;
+  }
+
+  @Override
+  protected Properties getProps() {
+    Properties props = new Properties();
+    props.put(PropertyKeys.DNS_CACHE_TTL_MS, "100");
+    return props;
+  }
+
+  @Test
+  public void addAndRemoveAddress() throws Exception {
+    LoadBalancer lb = ((ConnectionImpl) connection).getLoadBalancer();
+    IndexDiscoverer discoverer = lb.getIndexDiscoverer();
+    discoverer.setHostResolver(host -> {
+      InetAddress[] addrs = InetAddress.getAllByName(host);
+      if (resolveAdded) {
+        addrs = Arrays.copyOf(addrs, addrs.length + 1);
+        addrs[addrs.length - 1] = InetAddress.getByAddress(host, ADDED_ADDR);
+      }
+      return addrs;
+    });
+    int numChannels = lb.getHealthNonBlocking().size();
+
+    resolveAdded = true;
+    awaitTrue("expected as many channels for the added address as for the original",
+            () -> numChannelsTo(lb) == numChannels);
+    Assert.assertEquals("expected channels added, none replaced", 2 * numChannels, lb.getHealthNonBlocking().size());
+    int half = getNumEventsToSend() / 2;
+    for (int i = 0; i < half; i++) {
+      connection.send(nextEvent(i + 1));
+    }
+
+    resolveAdded = false;
+    awaitTrue("expected channels for the removed address to be drained", () -> numChannelsTo(lb) == 0);
+    for (int i = half; i < getNumEventsToSend(); i++) {
+      connection.send(nextEvent(i + 1));
+    }
+    connection.close();
+    callbacks.await(10, TimeUnit.MINUTES);
+    callbacks.checkFailures();
+    callbacks.checkWarnings();
+  }
+
+  private static long numChannelsTo(LoadBalancer lb) {
+    return lb.getHealthNonBlocking().stream().map(HecHealth::getUrl).filter(ADDED_URL::equals).count();
+  }
+
+  private static void awaitTrue(String msg, BooleanSupplier condition) throws InterruptedException {
+    long start = System.currentTimeMillis();
+    while (!condition.getAsBoolean() && System.currentTimeMillis() - start < 5000) {
+      Thread.sleep(10);
+    }
+    Assert.assertTrue(msg, condition.getAsBoolean());
+  }
+
+}
@@ -0,0 +1,52 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.error.HecConnectionTimeoutException;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.util.Properties;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Re-resolves the URLs every 100 ms while sending. Since the addresses never change, the
+ * channels must not change either.
+ */
+public class DnsRefreshTest extends AbstractConnectionTest {
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 1000;
+  }
+
+  @Override
+  protected Properties getProps() {
+    Properties props = new Properties();
+    props.put(PropertyKeys.DNS_CACHE_TTL_MS, "100");
+    return props;
+  }
+
+  @Test
+  public void sendWhileRefreshingDns() throws InterruptedException, HecConnectionTimeoutException {
+    int numChannels = connection.getHealth().size();
+    Thread.sleep(500); //several refreshes
+    Assert.assertEquals("unchanged addresses should not change channels", numChannels, connection.getHealth().size());
+    super.sendEvents();
+  }
+
+}
@@ -0,0 +1,49 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.HecHealth;
+import com.splunk.cloudfwd.impl.util.ThreadScheduler;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Checks that channel health is available as a future, and that preflight checks
+ * do not tie up executor threads.
+ */
+public class HealthFutureTest extends AbstractConnectionTest {
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 0;
+  }
+
+  @Test
+  public void healthFutureCompletesHealthy() throws InterruptedException, ExecutionException, TimeoutException {
+    List<HecHealth> healths = connection.getHealthFuture().get(1, TimeUnit.MINUTES);
+    Assert.assertFalse("expected channels", healths.isEmpty());
+    Assert.assertTrue("expected all channels healthy", healths.stream().allMatch(HecHealth::isHealthy));
+    Assert.assertFalse("preflight should not run on an executor",
+            ThreadScheduler.getPoolStats().keySet().stream().anyMatch(k->k.startsWith("preflight_executor")));
+  }
+
+}
@@ -0,0 +1,51 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.impl.http.HecResponseParser;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks the byte scanning parser against the 200 bodies HEC sends, and that it gives up on anything else so the
+ * callers fall back to Jackson.
+ */
+public class HecResponseParserTest {
+
+    @Test
+    public void parseAckId() {
+        Assert.assertEquals(42, ackId("{\"ackId\":42}"));
+        Assert.assertEquals(7, ackId("{\"text\":\"Success\",\"code\":0,\"ackId\" : 7}"));
+        Assert.assertEquals(-1, ackId("{\"text\":\"Success\",\"code\":0}")); //acks disabled
+        Assert.assertEquals(-1, ackId("{\"ackId\":\"x\"}"));
+        Assert.assertEquals(-1, ackId(""));
+    }
+
+    @Test
+    public void parseAcks() {
+        Set<Long> acked = new HashSet<>();
+        Assert.assertTrue(acks("{\"acks\":{\"0\":true,\"1\":false, \"12\" : true }}", acked));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(0L, 12L)), acked);
+
+        acked.clear();
+        Assert.assertTrue(acks("{\"acks\":{}}", acked));
+        Assert.assertTrue(acked.isEmpty());
+
+        Assert.assertFalse(acks("{\"text\":\"Invalid data format\",\"code\":6}", acked));
+        Assert.assertFalse(acks("{\"acks\":{\"0\":tru", acked));
+        Assert.assertFalse(acks("{\"acks\":{\"a\":true}}", acked));
+    }
+
+    private static long ackId(String body) {
+        byte[] b = body.getBytes(StandardCharsets.UTF_8);
+        return HecResponseParser.parseAckId(b, b.length);
+    }
+
+    private static boolean acks(String body, Set<Long> acked) {
+        byte[] b = (body + "trailing bytes past len are ignored").getBytes(StandardCharsets.UTF_8);
+        return HecResponseParser.parseAcks(b, body.getBytes(StandardCharsets.UTF_8).length, acked);
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.splunk.cloudfwd.test.mock;
+
+import static com.splunk.cloudfwd.PropertyKeys.*;
+import com.splunk.cloudfwd.impl.sim.errorgen.unhealthy.TriggerableUnhealthyEndpoints;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Checks that a destination with steady successful traffic is not health polled, and that polling resumes once it
+ * goes idle.
+ */
+public class IdleHealthPollTest extends AbstractConnectionTest {
+
+  private static final long HEALTH_POLL = 1000;
+  private static final int EVENTS = 40;
+  private static final long SEND_INTERVAL = 100;
+
+  @Override
+  protected int getNumEventsToSend() {
+    return EVENTS;
+  }
+
+  @Override
+  protected Properties getProps() {
+    TriggerableUnhealthyEndpoints.healthy = true;
+    Properties props = new Properties();
+    props.put(MOCK_HTTP_CLASSNAME,
+            "com.splunk.cloudfwd.impl.sim.errorgen.unhealthy.TriggerableUnhealthyEndpoints");
+    props.put(MAX_TOTAL_CHANNELS, "4");
+    props.put(HEALTH_POLL_MS, Long.toString(HEALTH_POLL));
+    props.put(HEALTH_POLL_IDLE_MS, Long.toString(HEALTH_POLL));
+    props.put(UNRESPONSIVE_MS, "-1"); //disable dead channel removal
+    return props;
+  }
+
+  @Before
+  public void resetHealthPolls() {
+    TriggerableUnhealthyEndpoints.resetHealthPolls(connection);
+  }
+
+  @Test
+  public void busyDestinationIsNotPolled() throws Exception {
+    connection.getHealthFuture().get(1, TimeUnit.MINUTES);
+    for (int i = 0; i < EVENTS; i++) {
+      if (i == 10) {
+        TriggerableUnhealthyEndpoints.resetHealthPolls(connection); //traffic is flowing by now
+      }
+      connection.send(getTimestampedRawEvent(i));
+      Thread.sleep(SEND_INTERVAL);
+    }
+    int busyPolls = TriggerableUnhealthyEndpoints.getHealthPolls(connection);
+    Assert.assertTrue("expected no health polls while posts succeed, got " + busyPolls, busyPolls <= 1);
+    callbacks.await(1, TimeUnit.MINUTES);
+
+    TriggerableUnhealthyEndpoints.resetHealthPolls(connection);
+    Thread.sleep(HEALTH_POLL * 4);
+    int idlePolls = TriggerableUnhealthyEndpoints.getHealthPolls(connection);
+    Assert.assertTrue("expected health polls once idle, got " + idlePolls, idlePolls >= 1);
+    connection.close();
+  }
+
+}
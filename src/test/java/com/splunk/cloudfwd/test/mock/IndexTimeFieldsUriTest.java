@@ -0,0 +1,80 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.impl.sim.PostedUriEndpoints;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.net.URI;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Checks that index, source, sourcetype and host are percent-encoded into the URI events are posted to, and that a
+ * change through setProperties reaches the next post.
+ */
+public class IndexTimeFieldsUriTest extends AbstractConnectionTest {
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 2;
+  }
+
+  @Override
+  protected Properties getProps() {
+    Properties props = new Properties();
+    props.put(PropertyKeys.MOCK_HTTP_CLASSNAME, "com.splunk.cloudfwd.impl.sim.PostedUriEndpoints");
+    props.put(PropertyKeys.INDEX, "my index");
+    props.put(PropertyKeys.SOURCE, "a&b=c");
+    props.put(PropertyKeys.SOURCETYPE, "x=y");
+    props.put(PropertyKeys.HOST, "h st&");
+    return props;
+  }
+
+  @Test
+  public void encodesIndexTimeFields() throws Exception {
+    super.sendEvents();
+    URI posted = PostedUriEndpoints.getLastPostedUri(connection);
+    Assert.assertNotNull("expected an event post", posted);
+    Assert.assertEquals("index=my+index&source=a%26b%3Dc&sourcetype=x%3Dy&host=h+st%26", posted.getRawQuery());
+  }
+
+  @Test
+  public void settingsChangeReachesNextPost() throws Exception {
+    connection.send(nextEvent(1));
+    connection.flush();
+    long deadline = System.currentTimeMillis() + 10000;
+    while (null == PostedUriEndpoints.getLastPostedUri(connection)) {
+      Assert.assertTrue("expected the first event to be posted", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+    Assert.assertTrue(PostedUriEndpoints.getLastPostedUri(connection).getRawQuery().startsWith("index=my+index&"));
+
+    Properties changed = new Properties();
+    changed.put(PropertyKeys.INDEX, "other=index");
+    connection.getSettings().setProperties(changed);
+    connection.send(nextEvent(2));
+    connection.close();
+    callbacks.await(1, TimeUnit.MINUTES);
+    Assert.assertTrue("expected the post after the change to use the new index, got "
+            + PostedUriEndpoints.getLastPostedUri(connection),
+            PostedUriEndpoints.getLastPostedUri(connection).getRawQuery().startsWith("index=other%3Dindex&"));
+  }
+
+}
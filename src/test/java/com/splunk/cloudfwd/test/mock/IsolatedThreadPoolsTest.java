@@ -0,0 +1,86 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.error.HecConnectionTimeoutException;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.impl.util.ThreadScheduler;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Sends with ISOLATE_THREAD_POOLS enabled and checks that the Connection's
+ * pools are scoped to it and released by closeNow, or once close has drained every channel. A gracefully closed
+ * Connection must keep its pools until its EventBatches are acknowledged, since ack polls and event timeouts run on
+ * them.
+ */
+public class IsolatedThreadPoolsTest extends AbstractConnectionTest {
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 1000;
+  }
+
+  @Override
+  protected Properties getProps() {
+    Properties props = new Properties();
+    props.put(PropertyKeys.ISOLATE_THREAD_POOLS, "true");
+    return props;
+  }
+
+  @Test
+  public void sendWithIsolatedPools() throws InterruptedException, HecConnectionTimeoutException {
+    String scope = ((ConnectionImpl) connection).getThreadPoolScope();
+    for (int i = 0; i < getNumEventsToSend(); i++) {
+      connection.send(nextEvent(i + 1));
+    }
+    Assert.assertTrue("expected connection scoped pools", hasPools(scope));
+    connection.closeNow();
+    Assert.assertFalse("expected connection scoped pools to be released by closeNow", hasPools(scope));
+  }
+
+  @Test
+  public void closeReleasesIsolatedPools() throws InterruptedException, HecConnectionTimeoutException {
+    String scope = ((ConnectionImpl) connection).getThreadPoolScope();
+    for (int i = 0; i < getNumEventsToSend(); i++) {
+      connection.send(nextEvent(i + 1));
+    }
+    connection.close();
+    boolean pools = hasPools(scope); //checked first: pools are only released after every ack
+    boolean allAcked = callbacks.getAcknowledgedBatches().size() == getNumEventsToSend();
+    Assert.assertTrue("expected connection scoped pools to outlive close while acks are outstanding",
+            pools || allAcked);
+    callbacks.await(1, TimeUnit.MINUTES);
+    callbacks.checkFailures();
+    long start = System.currentTimeMillis();
+    while (hasPools(scope) && System.currentTimeMillis() - start < 10000) {
+      Thread.sleep(10);
+    }
+    Assert.assertFalse("expected connection scoped pools to be released once close drained the channels: "
+            + ThreadScheduler.getPoolStats().keySet(), hasPools(scope));
+    Assert.assertNull(((ConnectionImpl) connection).getThreadPoolScope());
+  }
+
+  private boolean hasPools(String scope) {
+    return ThreadScheduler.getPoolStats().keySet().stream().anyMatch(k -> k.endsWith("@" + scope));
+  }
+
+}
@@ -0,0 +1,104 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * With ENABLE_JMX, the Connection, its LoadBalancer and each channel should be visible in the platform MBeanServer,
+ * ack_poll_ms should be settable over JMX (but not below MIN_ACK_POLL_MS), a channel decommissioned over JMX should be
+ * replaced, and the Connection's MXBeans, its channels' included, should be unregistered when it closes.
+ */
+public class JmxTest extends AbstractConnectionTest {
+
+  private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 1000;
+  }
+
+  @Override
+  protected Properties getProps() {
+    Properties props = new Properties();
+    props.put(PropertyKeys.ENABLE_JMX, "true");
+    props.put(PropertyKeys.CHANNELS_PER_DESTINATION, "2");
+    return props;
+  }
+
+  @Test
+  public void mxBeans() throws Exception {
+    Set<ObjectName> connections = server.queryNames(new ObjectName("com.splunk.cloudfwd:type=Connection,*"), null);
+    Assert.assertEquals("expected one Connection MXBean", 1, connections.size());
+    ObjectName conn = connections.iterator().next();
+    String number = conn.getKeyProperty("connection");
+
+    ObjectName lb = new ObjectName("com.splunk.cloudfwd:type=LoadBalancer,connection=" + number);
+    Set<ObjectName> channels = server.queryNames(
+            new ObjectName("com.splunk.cloudfwd:type=HecChannel,connection=" + number + ",*"), null);
+    Assert.assertEquals("expected a channel MXBean per channel", server.getAttribute(lb, "Channels"),
+            channels.size());
+    for (ObjectName c : channels) {
+      Assert.assertNotNull(server.getAttribute(c, "Status"));
+    }
+
+    server.setAttribute(conn, new Attribute("AckPollMS", 300L));
+    Assert.assertEquals(300L, connection.getSettings().getAckPollMS());
+    server.setAttribute(conn, new Attribute("AckPollMS", 1L));
+    Assert.assertEquals(PropertyKeys.MIN_ACK_POLL_MS, connection.getSettings().getAckPollMS());
+
+    Assert.assertEquals(0, server.getAttribute(conn, "InFlightBatches"));
+    Assert.assertEquals(0, server.getAttribute(conn, "BlockedProducers"));
+
+    ObjectName decommissioned = channels.iterator().next();
+    server.invoke(decommissioned, "decommission", null, null);
+    Assert.assertTrue("expected the decommissioned channel's MXBean to be unregistered",
+            awaitUnregistered(Collections.singleton(decommissioned)));
+    Assert.assertEquals("expected the decommissioned channel to be replaced", server.getAttribute(lb, "Channels"),
+            server.queryNames(new ObjectName("com.splunk.cloudfwd:type=HecChannel,connection=" + number + ",*"),
+                    null).size());
+    Set<ObjectName> replaced = server.queryNames(
+            new ObjectName("com.splunk.cloudfwd:type=HecChannel,connection=" + number + ",*"), null);
+
+    sendEvents();
+    Assert.assertFalse("expected the Connection MXBean to be unregistered on close", server.isRegistered(conn));
+    Assert.assertTrue("expected the channel MXBeans to be unregistered on close", awaitUnregistered(replaced));
+  }
+
+  //channels finish closing asynchronously
+  private boolean awaitUnregistered(Set<ObjectName> names) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (names.stream().anyMatch(server::isRegistered)) {
+      if (System.currentTimeMillis() > deadline) {
+        return false;
+      }
+      Thread.sleep(50);
+    }
+    return true;
+  }
+
+}
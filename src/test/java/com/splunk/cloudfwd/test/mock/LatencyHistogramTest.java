@@ -0,0 +1,75 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.LatencySnapshot;
+import com.splunk.cloudfwd.MetricsSnapshot;
+import com.splunk.cloudfwd.MetricsSnapshot.Counter;
+import com.splunk.cloudfwd.MetricsSnapshot.Latency;
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.util.Properties;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Sends one EventBatch per Event with checkpoints enabled, and checks that each latency histogram recorded one
+ * sample per EventBatch, that percentiles are ordered, and that an interval snapshot only covers what was recorded
+ * since the previous one.
+ */
+public class LatencyHistogramTest extends AbstractConnectionTest {
+
+  private static final int NUM_EVENTS = 1000;
+
+  @Override
+  protected int getNumEventsToSend() {
+    return NUM_EVENTS;
+  }
+
+  @Override
+  protected Properties getProps() {
+    Properties props = new Properties();
+    props.put(PropertyKeys.EVENT_BATCH_SIZE, "0"); //one EventBatch per Event
+    props.put(PropertyKeys.ENABLE_CHECKPOINTS, "true");
+    return props;
+  }
+
+  @Test
+  public void recordsLatencies() throws Exception {
+    sendEvents();
+    MetricsSnapshot m = connection.getIntervalMetrics();
+    Assert.assertEquals(m.get(Counter.EVENT_POSTS), m.getLatency(Latency.SEND_TO_POST).getCount());
+    Assert.assertEquals(m.get(Counter.EVENT_POSTS_OK), m.getLatency(Latency.POST_RTT).getCount());
+    Assert.assertEquals(m.get(Counter.ACKS), m.getLatency(Latency.POST_TO_ACK).getCount());
+    Assert.assertEquals(NUM_EVENTS, m.getLatency(Latency.END_TO_END).getCount());
+    for (Latency l : Latency.values()) {
+      LatencySnapshot s = m.getLatency(l);
+      Assert.assertTrue("percentiles out of order for " + l + ": " + s,
+              s.getP50Micros() <= s.getP99Micros() && s.getP99Micros() <= s.getP999Micros()
+              && s.getP999Micros() <= s.getMaxMicros());
+    }
+    LatencySnapshot e2e = m.getLatency(Latency.END_TO_END);
+    Assert.assertTrue("end to end latency should not be below post to ack latency",
+            e2e.getMaxMicros() >= m.getLatency(Latency.POST_TO_ACK).getMaxMicros());
+
+    Assert.assertEquals("expected nothing new in the next interval", 0,
+            connection.getIntervalMetrics().getLatency(Latency.END_TO_END).getCount());
+    Assert.assertEquals("expected cumulative latencies to keep every sample", NUM_EVENTS,
+            connection.getMetrics().getLatency(Latency.END_TO_END).getCount());
+  }
+
+}
@@ -0,0 +1,97 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.Connection;
+import com.splunk.cloudfwd.ConnectionCallbacks;
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.impl.sim.errorgen.slow.SlowPreflightEndpoints;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Sends immediately after creating a Connection with LAZY_STARTUP, so that the
+ * first EventBatches go through the startup buffer.
+ */
+public class LazyStartupTest extends AbstractConnectionTest {
+
+  private static final int BUFFERED = 10;
+  private long constructionMS;
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 1000;
+  }
+
+  @Override
+  protected Properties getProps() {
+    Properties props = new Properties();
+    props.put(PropertyKeys.LAZY_STARTUP, "true");
+    props.put(PropertyKeys.STARTUP_BUFFER_MAX_BATCHES, Integer.toString(BUFFERED));
+    props.put(PropertyKeys.ENABLE_CHECKPOINTS, "true");
+    props.put(PropertyKeys.MOCK_HTTP_CLASSNAME,
+            "com.splunk.cloudfwd.impl.sim.errorgen.slow.SlowPreflightEndpoints");
+    return props;
+  }
+
+  @Override
+  protected Connection createConnection(ConnectionCallbacks c, Properties p) {
+    long start = System.currentTimeMillis();
+    Connection conn = super.createConnection(c, p);
+    constructionMS = System.currentTimeMillis() - start;
+    return conn;
+  }
+
+  @Test
+  public void sendWithLazyStartup() throws Exception {
+    Assert.assertTrue("expected the constructor to return before preflight finished, took " + constructionMS + " ms",
+            constructionMS < SlowPreflightEndpoints.PREFLIGHT_DELAY_MS);
+
+    //a full buffer's worth of sends returns at once, with nothing posted: they were buffered
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < BUFFERED; i++) {
+      connection.send(nextEvent(i + 1));
+    }
+    Assert.assertTrue("expected buffered sends not to wait for preflight",
+            System.currentTimeMillis() - start < SlowPreflightEndpoints.PREFLIGHT_DELAY_MS);
+    Assert.assertFalse("expected no channel to be ready yet",
+            ((ConnectionImpl) connection).getLoadBalancer().hasAvailableChannel());
+    Assert.assertTrue("expected nothing posted before a channel was ready",
+            SlowPreflightEndpoints.getPostedIds(connection).isEmpty());
+
+    //these wait for room in the buffer, and must not overtake the buffered ones while they drain
+    for (int i = BUFFERED; i < getNumEventsToSend(); i++) {
+      connection.send(nextEvent(i + 1));
+    }
+    connection.close();
+    callbacks.await(1, TimeUnit.MINUTES);
+    callbacks.checkFailures();
+
+    List<Comparable> posted = SlowPreflightEndpoints.getPostedIds(connection);
+    Assert.assertEquals(getNumEventsToSend(), posted.size());
+    for (int i = 1; i < posted.size(); i++) {
+      Assert.assertTrue("expected EventBatches to be posted in the order they were sent, but " + posted.get(i)
+              + " followed " + posted.get(i - 1), posted.get(i - 1).compareTo(posted.get(i)) < 0);
+    }
+  }
+
+}
@@ -0,0 +1,67 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.impl.util.ThreadScheduler;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.util.Properties;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Shuts down the Connection's lifecycle_dispatcher halfway through sending, then closes the Connection while
+ * LifecycleEvents are still queued in the channels' mailboxes. Every rejected delivery must still reach the
+ * CheckpointManager, so every EventBatch is acknowledged.
+ */
+public class LifecycleDispatchRejectedTest extends AbstractConnectionTest {
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 1000;
+  }
+
+  @Override
+  protected Properties getProps() {
+    Properties props = new Properties();
+    props.put(PropertyKeys.ISOLATE_THREAD_POOLS, "true"); //so that only this Connection's dispatcher is shut down
+    return props;
+  }
+
+  @Test
+  public void closeWithRejectedDispatcher() throws InterruptedException {
+    String scope = ((ConnectionImpl) connection).getThreadPoolScope();
+    int half = getNumEventsToSend() / 2;
+    for (int i = 0; i < getNumEventsToSend(); i++) {
+      if (i == half) {
+        ThreadScheduler.getRejectingExecutorInstance("lifecycle_dispatcher", scope).shutdown();
+      }
+      connection.send(nextEvent(i + 1));
+    }
+    connection.close();
+    long start = System.currentTimeMillis();
+    while (callbacks.getAcknowledgedBatches().size() < getNumEventsToSend()
+            && System.currentTimeMillis() - start < 30000) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals("expected every EventBatch to be acknowledged despite the rejected deliveries",
+            getNumEventsToSend(), callbacks.getAcknowledgedBatches().size());
+    callbacks.checkFailures();
+  }
+
+}
@@ -0,0 +1,65 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.MetricsSnapshot;
+import com.splunk.cloudfwd.MetricsSnapshot.Counter;
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.util.Properties;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Sends one EventBatch per Event and checks that the Connection's metrics count every post and acknowledgement, and
+ * that the destination rollups add up to the Connection's counters.
+ */
+public class MetricsTest extends AbstractConnectionTest {
+
+  private static final int NUM_EVENTS = 1000;
+
+  @Override
+  protected int getNumEventsToSend() {
+    return NUM_EVENTS;
+  }
+
+  @Override
+  protected Properties getProps() {
+    Properties props = new Properties();
+    props.put(PropertyKeys.EVENT_BATCH_SIZE, "0"); //one EventBatch per Event
+    props.put(PropertyKeys.ENABLE_CHECKPOINTS, "true"); //so the last checkpoint means every EventBatch was acknowledged
+    return props;
+  }
+
+  @Test
+  public void countsPostsAndAcks() throws Exception {
+    sendEvents();
+    MetricsSnapshot m = connection.getMetrics();
+    Assert.assertEquals("expected every EventBatch to be acknowledged", NUM_EVENTS, m.get(Counter.ACKS));
+    Assert.assertTrue("expected every EventBatch to be posted", m.get(Counter.EVENT_POSTS) >= NUM_EVENTS);
+    Assert.assertTrue("expected bytes to be counted", m.get(Counter.BYTES_POSTED) > 0);
+    Assert.assertFalse("expected destinations", m.getChildren().isEmpty());
+    for (Counter c : Counter.values()) {
+      if (c == Counter.TIMEOUTS) {
+        continue; //only counted for the Connection
+      }
+      long sum = m.getChildren().stream().mapToLong(d -> d.get(c)).sum();
+      Assert.assertEquals("expected destinations to add up to the Connection for " + c, m.get(c), sum);
+    }
+  }
+
+}
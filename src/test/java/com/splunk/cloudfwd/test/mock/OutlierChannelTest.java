@@ -0,0 +1,59 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.error.HecConnectionTimeoutException;
+import com.splunk.cloudfwd.impl.sim.errorgen.slow.SlowChannelEndpoints;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.util.Properties;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * One channel responds to event posts far slower than the others, but is never frozen, so only outlier
+ * detection can catch it. It should be ejected and replaced.
+ */
+public class OutlierChannelTest extends AbstractConnectionTest {
+
+  private static final int NUM_CHANNELS = 4;
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 20000;
+  }
+
+  @Override
+  protected Properties getProps() {
+    Properties props = new Properties();
+    props.put(PropertyKeys.MOCK_HTTP_CLASSNAME,
+            "com.splunk.cloudfwd.impl.sim.errorgen.slow.SlowChannelEndpoints");
+    props.put(PropertyKeys.CHANNELS_PER_DESTINATION, Integer.toString(NUM_CHANNELS));
+    props.put(PropertyKeys.OUTLIER_LATENCY_MULTIPLE, "3");
+    //keep the simulated endpoints from queueing so many posts that every channel is slow, and the slow one no outlier
+    props.put(PropertyKeys.MAX_UNACKED_EVENT_BATCHES_PER_CHANNEL, "200");
+    return props;
+  }
+
+  @Test
+  public void slowChannelIsReplaced() throws InterruptedException, HecConnectionTimeoutException {
+    super.sendEvents();
+    Assert.assertTrue("expected the slow channel to be replaced",
+            SlowChannelEndpoints.instances.get() > NUM_CHANNELS);
+  }
+
+}
@@ -0,0 +1,112 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.HecHealth;
+import com.splunk.cloudfwd.LifecycleEvent;
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.impl.http.HttpSender;
+import com.splunk.cloudfwd.impl.http.lifecycle.Response;
+import com.splunk.cloudfwd.impl.sim.PreflightCountingEndpoints;
+import com.splunk.cloudfwd.impl.util.HecChannel;
+import com.splunk.cloudfwd.impl.util.LoadBalancer;
+import com.splunk.cloudfwd.impl.util.PreflightCache;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.util.Properties;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import static com.splunk.cloudfwd.test.mock.PreflightCacheTest.awaitTrue;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Checks that a busy preflight response, and the preflight resend it causes, invalidate the PreflightCache entry of
+ * the destination, so that new channels run preflight checks again, and that a new token misses the cache. Health
+ * polls are spaced out so that they cannot verify the destination again meanwhile.
+ */
+public class PreflightCacheInvalidationTest extends AbstractConnectionTest {
+
+  private LoadBalancer lb;
+  private PreflightCache cache;
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 0; //only the channels' preflight checks are of interest
+  }
+
+  @Override
+  protected Properties getProps() {
+    Properties props = new Properties();
+    props.put(PropertyKeys.MOCK_HTTP_CLASSNAME, "com.splunk.cloudfwd.impl.sim.PreflightCountingEndpoints");
+    props.put(PropertyKeys.HEALTH_POLL_MS, "600000");
+    return props;
+  }
+
+  @Before
+  public void awaitPreflight() throws InterruptedException {
+    PreflightCountingEndpoints.preflightOK = true;
+    lb = ((ConnectionImpl) connection).getLoadBalancer();
+    cache = lb.getPreflightCache();
+    awaitTrue("expected the channels to pass preflight", () -> allVerified());
+  }
+
+  @After
+  public void restorePreflight() {
+    PreflightCountingEndpoints.preflightOK = true;
+    connection.closeNow();
+  }
+
+  @Test
+  public void busyPreflightInvalidates() throws InterruptedException {
+    HecChannel channel = lb.getHealthNonBlocking().get(0).getChannel();
+    HttpSender sender = channel.getSender();
+    int preflights = PreflightCountingEndpoints.getPreflights(connection);
+    PreflightCountingEndpoints.preflightOK = false;
+    channel.update(new Response(LifecycleEvent.Type.PREFLIGHT_BUSY, 503, "busy", sender.getBaseUrl()));
+    Assert.assertFalse("expected a busy preflight response to invalidate the destination", cache.isVerified(sender));
+    awaitTrue("expected the channel to resend preflight",
+            () -> PreflightCountingEndpoints.getPreflights(connection) > preflights);
+    Assert.assertFalse("expected the destination to stay invalidated while preflight is busy",
+            cache.isVerified(sender));
+
+    long numChannels = lb.getHealthNonBlocking().stream()
+            .filter(h -> h.getUrl().equals(sender.getBaseUrl())).count();
+    int beforeRefresh = PreflightCountingEndpoints.getPreflights(connection);
+    lb.refreshChannels(); //while preflight is still busy, so the destination cannot be verified in between
+    awaitTrue("expected new channels to the invalidated destination to run preflight",
+            () -> PreflightCountingEndpoints.getPreflights(connection) - beforeRefresh >= numChannels);
+  }
+
+  @Test
+  public void tokenChangeMissesCache() throws InterruptedException {
+    int numChannels = lb.getHealthNonBlocking().size();
+    int preflights = PreflightCountingEndpoints.getPreflights(connection);
+    PreflightCountingEndpoints.preflightOK = false; //so the new token cannot be verified while this checks
+    connection.getSettings().setToken("new-token");
+    awaitTrue("expected channels for the new token to run preflight",
+            () -> PreflightCountingEndpoints.getPreflights(connection) - preflights >= numChannels);
+    Assert.assertTrue("expected the new token to miss the cache", lb.getHealthNonBlocking().stream()
+            .noneMatch(h -> cache.isVerified(h.getChannel().getSender())));
+  }
+
+  private boolean allVerified() {
+    return lb.getHealthNonBlocking().stream().map(HecHealth::getChannel)
+            .allMatch(c -> c.isPreflightCompleted() && cache.isVerified(c.getSender()));
+  }
+
+}
@@ -0,0 +1,87 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.HecHealth;
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.impl.sim.PreflightCountingEndpoints;
+import com.splunk.cloudfwd.impl.util.LoadBalancer;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Decommissions channels every 500 ms while sending. Once the destinations have passed preflight, the channels'
+ * replacements go to an already verified destination and token, so they should take traffic without sending any
+ * preflight requests of their own.
+ */
+public class PreflightCacheTest extends AbstractConnectionTest {
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 200;
+  }
+
+  @Override
+  protected Properties getProps() {
+    Properties props = new Properties();
+    props.put(PropertyKeys.MOCK_HTTP_CLASSNAME, "com.splunk.cloudfwd.impl.sim.PreflightCountingEndpoints");
+    props.put(PropertyKeys.CHANNEL_DECOM_MS, "500");
+    return props;
+  }
+
+  @Test
+  public void replacementChannelsSkipPreflight() throws Exception {
+    LoadBalancer lb = ((ConnectionImpl) connection).getLoadBalancer();
+    awaitTrue("expected the destinations to pass preflight", () -> lb.getHealthNonBlocking().stream()
+            .allMatch(h -> lb.getPreflightCache().isVerified(h.getChannel().getSender())));
+    Set<String> initial = channelIds(lb);
+    int preflights = PreflightCountingEndpoints.getPreflights(connection);
+
+    for (int i = 0; i < getNumEventsToSend(); i++) { //spread over several decommissions
+      connection.send(nextEvent(i + 1));
+      Thread.sleep(10);
+    }
+    Set<String> now = channelIds(lb);
+    now.retainAll(initial);
+    Assert.assertTrue("expected every initial channel to have been replaced, still have " + now, now.isEmpty());
+    Assert.assertEquals("expected replacement channels to skip preflight", preflights,
+            PreflightCountingEndpoints.getPreflights(connection));
+    connection.close();
+    callbacks.await(1, TimeUnit.MINUTES);
+    callbacks.checkFailures();
+  }
+
+  static Set<String> channelIds(LoadBalancer lb) {
+    return lb.getHealthNonBlocking().stream().map(HecHealth::getChannelId).collect(Collectors.toSet());
+  }
+
+  static void awaitTrue(String msg, BooleanSupplier condition) throws InterruptedException {
+    long start = System.currentTimeMillis();
+    while (!condition.getAsBoolean() && System.currentTimeMillis() - start < 5000) {
+      Thread.sleep(10);
+    }
+    Assert.assertTrue(msg, condition.getAsBoolean());
+  }
+
+}
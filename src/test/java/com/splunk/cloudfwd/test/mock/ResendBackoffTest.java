@@ -0,0 +1,67 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.impl.util.ResendScheduler;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.util.Properties;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Checks the bounds of the delays before resending a batch that got a busy response.
+ */
+public class ResendBackoffTest extends AbstractConnectionTest {
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 0;
+  }
+
+  @Override
+  protected Properties getProps() {
+    Properties props = new Properties();
+    props.put(PropertyKeys.RETRY_BACKOFF_BASE_MS, "100");
+    props.put(PropertyKeys.RETRY_BACKOFF_MAX_MS, "5000");
+    return props;
+  }
+
+  @Test
+  public void backoffGrowsAndIsCapped() {
+    ResendScheduler s = ((ConnectionImpl) connection).getResendScheduler();
+    for (int i = 0; i < 100; i++) {
+      Assert.assertTrue(s.getDelayMS(1, -1) <= 100);
+      Assert.assertTrue(s.getDelayMS(4, -1) <= 800);
+      Assert.assertTrue(s.getDelayMS(50, -1) <= 5000);
+    }
+    boolean grew = false;
+    for (int i = 0; i < 100 && !grew; i++) {
+      grew = s.getDelayMS(6, -1) > 100;
+    }
+    Assert.assertTrue("expected delays to grow with the number of tries", grew);
+  }
+
+  @Test
+  public void retryAfterIsHonoredUpToMax() {
+    ResendScheduler s = ((ConnectionImpl) connection).getResendScheduler();
+    Assert.assertEquals(3000, s.getDelayMS(1, 3000));
+    Assert.assertEquals(5000, s.getDelayMS(1, 60000));
+  }
+
+}
@@ -0,0 +1,60 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.impl.util.RetryBudget;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.util.Properties;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Checks that the retry budget allows resends in proportion to first sends.
+ */
+public class RetryBudgetTest extends AbstractConnectionTest {
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 0;
+  }
+
+  @Override
+  protected Properties getProps() {
+    Properties props = new Properties();
+    props.put(PropertyKeys.RETRY_BUDGET_RATIO, "0.5");
+    props.put(PropertyKeys.RETRY_BUDGET_MIN_PER_SEC, "0");
+    return props;
+  }
+
+  @Test
+  public void retriesLimitedByFirstSends() {
+    RetryBudget budget = ((ConnectionImpl) connection).getLoadBalancer().getRetryBudget();
+    Assert.assertFalse("no sends yet, so no retries allowed", budget.tryAcquire());
+    for (int i = 0; i < 10; i++) {
+      budget.recordSend();
+    }
+    int allowed = 0;
+    while (budget.tryAcquire() && allowed < 100) {
+      allowed++;
+    }
+    //a second boundary may fall between recordSend and tryAcquire, but the window still holds all sends
+    Assert.assertEquals("expected half as many retries as sends", 5, allowed);
+  }
+
+}
@@ -0,0 +1,92 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.HecHealth;
+import static com.splunk.cloudfwd.PropertyKeys.*;
+import com.splunk.cloudfwd.impl.sim.errorgen.unhealthy.TriggerableUnhealthyEndpoints;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Checks that the channels to a destination share one health poll, and that its outcome reaches all of them.
+ */
+public class SharedHealthPollTest extends AbstractConnectionTest {
+
+  private static final int CHANNELS = 4;
+  private static final long HEALTH_POLL = 1000;
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 0;
+  }
+
+  @Override
+  protected Properties getProps() {
+    TriggerableUnhealthyEndpoints.healthy = true;
+    Properties props = new Properties();
+    props.put(MOCK_HTTP_CLASSNAME,
+            "com.splunk.cloudfwd.impl.sim.errorgen.unhealthy.TriggerableUnhealthyEndpoints");
+    props.put(CHANNELS_PER_DESTINATION, Integer.toString(CHANNELS));
+    props.put(MAX_TOTAL_CHANNELS, Integer.toString(CHANNELS));
+    props.put(HEALTH_POLL_MS, Long.toString(HEALTH_POLL));
+    props.put(UNRESPONSIVE_MS, "-1"); //disable dead channel removal
+    return props;
+  }
+
+  @Test
+  public void oneHealthPollPerDestination() throws Exception {
+    List<HecHealth> healths = connection.getHealthFuture().get(1, TimeUnit.MINUTES);
+    Assert.assertEquals(CHANNELS, healths.size());
+
+    TriggerableUnhealthyEndpoints.resetHealthPolls(connection);
+    Thread.sleep(HEALTH_POLL * 4);
+    int polls = TriggerableUnhealthyEndpoints.getHealthPolls(connection);
+    //a poll per channel would be about CHANNELS * 4
+    Assert.assertTrue("expected one /health request per interval, got " + polls, polls <= 5);
+
+    TriggerableUnhealthyEndpoints.healthy = false;
+    Thread.sleep(HEALTH_POLL * 3);
+    Assert.assertTrue("expected every channel unhealthy",
+            connection.getHealth().stream().noneMatch(HecHealth::isHealthy));
+
+    TriggerableUnhealthyEndpoints.healthy = true;
+    Thread.sleep(HEALTH_POLL * 3);
+    Assert.assertTrue("expected every channel healthy again",
+            connection.getHealth().stream().allMatch(HecHealth::isHealthy));
+
+    connection.close();
+    Thread.sleep(HEALTH_POLL); //let the channels finish closing
+    TriggerableUnhealthyEndpoints.resetHealthPolls(connection);
+    Thread.sleep(HEALTH_POLL * 2);
+    Assert.assertEquals("expected health polls to stop once closed", 0,
+            TriggerableUnhealthyEndpoints.getHealthPolls(connection));
+  }
+
+  @After
+  @Override
+  public void tearDown() {
+    super.tearDown();
+    connection.close(); //in case the test failed before closing it, else its health polls would outlive the test
+  }
+
+}
@@ -0,0 +1,119 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.Connection;
+import com.splunk.cloudfwd.Connections;
+import com.splunk.cloudfwd.DefaultConnectionCallbacks;
+import com.splunk.cloudfwd.Event;
+import com.splunk.cloudfwd.EventBatch;
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.impl.EventBatchImpl;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * A Connection spills EventBatches and is closed with closeNow before any channel is available. A new Connection on
+ * the same spill directory should send and get acknowledgements for every EventBatch left behind, with each Event
+ * read back as the class, id and bytes it was sent with.
+ */
+public class SpillQueueReplayTest extends AbstractConnectionTest {
+
+  private static final int NUM_EVENTS = 100;
+  private File spillDir;
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 0; //events are sent by the test itself
+  }
+
+  @Override
+  protected Properties getProps() {
+    try {
+      spillDir = Files.createTempDirectory("spill").toFile();
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    Properties props = new Properties();
+    props.put(PropertyKeys.SPILL_DIR, spillDir.getAbsolutePath());
+    props.put(PropertyKeys.EVENT_BATCH_SIZE, "0"); //one EventBatch per Event
+    props.put(PropertyKeys.LAZY_STARTUP, "true");
+    props.put(PropertyKeys.STARTUP_BUFFER_MAX_BATCHES, "1"); //so the drainer soon blocks in the LoadBalancer
+    props.put(PropertyKeys.MOCK_HTTP_CLASSNAME,
+            "com.splunk.cloudfwd.impl.sim.errorgen.slow.SlowPreflightEndpoints");
+    return props;
+  }
+
+  @Test
+  public void replayAfterRestart() throws Exception {
+    Map<Comparable, Event> sent = new ConcurrentHashMap<>();
+    for (int i = 0; i < NUM_EVENTS; i++) {
+      Event e = nextEvent(i + 1);
+      sent.put(e.getId(), e);
+      connection.send(e);
+    }
+    connection.flush();
+    connection.closeNow(); //leaves whatever the drainer had not sent in the spill directory
+
+    AtomicInteger acked = new AtomicInteger();
+    AtomicInteger changed = new AtomicInteger(); //replayed Events that did not round-trip
+    Properties props = new Properties();
+    props.putAll(getTestProps());
+    props.put(PropertyKeys.SPILL_DIR, spillDir.getAbsolutePath());
+    Connection restarted = Connections.create(new DefaultConnectionCallbacks() {
+      @Override
+      public void acknowledged(EventBatch events) {
+        for (Event e : ((EventBatchImpl) events).getEvents()) {
+          Event original = sent.get(e.getId()); //null unless the id came back equal, and so of the same type
+          if (null == original || original.getClass() != e.getClass()
+                  || !Arrays.equals(original.getBytes(), e.getBytes())) {
+            changed.incrementAndGet();
+          }
+        }
+        acked.incrementAndGet();
+      }
+    }, props);
+    long replayed = ((ConnectionImpl) restarted).getSpillQueue().getNumReplayed();
+    Assert.assertTrue("expected spilled EventBatches to be replayed", replayed > 0);
+    long start = System.currentTimeMillis();
+    while (acked.get() < replayed && System.currentTimeMillis() - start < 10000) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals("expected every replayed EventBatch to be acknowledged", replayed, acked.get());
+    Assert.assertEquals("expected replayed Events to keep their class, id and bytes", 0, changed.get());
+    restarted.close();
+  }
+
+  @After
+  public void deleteSpillDir() throws IOException {
+    FileUtils.deleteDirectory(spillDir);
+  }
+
+}
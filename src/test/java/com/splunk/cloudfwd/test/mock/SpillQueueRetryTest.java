@@ -0,0 +1,99 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.error.HecConnectionTimeoutException;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import com.splunk.cloudfwd.test.util.BasicCallbacks;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Properties;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Spills EventBatches while the startup buffer holds only one and no channel has passed preflight, so the drainer
+ * times out sending them. Once SPILL_MAX_RETRIES is used up, the spilled EventBatches should be failed with
+ * HecConnectionTimeoutException rather than retried forever.
+ */
+public class SpillQueueRetryTest extends AbstractConnectionTest {
+
+  private File spillDir;
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 0; //events are sent by the test itself
+  }
+
+  @Override
+  protected Properties getProps() {
+    try {
+      spillDir = Files.createTempDirectory("spill").toFile();
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    Properties props = new Properties();
+    props.put(PropertyKeys.SPILL_DIR, spillDir.getAbsolutePath());
+    props.put(PropertyKeys.SPILL_MAX_RETRIES, "1");
+    props.put(PropertyKeys.BLOCKING_TIMEOUT_MS, "100"); //well inside the preflight delay
+    props.put(PropertyKeys.EVENT_BATCH_SIZE, "0"); //one EventBatch per Event
+    props.put(PropertyKeys.LAZY_STARTUP, "true");
+    props.put(PropertyKeys.STARTUP_BUFFER_MAX_BATCHES, "1");
+    props.put(PropertyKeys.MOCK_HTTP_CLASSNAME,
+            "com.splunk.cloudfwd.impl.sim.errorgen.slow.SlowPreflightEndpoints");
+    return props;
+  }
+
+  @Override
+  protected BasicCallbacks getCallbacks() {
+    return new BasicCallbacks(0) {
+      @Override
+      public boolean shouldFail() {
+        return true;
+      }
+
+      @Override
+      protected boolean isExpectedFailureType(Exception e) {
+        return e instanceof HecConnectionTimeoutException;
+      }
+    };
+  }
+
+  @Test
+  public void failAfterMaxRetries() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      connection.send(nextEvent(i + 1));
+    }
+    connection.flush();
+    long start = System.currentTimeMillis();
+    while (!callbacks.isFailed() && System.currentTimeMillis() - start < 5000) {
+      Thread.sleep(10);
+    }
+    callbacks.checkFailures();
+  }
+
+  @After
+  public void deleteSpillDir() throws IOException {
+    FileUtils.deleteDirectory(spillDir);
+  }
+
+}
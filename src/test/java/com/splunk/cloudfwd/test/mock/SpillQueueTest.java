@@ -0,0 +1,80 @@
+package com.splunk.cloudfwd.test.mock;
+
+import com.splunk.cloudfwd.PropertyKeys;
+import com.splunk.cloudfwd.error.HecConnectionTimeoutException;
+import com.splunk.cloudfwd.impl.ConnectionImpl;
+import com.splunk.cloudfwd.test.util.AbstractConnectionTest;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Properties;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Copyright 2017 Splunk, Inc..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Sends while no channel has passed preflight yet, so EventBatches are spilled to disk. All of them should be
+ * acknowledged once the channels come up, and the spill segments deleted.
+ */
+public class SpillQueueTest extends AbstractConnectionTest {
+
+  private File spillDir;
+
+  @Override
+  protected int getNumEventsToSend() {
+    return 1000;
+  }
+
+  @Override
+  protected Properties getProps() {
+    try {
+      spillDir = Files.createTempDirectory("spill").toFile();
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    Properties props = new Properties();
+    props.put(PropertyKeys.SPILL_DIR, spillDir.getAbsolutePath());
+    props.put(PropertyKeys.SPILL_SEGMENT_BYTES, "4096"); //so that the test rolls over segments
+    props.put(PropertyKeys.LAZY_STARTUP, "true"); //lets us send before any channel is available
+    props.put(PropertyKeys.MOCK_HTTP_CLASSNAME,
+            "com.splunk.cloudfwd.impl.sim.errorgen.slow.SlowPreflightEndpoints");
+    return props;
+  }
+
+  @Test
+  public void spillAndDrain() throws InterruptedException, HecConnectionTimeoutException {
+    super.sendEvents();
+    Assert.assertTrue("expected EventBatches to be spilled",
+            ((ConnectionImpl) connection).getSpillQueue().getNumSpilled() > 0);
+    //segments are deleted after the acknowledged callback returns, so allow a moment
+    long start = System.currentTimeMillis();
+    while (spillDir.list().length > 0 && System.currentTimeMillis() - start < 5000) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals("expected every spill segment to be deleted", 0, spillDir.list().length);
+  }
+
+  @After
+  public void deleteSpillDir() throws IOException {
+    FileUtils.deleteDirectory(spillDir);
+  }
+
+}